@@ -0,0 +1,123 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.quakereport.adapter.EarthQuakeAdapter;
+import com.example.android.quakereport.metrics.Metrics;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The disk and system work a launch of the list waits on, started before the activity
+ * inflates its views so it overlaps with them instead of following them on the main
+ * thread. One thread reads the preferences, installs the response cache and sends the
+ * list request, another loads the list font, and the activity hears about the request
+ * once it is on its way.
+ */
+public class AppStartup {
+    //One thread for the list request, one for the font
+    private static final int THREADS = 2;
+
+    public interface Listener {
+        /**
+         * Called on the main thread with the list query once it has been requested,
+         * which only happened if there is a network.
+         */
+        void onListStarted(EarthQuakeQuery query, boolean connected);
+    }
+
+    private static AppStartup sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private Listener mListener;
+
+    private AppStartup(Context context) {
+        mContext = context;
+        mExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static synchronized AppStartup getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new AppStartup(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start the launch work in the background, the list request goes out under the given
+     * fetch tag. The listener replaces the one of a previous start.
+     */
+    public synchronized void start(final Listener listener, final String fetchTag) {
+        mListener = listener;
+        final long start = Metrics.start();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EarthQuakeFetcher.installResponseCache(mContext);
+                EarthQuakeQuery query = EarthQuakeFetcher.getListQuery(mContext);
+                boolean connected = isConnected(mContext);
+                if (connected) {
+                    // Nobody listens yet, the activity joins the request when it hears about it
+                    EarthQuakeFetcher.getEngine(mContext).fetch(query, fetchTag, null, false);
+                }
+                Metrics.end(Metrics.STARTUP_LIST_REQUEST, start);
+                deliver(listener, query, connected);
+                //Keep the list fresh in the background, so the next launch opens on recent data
+                SyncScheduler.getInstance(mContext).schedule();
+            }
+        });
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long fontStart = Metrics.start();
+                if (EarthQuakeAdapter.preloadTypeface(mContext)) {
+                    Metrics.end(Metrics.STARTUP_FONT, fontStart);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop calling the given listener, the work already started goes on.
+     */
+    public synchronized void removeListener(Listener listener) {
+        if (mListener == listener) {
+            mListener = null;
+        }
+    }
+
+    /**
+     * Return true if the device has a network, or is about to have one.
+     */
+    public static boolean isConnected(Context context) {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        return activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+    }
+
+    private void deliver(final Listener listener, final EarthQuakeQuery query, final boolean connected) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // The activity may have been destroyed or replaced meanwhile
+                synchronized (AppStartup.this) {
+                    if (mListener != listener) {
+                        return;
+                    }
+                }
+                listener.onListStarted(query, connected);
+            }
+        });
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import com.example.android.quakereport.adapter.EarthQuakeRow;
+import com.example.android.quakereport.adapter.RowModelFactory;
+import com.example.android.quakereport.net.DetailPrefetcher;
+
+import java.util.Locale;
+
+/**
+ * Shows one earthquake with the fields of its USGS detail. The list prefetches the
+ * details of the rows on screen, so this usually binds everything in onCreate, otherwise
+ * the fields the list already had are shown while the rest is fetched.
+ */
+public class EarthQuakeDetailActivity extends AppCompatActivity implements DetailPrefetcher.Listener {
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_MAG = "mag";
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_TIMESTAMP = "timestamp";
+    private static final String EXTRA_UPDATED = "updated";
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_LATITUDE = "latitude";
+    private static final String EXTRA_LONGITUDE = "longitude";
+    private static final String EXTRA_DEPTH = "depth";
+
+    private DetailPrefetcher mPrefetcher;
+    private EarthQuake mEarthQuake;
+    private TextView mMagnitude, mMagType, mPlace, mTime, mDepth, mCoordinates, mFelt, mAlert, mTsunami;
+    private ProgressBar mProgressBar;
+
+    /**
+     * Return the intent that shows the given earthquake.
+     */
+    public static Intent newIntent(Context context, EarthQuake earthQuake) {
+        return new Intent(context, EarthQuakeDetailActivity.class)
+                .putExtra(EXTRA_ID, earthQuake.getId())
+                .putExtra(EXTRA_MAG, earthQuake.getMag())
+                .putExtra(EXTRA_TITLE, earthQuake.getTitle())
+                .putExtra(EXTRA_TIMESTAMP, earthQuake.getTimestamp())
+                .putExtra(EXTRA_UPDATED, earthQuake.getUpdated())
+                .putExtra(EXTRA_URL, earthQuake.getURL())
+                .putExtra(EXTRA_LATITUDE, earthQuake.getLatitude())
+                .putExtra(EXTRA_LONGITUDE, earthQuake.getLongitude())
+                .putExtra(EXTRA_DEPTH, earthQuake.getDepth());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_earthquake_detail);
+
+        //Set up the app bar with an Up button back to the list
+        Toolbar toolbar = findViewById(R.id.detail_toolbar);
+        setSupportActionBar(toolbar);
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) {
+            actionBar.setDisplayHomeAsUpEnabled(true);
+        }
+
+        mMagnitude = findViewById(R.id.detail_mag);
+        mMagType = findViewById(R.id.detail_mag_type);
+        mPlace = findViewById(R.id.detail_place);
+        mTime = findViewById(R.id.detail_time);
+        mDepth = findViewById(R.id.detail_depth);
+        mCoordinates = findViewById(R.id.detail_coordinates);
+        mFelt = findViewById(R.id.detail_felt);
+        mAlert = findViewById(R.id.detail_alert);
+        mTsunami = findViewById(R.id.detail_tsunami);
+        mProgressBar = findViewById(R.id.detail_progress);
+
+        Intent intent = getIntent();
+        mEarthQuake = new EarthQuake(intent.getStringExtra(EXTRA_ID),
+                intent.getDoubleExtra(EXTRA_MAG, 0),
+                intent.getStringExtra(EXTRA_TITLE),
+                intent.getLongExtra(EXTRA_TIMESTAMP, 0),
+                intent.getLongExtra(EXTRA_UPDATED, 0),
+                intent.getStringExtra(EXTRA_URL),
+                intent.getDoubleExtra(EXTRA_LATITUDE, Double.NaN),
+                intent.getDoubleExtra(EXTRA_LONGITUDE, Double.NaN),
+                intent.getDoubleExtra(EXTRA_DEPTH, Double.NaN),
+                false);
+
+        // Open the full USGS page in a browser, what tapping a row used to do
+        findViewById(R.id.detail_open_web).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(mEarthQuake.getURL())));
+            }
+        });
+
+        mPrefetcher = EarthQuakeFetcher.getDetailPrefetcher();
+        EarthQuakeDetail detail = mPrefetcher.getCached(mEarthQuake.getId());
+        if (detail != null) {
+            bind(detail);
+        } else {
+            bind(mEarthQuake);
+            mProgressBar.setVisibility(View.VISIBLE);
+            mPrefetcher.fetch(mEarthQuake.getId(), this);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mPrefetcher.removeListener(this);
+    }
+
+    @Override
+    public boolean onSupportNavigateUp() {
+        finish();
+        return true;
+    }
+
+    @Override
+    public void onDetailLoaded(String id, EarthQuakeDetail detail) {
+        if (isFinishing() || !id.equals(mEarthQuake.getId())) {
+            return;
+        }
+        mProgressBar.setVisibility(View.GONE);
+        // If the detail could not be fetched keep showing what the list had
+        if (detail != null) {
+            bind(detail);
+        }
+    }
+
+    /**
+     * Show the fields the list already has, the detail only fields as not known yet.
+     */
+    private void bind(EarthQuake earthQuake) {
+        //The list built this row already, the detail screen reuses its formatting and color
+        EarthQuakeRow row = RowModelFactory.getInstance(this).rowFor(earthQuake);
+        GradientDrawable circle = (GradientDrawable) mMagnitude.getBackground();
+        circle.setColor(row.getMagnitudeColor());
+        mMagnitude.setText(row.getMagnitude());
+        mPlace.setText(earthQuake.getTitle());
+        mTime.setText(row.getDate() + "  " + row.getTime());
+        if (!Double.isNaN(earthQuake.getDepth())) {
+            mDepth.setText(getString(R.string.detail_depth_format, earthQuake.getDepth()));
+        } else {
+            mDepth.setText(R.string.detail_unknown);
+        }
+        if (earthQuake.hasLocation()) {
+            mCoordinates.setText(getString(R.string.detail_coordinates_format,
+                    earthQuake.getLatitude(), earthQuake.getLongitude()));
+        } else {
+            mCoordinates.setText(R.string.detail_unknown);
+        }
+        mMagType.setText("");
+        mFelt.setText(R.string.detail_unknown);
+        mAlert.setText(R.string.detail_unknown);
+        mTsunami.setText(R.string.detail_unknown);
+    }
+
+    private void bind(EarthQuakeDetail detail) {
+        mEarthQuake = detail;
+        bind((EarthQuake) detail);
+        mMagType.setText(detail.getMagType() == null ? "" : detail.getMagType().toUpperCase(Locale.US));
+        mFelt.setText(getString(R.string.detail_felt_format, Math.max(detail.getFelt(), 0)));
+        mAlert.setText(getString(R.string.detail_alert_format,
+                detail.getAlert() == null ? getString(R.string.detail_alert_none) : detail.getAlert()));
+        mTsunami.setText(detail.isTsunami() ? R.string.detail_tsunami_yes : R.string.detail_tsunami_no);
+    }
+}
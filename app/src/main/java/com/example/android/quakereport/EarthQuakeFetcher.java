@@ -0,0 +1,242 @@
+package com.example.android.quakereport;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.quakereport.adapter.RowModelFactory;
+import com.example.android.quakereport.data.DeltaSync;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+import com.example.android.quakereport.data.EarthQuakeStore;
+import com.example.android.quakereport.data.ListSnapshot;
+import com.example.android.quakereport.memory.MemoryPressure;
+import com.example.android.quakereport.net.DetailPrefetcher;
+import com.example.android.quakereport.net.DiskResponseCache;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.FetchEngine;
+import com.example.android.quakereport.net.QueryCache;
+import com.example.android.quakereport.net.QueryPlanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the app does to load a query: fetch it from USGS (only the changes since the
+ * last time when possible), keep the result in the store and build the list rows.
+ * Owns the single {@link FetchEngine} every screen fetches through.
+ */
+public class EarthQuakeFetcher implements FetchEngine.Pipeline {
+    private static final String LOG_TAG = EarthQuakeFetcher.class.getSimpleName();
+    //Number of earthquakes in the list, both on launch and after a swipe refresh
+    public static final int LIST_LIMIT = 100;
+    //Downloads running at the same time, USGS is a single host
+    private static final int FETCH_THREADS = 2;
+    //Slices of a large time window downloaded at the same time, on their own threads so
+    //a fetch waiting for its slices never starves them of a thread
+    private static final int SLICE_THREADS = 4;
+    //Events each slice should match, small enough for the slices to finish together
+    private static final int EVENTS_PER_SLICE = 5000;
+    //Events kept in memory across queries, a few dozen list sized results
+    private static final int CACHED_EVENTS = 5000;
+    //Age after which a cached result is shown but fetched again, USGS updates every minute
+    private static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    //Share of the app's heap the cached results may take, parsed and compact together
+    private static final int CACHE_HEAP_SHARE = 16;
+    //Disk taken by cached results demoted out of memory
+    private static final long CACHE_DISK_BYTES = 8 * 1024 * 1024;
+
+    //Details fetched ahead of a tap, one screen of rows at a time
+    private static final int DETAIL_PREFETCH_THREADS = 2;
+    //Details kept in memory, a few screens worth
+    private static final int CACHED_DETAILS = 50;
+    //Byte budget of the on-disk cache of USGS responses
+    private static final long RESPONSE_CACHE_SIZE = 4 * 1024 * 1024;
+
+    private static FetchEngine sEngine;
+    private static DetailPrefetcher sDetailPrefetcher;
+
+    private final Context mContext;
+    //Result of the last full query, later fetches only download what changed since
+    private final DeltaSync mDeltaSync = new DeltaSync();
+    private final QueryPlanner mPlanner =
+            new QueryPlanner(QueryPlanner.USGS, SLICE_THREADS, EVENTS_PER_SLICE);
+
+    private EarthQuakeFetcher(Context context) {
+        mContext = context;
+    }
+
+    public static synchronized FetchEngine getEngine(Context context) {
+        if (sEngine == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            // Low end devices get a small heap, the cache gives up memory in proportion
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            long heapBudget = activityManager.getMemoryClass() * 1024L * 1024L / CACHE_HEAP_SHARE;
+            // Demotions encode and write files, one thread does them off the main thread
+            ThreadPoolExecutor cacheExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            cacheExecutor.allowCoreThreadTimeOut(true);
+            QueryCache cache = new QueryCache(CACHED_EVENTS, CACHE_TTL_MILLIS, heapBudget,
+                    new File(context.getCacheDir(), "query_cache"), CACHE_DISK_BYTES, cacheExecutor);
+            MemoryPressure.register(cache);
+            sEngine = new FetchEngine(new EarthQuakeFetcher(context.getApplicationContext()),
+                    new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            mainHandler.post(command);
+                        }
+                    }, FETCH_THREADS, cache);
+        }
+        return sEngine;
+    }
+
+    /**
+     * Install the response cache once so refreshes can be answered with a 304.
+     * It reads its index from disk, so call it off the main thread.
+     */
+    public static synchronized void installResponseCache(Context context) {
+        if (QueryUtils.getResponseCache() == null) {
+            QueryUtils.setResponseCache(new DiskResponseCache(
+                    new File(context.getCacheDir(), "responses"), RESPONSE_CACHE_SIZE));
+        }
+    }
+
+    /**
+     * Return the query of the list for the current settings. The list and the background
+     * sync both fetch this one, so the fetch engine can share a request between them.
+     */
+    public static EarthQuakeQuery getListQuery(Context context) {
+        return getListQuery(context, PreferenceManager.getDefaultSharedPreferences(context));
+    }
+
+    /**
+     * Return the query of the list for the settings in the given preferences.
+     */
+    public static EarthQuakeQuery getListQuery(Context context, SharedPreferences preferences) {
+        String minMagnitude = preferences.getString(context.getString(R.string.settings_min_magnitude_key),
+                context.getString(R.string.settings_min_magnitude_default));
+        String orderBy = preferences.getString(context.getString(R.string.settings_order_by_key),
+                context.getString(R.string.settings_order_by_default));
+        // csv carries every field the list needs in about 60% of the gzipped bytes of GeoJSON
+        return new EarthQuakeQuery(parseMagnitude(minMagnitude), orderBy, LIST_LIMIT)
+                .withFormat(EarthQuakeQuery.FORMAT_CSV);
+    }
+
+    /**
+     * Parse the min magnitude preference, which the user types in freely.
+     */
+    public static double parseMagnitude(String minMagnitude) {
+        try {
+            return Double.parseDouble(minMagnitude);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Return the single prefetcher of event details, shared by the list and the detail screen.
+     */
+    public static synchronized DetailPrefetcher getDetailPrefetcher() {
+        if (sDetailPrefetcher == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            sDetailPrefetcher = new DetailPrefetcher(new DetailPrefetcher.Source() {
+                @Override
+                public EarthQuakeDetail load(String id, boolean prefetch) {
+                    return QueryUtils.fetchEarthquakeDetail(EarthQuakeQuery.toDetailUrl(id), prefetch);
+                }
+            }, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    mainHandler.post(command);
+                }
+            }, DETAIL_PREFETCH_THREADS, CACHED_DETAILS);
+            MemoryPressure.register(sDetailPrefetcher);
+        }
+        return sDetailPrefetcher;
+    }
+
+    @Override
+    public List<EarthQuake> load(EarthQuakeQuery query) {
+        if (query.hasTimeWindow()) {
+            return loadWindow(query);
+        }
+
+        String url = query.toUrl();
+        EarthQuakeStore store = EarthQuakeStore.getInstance(mContext);
+        RowModelFactory rowModelFactory = RowModelFactory.getInstance(mContext);
+
+        // If this query was loaded before, only ask for the events that changed since.
+        // The text format has no update times to sync from, it is always fetched in full
+        String deltaUrl = query.getFormat().equals(EarthQuakeQuery.FORMAT_TEXT) ? null : mDeltaSync.buildDeltaUrl(url);
+        if (deltaUrl != null) {
+            List<EarthQuake> delta = QueryUtils.fetchEarthquakeData(deltaUrl);
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            // A full page of changes may have been cut off by the limit, refetch everything then.
+            // So does a delta another load overtook, it was asked for against events since replaced
+            List<EarthQuake> merged = delta != null && delta.size() < query.getLimit()
+                    ? mDeltaSync.merge(deltaUrl, delta) : null;
+            if (merged != null) {
+                store.insertAll(delta);
+                rowModelFactory.prepare(delta);
+                return saveSnapshot(merged, query);
+            }
+        }
+
+        List<EarthQuake> earthQuakes = QueryUtils.fetchEarthquakeData(url);
+        if (earthQuakes == null || Thread.currentThread().isInterrupted()) {
+            return null;
+        }
+        // Keep the result so the next launch can show it before the network answers
+        store.insertAll(earthQuakes);
+        rowModelFactory.prepare(earthQuakes);
+        return saveSnapshot(mDeltaSync.reset(url, query.getOrderBy(), query.getLimit(), earthQuakes), query);
+    }
+
+    /**
+     * File holding the last list fetched, which the next launch shows before anything else.
+     */
+    public static File getSnapshotFile(Context context) {
+        return new File(context.getFilesDir(), "list.snapshot");
+    }
+
+    private List<EarthQuake> saveSnapshot(List<EarthQuake> earthQuakes, EarthQuakeQuery query) {
+        try {
+            ListSnapshot.write(getSnapshotFile(mContext), earthQuakes, query.getMinMagnitude());
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing the list snapshot", e);
+        }
+        return earthQuakes;
+    }
+
+    /**
+     * Time window queries can match more events than USGS answers in one request,
+     * so they are fetched as parallel slices and never delta synced. The events stay in
+     * their columns all the way into the store, and the result builds an event only for
+     * whoever reads it.
+     */
+    private List<EarthQuake> loadWindow(EarthQuakeQuery query) {
+        EarthQuakeColumns columns;
+        try {
+            columns = mPlanner.fetch(query);
+        } catch (InterruptedException e) {
+            return null;
+        }
+        if (columns == null) {
+            return null;
+        }
+        // Windows are the background backfills, stored so the list can be answered offline.
+        // No rows are prepared, the store loader prepares the few it shows
+        EarthQuakeStore.getInstance(mContext).insertAll(columns);
+        return columns.asList();
+    }
+}
@@ -1,31 +0,0 @@
-package com.example.android.quakereport;
-
-import android.content.Context;
-import android.content.AsyncTaskLoader;
-
-import java.util.List;
-
-public class EarthQuakeLoader extends AsyncTaskLoader {
-    /** Query URL */
-    private String mUrl;
-    public EarthQuakeLoader(Context context, String url) {
-        super(context);
-        mUrl = url;
-    }
-
-    @Override
-    protected void onStartLoading() {
-        forceLoad();
-    }
-
-    @Override
-    public Object loadInBackground() {
-        if (mUrl == null) {
-            return null;
-        }
-
-        // Perform the network request, parse the response, and extract a list of earthquakes.
-        List<EarthQuake> earthquakes = QueryUtils.fetchEarthquakeData(mUrl);
-        return earthquakes;
-    }
-}
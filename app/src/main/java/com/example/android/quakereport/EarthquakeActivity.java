@@ -15,42 +15,104 @@
  */
 package com.example.android.quakereport;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
-import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
 import android.content.SharedPreferences;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.example.android.quakereport.adapter.EarthQuakeAdapter;
+import com.example.android.quakereport.adapter.EarthQuakeRow;
+import com.example.android.quakereport.data.EarthQuakeIndex;
+import com.example.android.quakereport.data.ListSnapshot;
+import com.example.android.quakereport.data.PlaceSearchIndex;
+import com.example.android.quakereport.metrics.HistogramSink;
+import com.example.android.quakereport.metrics.Metrics;
+import com.example.android.quakereport.net.DetailPrefetcher;
+import com.example.android.quakereport.net.DiskResponseCache;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.FetchEngine;
+import com.example.android.quakereport.net.QueryCache;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-public class EarthquakeActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<EarthQuake>> {
+public class EarthquakeActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<List<EarthQuake>>,
+        SharedPreferences.OnSharedPreferenceChangeListener, FetchEngine.Listener, AppStartup.Listener {
+    private static final String LOG_TAG = EarthquakeActivity.class.getSimpleName();
     private EarthQuakeAdapter adapter;
-    private static final int EARTHQUAKE_LOADER_ID = 1;
+    private static final int STORE_LOADER_ID = 2;
+    //Tag of the list's request in the fetch engine, a new one supersedes the previous
+    private static final String FETCH_TAG = "earthquake_list";
     private SwipeRefreshLayout swipeRefreshLayout;
     private TextView mEmptyStateTextView;
     private ProgressBar progressBar;
-    private final String USGS_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+    private FetchEngine mFetchEngine;
+    //Query the list is currently waiting for
+    private EarthQuakeQuery mFetchQuery;
+    //Query of the current settings, read in the background by the startup work or the store
+    //loader and updated on every settings change. Null until one of them has read it
+    private EarthQuakeQuery mListQuery;
+    private boolean mConnected;
+    //Set once the startup work has checked the network, until then the store alone cannot mean offline
+    private boolean mConnectivityKnown;
+    //True if the last store load found nothing to show
+    private boolean mStoreEmpty;
+    //Set once the network result is shown, the stored copy must not replace it after that
+    private boolean mNetworkLoaded;
+    //Events currently loaded, settings changes are answered from here when possible.
+    //Null while it is built in the background
+    private EarthQuakeIndex mIndex;
+    //Builds the rows and the index of every list loaded, the rows are shown before the index is done
+    private ThreadPoolExecutor mIndexExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    //Counts the lists loaded, the index of one that was replaced meanwhile is dropped
+    private int mIndexGeneration;
+    //Counts the lists submitted, the rows of one that was replaced meanwhile are dropped
+    private int mSubmitGeneration;
+    //Last network result shown, a revalidation that changed nothing hands it back
+    private List<EarthQuake> mFetchedEarthQuakes;
+    //Text typed in the search box, the list only shows places matching it
+    private String mSearchQuery = "";
+    //Events currently loaded, shown as they are when mIndex does not cover the settings
+    private List<EarthQuake> mLoadedEarthQuakes;
+    //Place search index of the events currently loaded, built in the background with mIndex
+    private PlaceSearchIndex mSearchIndex;
+    //When onCreate started, cleared once the first rows are shown
+    private long mCreateTime;
+    private RecyclerView mListView;
+    private DetailPrefetcher mDetailPrefetcher;
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Only launches are timed, a rotation gets its rows back from the loader
+        mCreateTime = savedInstanceState == null ? Metrics.start() : 0;
         super.onCreate(savedInstanceState);
+        //Read the settings, send the list request and load the font in the background,
+        //the main thread only builds the views meanwhile
+        AppStartup.getInstance(this).start(this, FETCH_TAG);
         setContentView(R.layout.activity_earthquake);
 
         //Set up the app bar
@@ -61,85 +123,64 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
         swipeRefreshLayout = findViewById(R.id.swiperefresh);
         mEmptyStateTextView = findViewById(R.id.empty_view);
         progressBar = findViewById(R.id.list_bar);
-        ListView earthquakeListView = findViewById(R.id.list);
+        RecyclerView earthquakeListView = findViewById(R.id.list);
         LoaderManager loaderManager = getLoaderManager();
+        mFetchEngine = EarthQuakeFetcher.getEngine(this);
+        mIndexExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mIndexExecutor.allowCoreThreadTimeOut(true);
 
-        //Check connectivity of phone
-        ConnectivityManager cm =
-                (ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE);
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        boolean isConnected = activeNetwork != null &&
-                activeNetwork.isConnectedOrConnecting();
-        if(isConnected)
-        {
-            loaderManager.initLoader(EARTHQUAKE_LOADER_ID, null, this);
-        }
-        else
-        {
-            progressBar.setVisibility(View.GONE);
-            mEmptyStateTextView.setText(R.string.no_internet_string);
-        }
-        earthquakeListView.setEmptyView(mEmptyStateTextView);
-        adapter = new EarthQuakeAdapter(this, new ArrayList<EarthQuake>());
+        // Set an item click listener on the list, which opens the detail screen of the
+        // selected earthquake, usually with its detail already prefetched.
+        adapter = new EarthQuakeAdapter(this, new EarthQuakeAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(EarthQuake currentEarthquake) {
+                startActivity(EarthQuakeDetailActivity.newIntent(EarthquakeActivity.this, currentEarthquake));
+            }
+        });
 
         // Set the adapter on the {@link earthquakeListView}
         // so the list can be populated in the user interface
+        earthquakeListView.setLayoutManager(new LinearLayoutManager(this));
+        earthquakeListView.setHasFixedSize(true);
         earthquakeListView.setAdapter(adapter);
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with more information about the selected earthquake.
-        earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        //Prefetch the details of the rows on screen once they stop flying past
+        mListView = earthquakeListView;
+        mDetailPrefetcher = EarthQuakeFetcher.getDetailPrefetcher();
+        earthquakeListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                // Find the current earthquake that was clicked on
-                EarthQuake currentEarthquake = adapter.getItem(position);
-
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri earthquakeUri = Uri.parse(currentEarthquake.getURL());
-
-                // Create a new intent to view the earthquake URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, earthquakeUri);
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleDetails();
+                }
+            }
 
-                // Send the intent to launch a new activity
-                startActivity(websiteIntent);
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // A fling would queue every row it passes, wait for it to settle
+                if (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_SETTLING) {
+                    prefetchVisibleDetails();
+                }
             }
         });
 
+        //On a fresh launch draw the last list from its snapshot before anything else runs,
+        //after a rotation the loader still holds its result and delivers it at once
+        if (savedInstanceState == null) {
+            showSnapshot();
+        }
+
+        //Show the stored earthquakes straight away, the network result replaces them when it arrives
+        loaderManager.initLoader(STORE_LOADER_ID, null, this);
+
         //Refreshing the list
         swipeRefreshLayout.setOnRefreshListener(new SwipeRefreshLayout.OnRefreshListener() {
             @Override
             public void onRefresh() {
-                LoadTask refreshTask = new LoadTask();
-                ConnectivityManager cm =
-                        (ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE);
-                NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-                boolean isConnected = activeNetwork != null &&
-                        activeNetwork.isConnectedOrConnecting();
-                if(isConnected)
+                if(AppStartup.isConnected(EarthquakeActivity.this))
                 {
-                    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(getApplicationContext());
-                    // getString retrieves a String value from the preferences. The second parameter is the default value for this preference.
-                    String minMagnitude = sharedPrefs.getString(
-                            getString(R.string.settings_min_magnitude_key),
-                            getString(R.string.settings_min_magnitude_default));
-
-                    String orderBy  = sharedPrefs.getString(
-                            getString(R.string.settings_order_by_key),
-                            getString(R.string.settings_order_by_default)
-                    );
-
-                    // parse breaks apart the URI string that's passed into its parameter
-                    Uri baseUri = Uri.parse(USGS_URL);
-
-                    // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
-                    Uri.Builder uriBuilder = baseUri.buildUpon();
-
-                    // Append query parameter and its value. For example, the `format=geojson`
-                    uriBuilder.appendQueryParameter("format", "geojson");
-                    uriBuilder.appendQueryParameter("limit", "100");
-                    uriBuilder.appendQueryParameter("minmag", minMagnitude);
-                    uriBuilder.appendQueryParameter("orderby", orderBy);
-                    refreshTask.execute(uriBuilder.toString());
+                    // Joins the request in flight if the user swipes again before it finishes
+                    startFetch(true);
                 }
                 else
                 {
@@ -149,72 +190,335 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
                 }
             }
         });
+
+        //Listen for settings changes so they apply without a new query when possible
+        PreferenceManager.getDefaultSharedPreferences(this).registerOnSharedPreferenceChangeListener(this);
     }
 
     @Override
-    public Loader<List<EarthQuake>> onCreateLoader(int i, Bundle bundle) {
-        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
-
-        // getString retrieves a String value from the preferences. The second parameter is the default value for this preference.
-        String minMagnitude = sharedPrefs.getString(
-                getString(R.string.settings_min_magnitude_key),
-                getString(R.string.settings_min_magnitude_default));
+    protected void onDestroy() {
+        super.onDestroy();
+        PreferenceManager.getDefaultSharedPreferences(this).unregisterOnSharedPreferenceChangeListener(this);
+        // A request still running is delivered to the next instance if there is one
+        mFetchEngine.removeListener(this);
+        AppStartup.getInstance(this).removeListener(this);
+        mIndexExecutor.shutdownNow();
+    }
 
-        String orderBy  = sharedPrefs.getString(
-                getString(R.string.settings_order_by_key),
-                getString(R.string.settings_order_by_default)
-        );
+    @Override
+    public void onListStarted(EarthQuakeQuery query, boolean connected) {
+        mConnected = connected;
+        mConnectivityKnown = true;
+        mListQuery = query;
+        if (mIndex != null) {
+            // The index was waiting for the settings
+            showFromIndex();
+        }
+        if (mConnected) {
+            // Joins the request the startup work sent, or takes its result from the cache
+            mFetchQuery = query;
+            mFetchEngine.fetch(query, FETCH_TAG, this, false);
+        } else {
+            showOfflineIfEmpty();
+        }
+    }
 
-        // parse breaks apart the URI string that's passed into its parameter
-        Uri baseUri = Uri.parse(USGS_URL);
+    /**
+     * Fetch the query of the current settings through the fetch engine,
+     * which drops the previous query of the list if it was a different one.
+     * A cached result is shown at once, refresh asks USGS again even if it is fresh.
+     */
+    private void startFetch(boolean refresh) {
+        if (mListQuery == null) {
+            // The startup work has not read the settings yet, its request is on the way
+            return;
+        }
+        mFetchQuery = mListQuery;
+        mFetchEngine.fetch(mFetchQuery, FETCH_TAG, this, refresh);
+    }
 
-        // buildUpon prepares the baseUri that we just parsed so we can add query parameters to it
-        Uri.Builder uriBuilder = baseUri.buildUpon();
+    @Override
+    public void onFetchFinished(EarthQuakeQuery query, List<EarthQuake> earthQuakes) {
+        if (!query.equals(mFetchQuery)) {
+            return;
+        }
+        progressBar.setVisibility(View.GONE);
+        mEmptyStateTextView.setText(R.string.empty_list_string);
+        // A cached result comes first, the spinner stays until its revalidation is in too
+        if (!mFetchEngine.isFetching(FETCH_TAG)) {
+            swipeRefreshLayout.setRefreshing(false);
+        }
+        // If the request failed keep showing the stored earthquakes
+        if (earthQuakes == null) {
+            return;
+        }
+        mNetworkLoaded = true;
+        // The list is fresh now, the next background sync can wait a whole interval
+        if (!mFetchEngine.isFetching(FETCH_TAG)) {
+            SyncScheduler.getInstance(this).onForegroundRefresh();
+        }
+        // Revalidating the cached result found nothing new, leave the list alone
+        if (earthQuakes == mFetchedEarthQuakes) {
+            return;
+        }
+        mFetchedEarthQuakes = earthQuakes;
+        showEarthQuakes(earthQuakes, query.getMinMagnitude(), query.getOrderBy(), query.getLimit());
+        recordFirstRows(Metrics.STARTUP_FIRST_ROWS);
+    }
 
-        // Append query parameter and its value. For example, the `format=geojson`
-        uriBuilder.appendQueryParameter("format", "geojson");
-        uriBuilder.appendQueryParameter("limit", "25");
-        uriBuilder.appendQueryParameter("minmag", minMagnitude);
-        uriBuilder.appendQueryParameter("orderby", "time");
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (!key.equals(getString(R.string.settings_min_magnitude_key))
+                && !key.equals(getString(R.string.settings_order_by_key))) {
+            return;
+        }
+        // The preferences are in memory once they change, reading them does not wait for the disk
+        mListQuery = EarthQuakeFetcher.getListQuery(this, sharedPreferences);
+        // The loaded events already hold the whole list of the new settings
+        if (mIndex != null && mIndex.covers(mListQuery.getMinMagnitude(), mListQuery.getOrderBy(),
+                mListQuery.getLimit())) {
+            showFromIndex();
+            return;
+        }
+        // Otherwise the new range has to come from the store and USGS
+        mNetworkLoaded = false;
+        mFetchedEarthQuakes = null;
+        getLoaderManager().restartLoader(STORE_LOADER_ID, null, this);
+        // The network may have come or gone since the launch checked it, the swipe checks it again too.
+        // Offline, the store load just restarted tells the user once it comes up empty
+        mConnected = AppStartup.isConnected(this);
+        mConnectivityKnown = true;
+        if (mConnected) {
+            startFetch(false);
+        }
+    }
 
-        // Return the completed uri `http://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=10&minmag=minMagnitude&orderby=time
-        return new EarthQuakeLoader(this, uriBuilder.toString());
+    @Override
+    public Loader<List<EarthQuake>> onCreateLoader(int i, Bundle bundle) {
+        // The loader reads the settings itself, on its background thread
+        return new StoredEarthQuakeLoader(this, adapter.getRowModelFactory());
     }
 
     @Override
     public void onLoadFinished(Loader<List<EarthQuake>> loader, List<EarthQuake> earthQuakes) {
-        progressBar.setVisibility(View.GONE);
-        mEmptyStateTextView.setText(R.string.empty_list_string);
-        adapter.clear();
-        if(earthQuakes!=null && !earthQuakes.isEmpty())
-            adapter.addAll(earthQuakes);
+        if (mNetworkLoaded) {
+            return;
+        }
+        mStoreEmpty = earthQuakes == null || earthQuakes.isEmpty();
+        if (!mStoreEmpty) {
+            progressBar.setVisibility(View.GONE);
+            EarthQuakeQuery query = ((StoredEarthQuakeLoader) loader).getQuery();
+            if (mListQuery == null) {
+                mListQuery = query;
+            }
+            showEarthQuakes(earthQuakes, query.getMinMagnitude(), query.getOrderBy(), query.getLimit());
+            recordFirstRows(Metrics.STARTUP_FIRST_ROWS);
+        } else {
+            showOfflineIfEmpty();
+        }
+    }
+
+    /**
+     * Tell the user there is no connection once both the store came up empty and the
+     * network turned out to be missing, whichever of the two is known last.
+     */
+    private void showOfflineIfEmpty() {
+        if (mStoreEmpty && mConnectivityKnown && !mConnected) {
+            progressBar.setVisibility(View.GONE);
+            mEmptyStateTextView.setText(R.string.no_internet_string);
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<List<EarthQuake>> loader) {
-        adapter.clear();
+        submitList(null);
     }
 
-    //AsyncTask for SwipeRefreshing
-    public class LoadTask extends AsyncTask<String, Void, List<EarthQuake>> {
-        @Override
-        protected List<EarthQuake> doInBackground(String... urls) {
-            if (urls.length < 1 || urls[0] == null) {
-                return null;
+    /**
+     * Show the list snapshotted by the last fetch, the store and the network replace it
+     * once they answer. A snapshot that cannot be decoded is deleted.
+     */
+    private void showSnapshot() {
+        File file = EarthQuakeFetcher.getSnapshotFile(this);
+        ListSnapshot snapshot;
+        List<EarthQuake> earthQuakes;
+        try {
+            snapshot = ListSnapshot.open(file);
+            if (snapshot == null || snapshot.size() == 0) {
+                return;
             }
-            // Create a list of earthquake locations.
-            return QueryUtils.fetchEarthquakeData(urls[0]);
+            // Decoded here rather than while the rows are built, where a bad record would crash the list
+            earthQuakes = new ArrayList<>(snapshot.asList());
+        } catch (IOException e) {
+            return;
+        } catch (RuntimeException e) {
+            // A record pointing outside the file, the header checks cannot see every damage
+            Log.w(LOG_TAG, "Deleting an unreadable list snapshot", e);
+            file.delete();
+            return;
         }
+        progressBar.setVisibility(View.GONE);
+        // The snapshot does not say which order it was fetched in, it covers other settings only if complete
+        showEarthQuakes(earthQuakes, snapshot.getCoveredMinMagnitude(), null, EarthQuakeFetcher.LIST_LIMIT);
+        recordFirstRows(Metrics.STARTUP_FIRST_ROWS_SNAPSHOT);
+    }
 
-        @Override
-        protected void onPostExecute(List<EarthQuake> earthQuakes) {
-            progressBar.setVisibility(View.GONE);
-            mEmptyStateTextView.setText(R.string.empty_list_string);
-            adapter.clear();
-            if(earthQuakes!=null && !earthQuakes.isEmpty())
-                adapter.addAll(earthQuakes);
-            swipeRefreshLayout.setRefreshing(false);
+    /**
+     * Record how long the launch took to show its first rows, once per launch. The system
+     * logs it as "Fully drawn" as well, which is what the cold start benchmark reads.
+     */
+    private void recordFirstRows(String stage) {
+        if (mCreateTime != 0) {
+            Metrics.end(stage, mCreateTime);
+            mCreateTime = 0;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                reportFullyDrawn();
+            }
+        }
+    }
+
+    /**
+     * Show the given earthquakes, fetched with the given min magnitude, order and limit,
+     * as they are and index them in the background. Once the index is in they are shown
+     * filtered and ordered by the current settings, which a snapshot may predate.
+     */
+    private void showEarthQuakes(final List<EarthQuake> earthQuakes, final double coveredMinMagnitude,
+                                 final String orderBy, final int limit) {
+        final int generation = ++mIndexGeneration;
+        mIndex = null;
+        mLoadedEarthQuakes = earthQuakes;
+        mSearchIndex = null;
+        // A search has to wait for the index, until then the previous matches stay
+        if (mSearchQuery.trim().isEmpty()) {
+            submitList(earthQuakes);
+        }
+        mIndexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes, coveredMinMagnitude, orderBy, limit);
+                // Built whether or not the user searches, so the first keystroke does not wait for it
+                final PlaceSearchIndex searchIndex = new PlaceSearchIndex(earthQuakes);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mIndexGeneration) {
+                            return;
+                        }
+                        mIndex = index;
+                        mSearchIndex = searchIndex;
+                        showFromIndex();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the loaded events for the current settings and search. If the settings are
+     * not known yet or the index does not cover them, they are shown as loaded until
+     * the store and USGS answer.
+     */
+    private void showFromIndex() {
+        EarthQuakeQuery query = mListQuery;
+        List<EarthQuake> earthQuakes = query != null
+                && mIndex.covers(query.getMinMagnitude(), query.getOrderBy(), query.getLimit())
+                ? mIndex.query(query.getMinMagnitude(), query.getOrderBy(), query.getLimit()) : mLoadedEarthQuakes;
+        if (!mSearchQuery.trim().isEmpty()) {
+            earthQuakes = mSearchIndex.filter(earthQuakes, mSearchQuery);
+        }
+        submitList(earthQuakes);
+    }
+
+    /**
+     * Build the rows of the list in the background and hand them to the adapter, which
+     * diffs them against the current ones off the main thread, and show the empty view
+     * when there is nothing to show. Most rows were prepared by the loader and are only
+     * looked up, but a snapshot's are built here, and even the lookups of a full window
+     * are too slow for the main thread.
+     */
+    private void submitList(final List<EarthQuake> earthQuakes) {
+        final int generation = ++mSubmitGeneration;
+        if (earthQuakes == null) {
+            showRows(null);
+            return;
+        }
+        // The activity is gone, a list posted by an index built before that has nowhere to go
+        if (mIndexExecutor.isShutdown()) {
+            return;
+        }
+        mIndexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<EarthQuakeRow> rows = adapter.getRowModelFactory().rowsFor(earthQuakes);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mSubmitGeneration) {
+                            showRows(rows);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void showRows(List<EarthQuakeRow> rows) {
+        adapter.submitList(rows);
+        boolean empty = rows == null || rows.isEmpty();
+        mEmptyStateTextView.setVisibility(empty ? View.VISIBLE : View.GONE);
+        // The diff is applied asynchronously, look at the rows once it has been laid out
+        mListView.post(new Runnable() {
+            @Override
+            public void run() {
+                prefetchVisibleDetails();
+            }
+        });
+    }
+
+    /**
+     * Prefetch the details of the rows on screen, dropping those of rows that left it.
+     */
+    private void prefetchVisibleDetails() {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mListView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        ArrayList<String> visibleIds = new ArrayList<>(last - first + 1);
+        for (int position = first; position <= last && position < adapter.getItemCount(); position++) {
+            visibleIds.add(adapter.getEarthQuake(position).getId());
+        }
+        mDetailPrefetcher.prefetch(visibleIds);
+    }
+
+    /**
+     * Show the timings and counters of the pipeline stages recorded so far,
+     * along with the hit rates of the caches.
+     */
+    private void showMetrics() {
+        StringBuilder report = new StringBuilder();
+        if (Metrics.getSink() instanceof HistogramSink) {
+            report.append(((HistogramSink) Metrics.getSink()).dump());
+        }
+        QueryCache queryCache = mFetchEngine.getCache();
+        report.append(String.format(Locale.US, "query_cache.hit_rate  %.2f (stale served %d, avg age %ds)%n",
+                queryCache.getHitRate(), queryCache.getStaleHits(),
+                queryCache.getAverageStaleAgeMillis() / 1000));
+        report.append(String.format(Locale.US, "query_cache.tiers  hot %d (%d KB), warm %d (%d KB), cold %d (%d KB)%n",
+                queryCache.getTierEntries(QueryCache.TIER_HOT), queryCache.getTierBytes(QueryCache.TIER_HOT) / 1024,
+                queryCache.getTierEntries(QueryCache.TIER_WARM), queryCache.getTierBytes(QueryCache.TIER_WARM) / 1024,
+                queryCache.getTierEntries(QueryCache.TIER_COLD), queryCache.getTierBytes(QueryCache.TIER_COLD) / 1024));
+        DiskResponseCache responseCache = QueryUtils.getResponseCache();
+        if (responseCache != null) {
+            report.append(String.format(Locale.US, "response_cache.saved  %.2f of %d bytes%n",
+                    responseCache.getBytesSavedRatio(),
+                    responseCache.getNetworkBytes() + responseCache.getSavedBytes()));
         }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.debug_metrics_title)
+                .setMessage(report.toString())
+                .show();
     }
 
     //Handle the menu of the app bar
@@ -227,6 +531,10 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
                 startActivity(settingsIntent);
                 return true;
 
+            case R.id.debug_metrics_button:
+                showMetrics();
+                return true;
+
             default:
                 // If we got here, the user's action was not recognized.
                 // Invoke the superclass to handle it.
@@ -239,6 +547,28 @@ public class EarthquakeActivity extends AppCompatActivity implements LoaderManag
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu, menu);
+        //The metrics are recorded in every build, but only debug builds can show them
+        menu.findItem(R.id.debug_metrics_button).setVisible(BuildConfig.DEBUG);
+
+        //Filter the loaded earthquakes on every keystroke, no new query is needed
+        final SearchView searchView = (SearchView) menu.findItem(R.id.search_button).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mSearchQuery = newText;
+                if (mIndex != null) {
+                    showFromIndex();
+                }
+                return true;
+            }
+        });
         return true;
     }
 }
@@ -0,0 +1,24 @@
+package com.example.android.quakereport;
+
+import android.app.Application;
+
+import com.example.android.quakereport.memory.MemoryPressure;
+
+/**
+ * Hands the memory pressure the system reports to the caches, which register themselves
+ * with {@link MemoryPressure} when they are created.
+ */
+public class QuakeReportApplication extends Application {
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryPressure.dispatch(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        // The whole system is out of memory, the worst trim level there is
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+    }
+}
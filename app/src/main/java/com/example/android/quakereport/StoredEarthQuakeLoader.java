@@ -0,0 +1,61 @@
+package com.example.android.quakereport;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+import com.example.android.quakereport.adapter.RowModelFactory;
+import com.example.android.quakereport.data.EarthQuakeStore;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.util.List;
+
+/**
+ * Loads the earthquakes kept in the local {@link EarthQuakeStore}, used to fill
+ * the list while the network request is still running or when there is no connection.
+ */
+public class StoredEarthQuakeLoader extends AsyncTaskLoader<List<EarthQuake>> {
+    private final RowModelFactory mRowModelFactory;
+    //Query of the last load, read from the settings in the background
+    private volatile EarthQuakeQuery mQuery;
+    //Result of the last load, delivered again instead of querying the store on every start
+    private List<EarthQuake> mEarthQuakes;
+
+    public StoredEarthQuakeLoader(Context context, RowModelFactory rowModelFactory) {
+        super(context);
+        mRowModelFactory = rowModelFactory;
+    }
+
+    /**
+     * Return the query the delivered earthquakes were loaded with.
+     */
+    public EarthQuakeQuery getQuery() {
+        return mQuery;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mEarthQuakes != null) {
+            deliverResult(mEarthQuakes);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public List<EarthQuake> loadInBackground() {
+        // Read the settings here, not on the main thread, the first read waits for the preferences file
+        EarthQuakeQuery query = EarthQuakeFetcher.getListQuery(getContext());
+        mQuery = query;
+        List<EarthQuake> earthQuakes = EarthQuakeStore.getInstance(getContext())
+                .query(query.getMinMagnitude(), query.getOrderBy(), query.getLimit());
+        // Build the list rows here so the main thread only has to bind them
+        mRowModelFactory.prepare(earthQuakes);
+        return earthQuakes;
+    }
+
+    @Override
+    public void deliverResult(List<EarthQuake> earthQuakes) {
+        mEarthQuakes = earthQuakes;
+        super.deliverResult(earthQuakes);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.FetchEngine;
+import com.example.android.quakereport.sync.SyncPolicy;
+
+import java.util.List;
+
+/**
+ * Runs the background syncs scheduled by {@link SyncScheduler}. The fetch goes through
+ * the app's {@link FetchEngine} under its own tag, so a sync of the list joins a refresh
+ * the user started instead of repeating it, and the result lands in the store, the list
+ * snapshot and the query cache like any other fetch.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class SyncJobService extends JobService implements FetchEngine.Listener {
+    private static final String SYNC_TAG = "background_sync";
+
+    private FetchEngine mFetchEngine;
+    private JobParameters mParams;
+    private int mWork;
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        SyncScheduler scheduler = SyncScheduler.getInstance(this);
+        // Both jobs end up here, the policy picks what is actually due under the current conditions
+        int work = scheduler.decide();
+        if (work == SyncPolicy.WORK_NONE || mParams != null) {
+            scheduler.schedule();
+            return false;
+        }
+        mWork = work;
+        mParams = params;
+        EarthQuakeQuery query = work == SyncPolicy.WORK_BACKFILL
+                ? scheduler.getBackfillQuery() : EarthQuakeFetcher.getListQuery(this);
+        mFetchEngine = EarthQuakeFetcher.getEngine(this);
+        mFetchEngine.fetch(query, SYNC_TAG, this, true);
+        return true;
+    }
+
+    @Override
+    public void onFetchFinished(EarthQuakeQuery query, List<EarthQuake> earthQuakes) {
+        // A cached result is delivered first, wait for the network
+        if (mParams == null || mFetchEngine.isFetching(SYNC_TAG)) {
+            return;
+        }
+        SyncScheduler.getInstance(this).onFinished(mWork, earthQuakes != null);
+        JobParameters params = mParams;
+        mParams = null;
+        jobFinished(params, false);
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The conditions went away, drop the fetch and let the policy schedule the next one
+        mFetchEngine.cancel(SYNC_TAG);
+        mFetchEngine.removeListener(this);
+        mParams = null;
+        SyncScheduler.getInstance(this).schedule();
+        return false;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.quakereport;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.QueryPlanner;
+import com.example.android.quakereport.sync.SyncPolicy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the background syncs {@link SyncPolicy} asks for as JobScheduler jobs run by
+ * {@link SyncJobService}, and keeps the policy's state across process deaths. Deltas wait
+ * for any network, backfills for an unmetered one while charging. Background sync needs
+ * JobScheduler, on older devices the list is only fetched while the app is open.
+ */
+public class SyncScheduler {
+    private static final int DELTA_JOB_ID = 1;
+    private static final int BACKFILL_JOB_ID = 2;
+    //USGS updates its feeds every minute, nobody needs the list fresher than this in the background
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long BACKFILL_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(6);
+    //Days of events a backfill brings into the store
+    private static final long BACKFILL_DAYS = 7;
+    //Battery percentage below which deltas run less often
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private static final String PREFERENCES_NAME = "sync";
+    private static final String KEY_LAST_SYNC = "last_sync";
+    private static final String KEY_LAST_BACKFILL = "last_backfill";
+    private static final String KEY_FAILURES = "failures";
+    private static final String KEY_LAST_FAILURE = "last_failure";
+
+    private static SyncScheduler sInstance;
+
+    private final Context mContext;
+    private final SharedPreferences mState;
+    private final SyncPolicy mPolicy = new SyncPolicy(SyncPolicy.SYSTEM_CLOCK, SYNC_INTERVAL_MILLIS,
+            BACKFILL_INTERVAL_MILLIS, RETRY_MILLIS, MAX_BACKOFF_MILLIS);
+
+    private SyncScheduler(Context context) {
+        mContext = context;
+        mState = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPolicy.restore(mState.getLong(KEY_LAST_SYNC, 0), mState.getLong(KEY_LAST_BACKFILL, 0),
+                (int) mState.getLong(KEY_FAILURES, 0), mState.getLong(KEY_LAST_FAILURE, 0));
+    }
+
+    public static synchronized SyncScheduler getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncScheduler(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * (Re)schedule the next delta and backfill, replacing the jobs scheduled before.
+     */
+    public void schedule() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler jobScheduler = (JobScheduler) mContext.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        ComponentName service = new ComponentName(mContext, SyncJobService.class);
+        long now = System.currentTimeMillis();
+        jobScheduler.schedule(new JobInfo.Builder(DELTA_JOB_ID, service)
+                .setMinimumLatency(Math.max(0, mPolicy.getDeltaAt() - now))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPersisted(true)
+                .build());
+        // Without a deadline this only runs on Wi-Fi while charging, the delta job takes
+        // the backfill over when it has waited too long for that
+        jobScheduler.schedule(new JobInfo.Builder(BACKFILL_JOB_ID, service)
+                .setMinimumLatency(Math.max(0, mPolicy.getBackfillAt() - now))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPersisted(true)
+                .build());
+    }
+
+    /**
+     * Return the work to do now, one of the SyncPolicy.WORK_ constants.
+     */
+    public int decide() {
+        return mPolicy.decide(getConditions());
+    }
+
+    /**
+     * Record the outcome of the given work and schedule the next.
+     */
+    public void onFinished(int work, boolean success) {
+        mPolicy.onFinished(work, success);
+        save();
+        schedule();
+    }
+
+    /**
+     * Record a fetch of the list made by the app itself, which pushes the next delta out.
+     */
+    public void onForegroundRefresh() {
+        mPolicy.onForegroundRefresh();
+        save();
+        schedule();
+    }
+
+    /**
+     * Return the query of a backfill: every event of the last days above the list's min
+     * magnitude, fetched in slices by the query planner.
+     */
+    public EarthQuakeQuery getBackfillQuery() {
+        EarthQuakeQuery listQuery = EarthQuakeFetcher.getListQuery(mContext);
+        long now = System.currentTimeMillis();
+        return new EarthQuakeQuery(listQuery.getMinMagnitude(), listQuery.getOrderBy(),
+                QueryPlanner.MAX_EVENTS_PER_QUERY, now - TimeUnit.DAYS.toMillis(BACKFILL_DAYS), now)
+                .withFormat(EarthQuakeQuery.FORMAT_CSV);
+    }
+
+    private void save() {
+        mState.edit()
+                .putLong(KEY_LAST_SYNC, mPolicy.getLastSync())
+                .putLong(KEY_LAST_BACKFILL, mPolicy.getLastBackfill())
+                .putLong(KEY_FAILURES, mPolicy.getFailures())
+                .putLong(KEY_LAST_FAILURE, mPolicy.getLastFailure())
+                .apply();
+    }
+
+    /**
+     * Read the network and battery state the policy decides on.
+     */
+    private SyncPolicy.Conditions getConditions() {
+        ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        boolean connected = activeNetwork != null && activeNetwork.isConnected();
+        boolean unmetered = connected && !cm.isActiveNetworkMetered();
+
+        // The battery broadcast is sticky, registering without a receiver just reads it
+        Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = false;
+        boolean batteryLow = false;
+        if (battery != null) {
+            charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            batteryLow = level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+        }
+        return new SyncPolicy.Conditions(connected, unmetered, charging, batteryLow);
+    }
+}
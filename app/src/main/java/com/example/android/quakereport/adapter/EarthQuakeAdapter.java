@@ -5,54 +5,112 @@ import android.graphics.Typeface;
 import android.graphics.drawable.GradientDrawable;
 import android.os.Build;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
-import android.support.v4.content.ContextCompat;
-import android.util.Log;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
 import com.example.android.quakereport.EarthQuake;
 import com.example.android.quakereport.R;
+import com.example.android.quakereport.metrics.Metrics;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
 
-public class EarthQuakeAdapter extends ArrayAdapter<EarthQuake> {
-    private static final String LOCATION_SEPARATOR = " of ";
-    public EarthQuakeAdapter(@NonNull Context context, ArrayList<EarthQuake> earthQuakes) {
-        super(context, 0, earthQuakes);
+public class EarthQuakeAdapter extends ListAdapter<EarthQuakeRow, EarthQuakeAdapter.ViewHolder> {
+    private final Context context;
+    private final OnItemClickListener listener;
+    private final RowModelFactory rowModelFactory;
+    //Shared by every list, loaded in the background at launch, only used on api 26 and above
+    private static volatile Typeface sTypeface;
+
+    /**
+     * Called when the user taps an earthquake in the list.
+     */
+    public interface OnItemClickListener {
+        void onItemClick(EarthQuake earthQuake);
     }
 
+    public EarthQuakeAdapter(@NonNull Context context, OnItemClickListener listener) {
+        super(DIFF_CALLBACK);
+        this.context = context;
+        this.listener = listener;
+        rowModelFactory = RowModelFactory.getInstance(context);
+    }
+
+    /**
+     * Load the font of the rows unless it is loaded already or the api is below 26.
+     * Reading it takes a while, so launches call this on a background thread before the
+     * first row is created. Returns true if this call loaded it.
+     */
+    public static boolean preloadTypeface(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || sTypeface != null) {
+            return false;
+        }
+        sTypeface = context.getResources().getFont(R.font.tnr);
+        return true;
+    }
+
+    /**
+     * Factory the loaders use to build the rows in the background before they are shown,
+     * the rows handed to {@link #submitList(List)} come from it, looked up off the main thread.
+     */
+    public RowModelFactory getRowModelFactory() {
+        return rowModelFactory;
+    }
+
+    /**
+     * Return the earthquake shown at the given position.
+     */
+    public EarthQuake getEarthQuake(int position) {
+        return getItem(position).getEarthQuake();
+    }
+
+    /**
+     * Earthquakes are the same row when they have the same USGS id, and only need to be
+     * rebound when USGS updated them. The diff itself runs on a background thread.
+     */
+    private static final DiffUtil.ItemCallback<EarthQuakeRow> DIFF_CALLBACK = new DiffUtil.ItemCallback<EarthQuakeRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull EarthQuakeRow oldItem, @NonNull EarthQuakeRow newItem) {
+            return oldItem.getEarthQuake().getId().equals(newItem.getEarthQuake().getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull EarthQuakeRow oldItem, @NonNull EarthQuakeRow newItem) {
+            EarthQuake oldQuake = oldItem.getEarthQuake();
+            EarthQuake newQuake = newItem.getEarthQuake();
+            return oldQuake.getUpdated() == newQuake.getUpdated()
+                    && oldQuake.getMag() == newQuake.getMag()
+                    && oldQuake.getTimestamp() == newQuake.getTimestamp()
+                    && oldQuake.getTitle().equals(newQuake.getTitle());
+        }
+    };
+
     //ViewHolder class to reduce search
-    static class ViewHolder
+    static class ViewHolder extends RecyclerView.ViewHolder
     {
         private TextView mag,location, country, date, time;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            mag = itemView.findViewById(R.id.mag_string);
+            location = itemView.findViewById(R.id.location_string);
+            country = itemView.findViewById(R.id.country_string);
+            date = itemView.findViewById(R.id.date_string);
+            time = itemView.findViewById(R.id.time_string);
+        }
     }
 
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        ViewHolder holder;
-        // Check if an existing view is being reused, otherwise inflate the view
-        if (convertView == null) {
-            convertView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.card_item, parent, false);
-            holder = new ViewHolder();
-            holder.mag = convertView.findViewById(R.id.mag_string);
-            holder.location = convertView.findViewById(R.id.location_string);
-            holder.country = convertView.findViewById(R.id.country_string);
-            holder.date = convertView.findViewById(R.id.date_string);
-            holder.time = convertView.findViewById(R.id.time_string);
-            convertView.setTag(holder);
-        }
-        else {
-            holder = (ViewHolder) convertView.getTag();
-        }
-        //Set TextViews to smallcaps if api is above 21 and font as times new roman for api 26
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(context).inflate(R.layout.card_item, parent, false);
+        final ViewHolder holder = new ViewHolder(itemView);
+        //Set TextViews to smallcaps if api is above 21 and font as times new roman for api 26,
+        //this only has to happen once per view, not on every bind
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
         {
             holder.mag.setFontFeatureSettings("smcp");
@@ -61,81 +119,39 @@ public class EarthQuakeAdapter extends ArrayAdapter<EarthQuake> {
             holder.time.setFontFeatureSettings("smcp");
             if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
             {
-                Typeface typeface = convertView.getResources().getFont(R.font.tnr);
-                holder.mag.setTypeface(typeface);
-                holder.country.setTypeface(typeface);
-                holder.date.setTypeface(typeface);
-                holder.time.setTypeface(typeface);
+                //Only loads here if the row comes before the background load finished
+                preloadTypeface(context);
+                holder.mag.setTypeface(sTypeface);
+                holder.country.setTypeface(sTypeface);
+                holder.date.setTypeface(sTypeface);
+                holder.time.setTypeface(sTypeface);
             }
         }
-        EarthQuake currentQuake = getItem(position);
-        String originalLocation = currentQuake.getTitle();
-        String location;
-        String country;
-        if (originalLocation.contains(LOCATION_SEPARATOR)) {
-            String[] parts = originalLocation.split(LOCATION_SEPARATOR);
-            location = parts[0] + LOCATION_SEPARATOR;
-            country = parts[1];
-        } else {
-            location = getContext().getString(R.string.near_the);
-            country = originalLocation;
-        }
-        Date date = new Date(currentQuake.getTimestamp());
-        String formattedDate = formatDate(date);
-        String formattedTime = formatTime(date);
-        GradientDrawable gradientDrawable = (GradientDrawable) holder.mag.getBackground();
-        int magColor = getMagnitudeColor(currentQuake.getMag());
-        gradientDrawable.setColor(magColor);
-
-        holder.mag.setText(String.format("%2.1f",currentQuake.getMag()));//Double.toString(currentQuake.getMag())
-        holder.location.setText(location);
-        holder.country.setText(country);
-        holder.date.setText(formattedDate);
-        holder.time.setText(formattedTime);
-        return convertView;
-    }
-
-    /**
-     * Return the formatted date string (i.e. "Mar 3, 1984") from a Date object.
-     */
-    private String formatDate(Date dateObject) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy");
-        return dateFormat.format(dateObject);
+        itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    listener.onItemClick(getItem(position).getEarthQuake());
+                }
+            }
+        });
+        return holder;
     }
 
-    /**
-     * Return the formatted date string (i.e. "4:30 PM") from a Date object.
-     */
-    private String formatTime(Date dateObject) {
-        SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
-        return timeFormat.format(dateObject);
-    }
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        //Everything is formatted ahead of time, binding only sets fields
+        long start = Metrics.start();
+        EarthQuakeRow row = getItem(position);
+        GradientDrawable gradientDrawable = (GradientDrawable) holder.mag.getBackground();
+        gradientDrawable.setColor(row.getMagnitudeColor());
 
-    private int getMagnitudeColor(double magnitude) {
-        Log.d("magnitude:",Double.toString(magnitude));
-        int magnitudeFloor = (int) Math.floor(magnitude);
-        switch (magnitudeFloor) {
-            case 0:
-            case 1:
-                return ContextCompat.getColor(getContext(), R.color.magnitude1);
-            case 2:
-                return ContextCompat.getColor(getContext(), R.color.magnitude2);
-            case 3:
-                return ContextCompat.getColor(getContext(), R.color.magnitude3);
-            case 4:
-                return ContextCompat.getColor(getContext(), R.color.magnitude4);
-            case 5:
-                return ContextCompat.getColor(getContext(), R.color.magnitude5);
-            case 6:
-                return ContextCompat.getColor(getContext(), R.color.magnitude6);
-            case 7:
-                return ContextCompat.getColor(getContext(), R.color.magnitude7);
-            case 8:
-                return ContextCompat.getColor(getContext(), R.color.magnitude8);
-            case 9:
-                return ContextCompat.getColor(getContext(), R.color.magnitude9);
-            default:
-                return ContextCompat.getColor(getContext(), R.color.magnitude10plus);
-        }
+        holder.mag.setText(row.getMagnitude());
+        holder.location.setText(row.getLocation());
+        holder.country.setText(row.getCountry());
+        holder.date.setText(row.getDate());
+        holder.time.setText(row.getTime());
+        Metrics.end(Metrics.BIND, start);
     }
 }
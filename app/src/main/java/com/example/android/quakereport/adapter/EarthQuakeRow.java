@@ -0,0 +1,42 @@
+package com.example.android.quakereport.adapter;
+
+import com.example.android.quakereport.EarthQuake;
+
+/**
+ * Everything a list row shows for one earthquake, formatted ahead of time by
+ * {@link RowModelFactory} so binding a row is only a matter of setting fields.
+ */
+public class EarthQuakeRow {
+    private final EarthQuake earthQuake;
+    private final String magnitude;
+    private final String location;
+    private final String country;
+    private final String date;
+    private final String time;
+    private final int magnitudeColor;
+
+    EarthQuakeRow(EarthQuake earthQuake, String magnitude, String location, String country,
+                  String date, String time, int magnitudeColor) {
+        this.earthQuake = earthQuake;
+        this.magnitude = magnitude;
+        this.location = location;
+        this.country = country;
+        this.date = date;
+        this.time = time;
+        this.magnitudeColor = magnitudeColor;
+    }
+
+    public EarthQuake getEarthQuake() {return earthQuake;}
+
+    public String getMagnitude() {return magnitude;}
+
+    public String getLocation() {return location;}
+
+    public String getCountry() {return country;}
+
+    public String getDate() {return date;}
+
+    public String getTime() {return time;}
+
+    public int getMagnitudeColor() {return magnitudeColor;}
+}
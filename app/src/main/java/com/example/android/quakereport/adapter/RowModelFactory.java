@@ -0,0 +1,128 @@
+package com.example.android.quakereport.adapter;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.EarthQuakeFormat;
+import com.example.android.quakereport.R;
+import com.example.android.quakereport.memory.MemoryPressure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the {@link EarthQuakeRow} of every earthquake once, on the loader's background
+ * thread, and keeps the most recent ones so the adapter never formats on the main thread.
+ */
+public class RowModelFactory implements MemoryPressure.Trimmable {
+    //Enough rows for the largest result window we show
+    private static final int MAX_CACHED_ROWS = 20000;
+    //Rows kept when memory runs short while the list is shown, about one list
+    private static final int IDLE_CACHED_ROWS = 200;
+
+    private static RowModelFactory sInstance;
+
+    //Resource values resolved once instead of on every bind
+    private final int[] magnitudeColors;
+
+    //Not thread safe, only used while holding the lock on this
+    private final EarthQuakeFormat format;
+
+    //Rows keyed on the USGS id, least recently used first
+    private final LinkedHashMap<String, EarthQuakeRow> rows =
+            new LinkedHashMap<String, EarthQuakeRow>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, EarthQuakeRow> eldest) {
+                    return size() > MAX_CACHED_ROWS;
+                }
+            };
+
+    /**
+     * Return the factory shared by every list, so rows prepared by a loader survive rotation.
+     */
+    public static synchronized RowModelFactory getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RowModelFactory(context.getApplicationContext());
+            MemoryPressure.register(sInstance);
+        }
+        return sInstance;
+    }
+
+    private RowModelFactory(Context context) {
+        format = new EarthQuakeFormat(context.getString(R.string.near_the));
+        // Index i holds the color for magnitude band i of EarthQuakeFormat.bandOf
+        int[] colorIds = {R.color.magnitude1, R.color.magnitude1, R.color.magnitude2,
+                R.color.magnitude3, R.color.magnitude4, R.color.magnitude5, R.color.magnitude6,
+                R.color.magnitude7, R.color.magnitude8, R.color.magnitude9, R.color.magnitude10plus};
+        magnitudeColors = new int[colorIds.length];
+        for (int i = 0; i < colorIds.length; i++) {
+            magnitudeColors[i] = ContextCompat.getColor(context, colorIds[i]);
+        }
+    }
+
+    /**
+     * Build the rows of the given earthquakes, meant to be called from a background thread
+     * right after they are loaded.
+     */
+    public void prepare(List<EarthQuake> earthQuakes) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            rowFor(earthQuake);
+        }
+    }
+
+    /**
+     * Return the rows of the given earthquakes, building only the ones that were not prepared.
+     */
+    public List<EarthQuakeRow> rowsFor(List<EarthQuake> earthQuakes) {
+        ArrayList<EarthQuakeRow> result = new ArrayList<>(earthQuakes.size());
+        for (EarthQuake earthQuake : earthQuakes) {
+            result.add(rowFor(earthQuake));
+        }
+        return result;
+    }
+
+    /**
+     * Return the row of the given earthquake, building it if it was not prepared.
+     */
+    public synchronized EarthQuakeRow rowFor(EarthQuake earthQuake) {
+        EarthQuakeRow row = rows.get(earthQuake.getId());
+        // A row is reused as long as USGS has not updated the event since it was built
+        if (row == null || row.getEarthQuake().getUpdated() != earthQuake.getUpdated()) {
+            row = create(earthQuake);
+            rows.put(earthQuake.getId(), row);
+        }
+        return row;
+    }
+
+    /**
+     * Drop all but the most recently used rows, or all of them once nothing parsed is to stay.
+     * Dropped rows are built again when they are bound.
+     */
+    @Override
+    public synchronized void trim(int release) {
+        int keep = release >= MemoryPressure.RELEASE_HOT ? 0 : IDLE_CACHED_ROWS;
+        Iterator<EarthQuakeRow> iterator = rows.values().iterator();
+        while (rows.size() > keep && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private EarthQuakeRow create(EarthQuake earthQuake) {
+        return new EarthQuakeRow(earthQuake,
+                format.formatMagnitude(earthQuake.getMag()),
+                format.getLocation(earthQuake.getTitle()),
+                format.getCountry(earthQuake.getTitle()),
+                format.formatDate(earthQuake.getTimestamp()),
+                format.formatTime(earthQuake.getTimestamp()),
+                getMagnitudeColor(earthQuake.getMag()));
+    }
+
+    private int getMagnitudeColor(double magnitude) {
+        return magnitudeColors[EarthQuakeFormat.bandOf(magnitude)];
+    }
+}
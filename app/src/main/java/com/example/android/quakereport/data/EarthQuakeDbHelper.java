@@ -0,0 +1,53 @@
+package com.example.android.quakereport.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Creates the local database that {@link EarthQuakeStore} keeps earthquakes in.
+ */
+public class EarthQuakeDbHelper extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "earthquakes.db";
+    private static final int DATABASE_VERSION = 2;
+
+    static final String TABLE_EARTHQUAKES = "earthquakes";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_MAG = "mag";
+    static final String COLUMN_PLACE = "place";
+    static final String COLUMN_TIME = "time";
+    static final String COLUMN_UPDATED = "updated";
+    static final String COLUMN_URL = "url";
+    static final String COLUMN_LATITUDE = "latitude";
+    static final String COLUMN_LONGITUDE = "longitude";
+    static final String COLUMN_DEPTH = "depth";
+
+    public EarthQuakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_EARTHQUAKES + " ("
+                + COLUMN_ID + " TEXT PRIMARY KEY, "
+                + COLUMN_MAG + " REAL NOT NULL, "
+                + COLUMN_PLACE + " TEXT NOT NULL, "
+                + COLUMN_TIME + " INTEGER NOT NULL, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + COLUMN_URL + " TEXT NOT NULL, "
+                // NULL when USGS sent no geometry
+                + COLUMN_LATITUDE + " REAL, "
+                + COLUMN_LONGITUDE + " REAL, "
+                + COLUMN_DEPTH + " REAL)");
+        // The list is always filtered on magnitude and sorted by time or magnitude
+        db.execSQL("CREATE INDEX earthquakes_time ON " + TABLE_EARTHQUAKES + " (" + COLUMN_TIME + ")");
+        db.execSQL("CREATE INDEX earthquakes_mag ON " + TABLE_EARTHQUAKES + " (" + COLUMN_MAG + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The table only caches server data, so it is simply rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EARTHQUAKES);
+        onCreate(db);
+    }
+}
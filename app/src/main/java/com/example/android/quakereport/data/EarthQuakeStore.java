@@ -0,0 +1,180 @@
+package com.example.android.quakereport.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_DEPTH;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_ID;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_LATITUDE;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_LONGITUDE;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_MAG;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_PLACE;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_TIME;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_UPDATED;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.COLUMN_URL;
+import static com.example.android.quakereport.data.EarthQuakeDbHelper.TABLE_EARTHQUAKES;
+
+/**
+ * Persistent store of every earthquake the app has downloaded, so the list can be
+ * shown straight away on startup and while offline. Retention is bounded both by
+ * age and by row count.
+ */
+public class EarthQuakeStore {
+    //Keep events for 30 days and never more than this many rows
+    private static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    private static final int MAX_ROWS = 20000;
+
+    private static EarthQuakeStore sInstance;
+
+    private final EarthQuakeDbHelper dbHelper;
+
+    private EarthQuakeStore(Context context) {
+        dbHelper = new EarthQuakeDbHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Return the single store of the app, all threads share one database connection.
+     */
+    public static synchronized EarthQuakeStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthQuakeStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Insert or replace the given earthquakes in one transaction, remove the deleted ones,
+     * then drop whatever falls outside the retention window.
+     */
+    public void insertAll(List<EarthQuake> earthQuakes) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = compileInsert(db);
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_EARTHQUAKES
+                + " WHERE " + COLUMN_ID + " = ?");
+        db.beginTransaction();
+        try {
+            for (EarthQuake earthQuake : earthQuakes) {
+                if (earthQuake.isDeleted()) {
+                    delete.bindString(1, earthQuake.getId());
+                    delete.executeUpdateDelete();
+                    continue;
+                }
+                insert.bindString(1, earthQuake.getId());
+                insert.bindDouble(2, earthQuake.getMag());
+                insert.bindString(3, earthQuake.getTitle());
+                insert.bindLong(4, earthQuake.getTimestamp());
+                insert.bindLong(5, earthQuake.getUpdated());
+                insert.bindString(6, earthQuake.getURL());
+                bindCoordinate(insert, 7, earthQuake.getLatitude());
+                bindCoordinate(insert, 8, earthQuake.getLongitude());
+                bindCoordinate(insert, 9, earthQuake.getDepth());
+                insert.executeInsert();
+            }
+            trim(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            delete.close();
+        }
+    }
+
+    /**
+     * Insert or replace the events of the given columns in one transaction, then drop
+     * whatever falls outside the retention window. Every row is bound through one
+     * {@link EarthQuakeColumns.Row}, so a large window is stored without an object per event.
+     * The columns never hold deleted events.
+     */
+    public void insertAll(EarthQuakeColumns columns) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = compileInsert(db);
+        db.beginTransaction();
+        try {
+            EarthQuakeColumns.Row row = columns.row();
+            for (int i = 0; i < columns.size(); i++) {
+                row.moveTo(i);
+                insert.bindString(1, row.getId());
+                insert.bindDouble(2, row.getMagnitude());
+                insert.bindString(3, row.getPlace());
+                insert.bindLong(4, row.getTime());
+                insert.bindLong(5, row.getUpdated());
+                insert.bindString(6, row.getURL());
+                bindCoordinate(insert, 7, row.getLatitude());
+                bindCoordinate(insert, 8, row.getLongitude());
+                bindCoordinate(insert, 9, row.getDepth());
+                insert.executeInsert();
+            }
+            trim(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Return up to limit stored earthquakes of at least the given magnitude,
+     * largest or newest first depending on orderBy.
+     */
+    public List<EarthQuake> query(double minMagnitude, String orderBy, int limit) {
+        String order = EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy) ? COLUMN_MAG : COLUMN_TIME;
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery("SELECT "
+                + COLUMN_ID + ", " + COLUMN_MAG + ", " + COLUMN_PLACE + ", " + COLUMN_TIME + ", "
+                + COLUMN_UPDATED + ", " + COLUMN_URL + ", " + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ", "
+                + COLUMN_DEPTH + " FROM " + TABLE_EARTHQUAKES
+                + " WHERE " + COLUMN_MAG + " >= ? ORDER BY " + order + " DESC LIMIT ?",
+                new String[]{Double.toString(minMagnitude), Integer.toString(limit)});
+        ArrayList<EarthQuake> earthQuakes = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                earthQuakes.add(new EarthQuake(cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                        cursor.getLong(3), cursor.getLong(4), cursor.getString(5),
+                        getCoordinate(cursor, 6), getCoordinate(cursor, 7), getCoordinate(cursor, 8), false));
+            }
+        } finally {
+            cursor.close();
+        }
+        return earthQuakes;
+    }
+
+    private static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE_EARTHQUAKES + " ("
+                + COLUMN_ID + ", " + COLUMN_MAG + ", " + COLUMN_PLACE + ", " + COLUMN_TIME + ", "
+                + COLUMN_UPDATED + ", " + COLUMN_URL + ", " + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ", "
+                + COLUMN_DEPTH + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    /**
+     * SQLite turns NaN into NULL anyway, do it explicitly so the intent is clear.
+     */
+    private static void bindCoordinate(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static double getCoordinate(Cursor cursor, int index) {
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+
+    /**
+     * Delete the events older than the retention window, then the oldest rows over the cap.
+     */
+    private void trim(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_EARTHQUAKES + " WHERE " + COLUMN_TIME + " < ?",
+                new Object[]{System.currentTimeMillis() - MAX_AGE_MILLIS});
+        db.execSQL("DELETE FROM " + TABLE_EARTHQUAKES + " WHERE " + COLUMN_ID + " NOT IN (SELECT "
+                + COLUMN_ID + " FROM " + TABLE_EARTHQUAKES + " ORDER BY " + COLUMN_TIME
+                + " DESC LIMIT " + MAX_ROWS + ")");
+    }
+}
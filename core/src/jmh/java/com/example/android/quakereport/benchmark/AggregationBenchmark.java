@@ -0,0 +1,113 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.EarthQuakeFormat;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeAggregates;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping the summary figures of a window current after a delta sync: applying the
+ * changed events to the aggregates, compared with rescanning the whole list and with
+ * rebuilding the aggregates from the columns on one thread and on every core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregationBenchmark {
+    //Events a delta sync typically brings, every tenth of them a deletion
+    private static final int DELTA = 100;
+
+    @Param({"1000", "20000"})
+    public int events;
+
+    private List<EarthQuake> earthQuakes;
+    private EarthQuakeColumns columns;
+    private EarthQuakeAggregates aggregates;
+    //The delta and the one that undoes it, applied in turns so the window stays the same size
+    private List<EarthQuake> delta;
+    private List<EarthQuake> undo;
+    private boolean undoNext;
+    private ForkJoinPool sequentialPool;
+    private ForkJoinPool parallelPool;
+
+    @Setup
+    public void setUp() throws IOException {
+        earthQuakes = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(Fixtures.geoJson(events)));
+        columns = EarthQuakeColumns.fromList(earthQuakes);
+        sequentialPool = new ForkJoinPool(1);
+        parallelPool = new ForkJoinPool();
+        aggregates = EarthQuakeAggregates.build(columns, parallelPool);
+        delta = new ArrayList<>(DELTA);
+        undo = new ArrayList<>(DELTA);
+        for (int i = 0; i < Math.min(DELTA, earthQuakes.size()); i++) {
+            EarthQuake earthQuake = earthQuakes.get(i);
+            // Revised magnitudes move events across bands and region maxima
+            delta.add(new EarthQuake(earthQuake.getId(), earthQuake.getMag() + 1.5, earthQuake.getTitle(),
+                    earthQuake.getTimestamp(), earthQuake.getUpdated() + 1, earthQuake.getURL(),
+                    earthQuake.getLatitude(), earthQuake.getLongitude(), earthQuake.getDepth(), i % 10 == 0));
+            undo.add(earthQuake);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sequentialPool.shutdown();
+        parallelPool.shutdown();
+    }
+
+    @Benchmark
+    public int incrementalUpdate() {
+        aggregates.apply(undoNext ? undo : delta);
+        undoNext = !undoNext;
+        return aggregates.size();
+    }
+
+    @Benchmark
+    public int rescanList() {
+        int[] bandCounts = new int[EarthQuakeFormat.MAGNITUDE_BANDS];
+        HashMap<Long, Integer> dayCounts = new HashMap<>();
+        HashMap<String, Double> maxMagnitudes = new HashMap<>();
+        for (EarthQuake earthQuake : earthQuakes) {
+            bandCounts[EarthQuakeFormat.bandOf(earthQuake.getMag())]++;
+            Long day = EarthQuakeAggregates.dayOf(earthQuake.getTimestamp());
+            Integer count = dayCounts.get(day);
+            dayCounts.put(day, count == null ? 1 : count + 1);
+            String region = EarthQuakeColumns.regionOf(earthQuake.getTitle());
+            Double max = maxMagnitudes.get(region);
+            if (max == null || earthQuake.getMag() > max) {
+                maxMagnitudes.put(region, earthQuake.getMag());
+            }
+        }
+        return dayCounts.size() + maxMagnitudes.size();
+    }
+
+    @Benchmark
+    public EarthQuakeAggregates rebuildSequential() {
+        return EarthQuakeAggregates.build(columns, sequentialPool);
+    }
+
+    @Benchmark
+    public EarthQuakeAggregates rebuildParallel() {
+        return EarthQuakeAggregates.build(columns, parallelPool);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A large window kept as one {@link EarthQuake} per event against {@link EarthQuakeColumns}:
+ * parsing it, and the scans the map and the charts run over it once it is loaded.
+ * Run with -prof gc, gc.alloc.rate.norm is the garbage per operation, and gc.count and
+ * gc.time over the run show what it costs the collector.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColumnsBenchmark {
+    //The "significant" events the map highlights
+    private static final double MIN_MAGNITUDE = 4.5;
+
+    @Param({"1000", "20000"})
+    public int events;
+
+    private byte[] body;
+    private List<EarthQuake> earthQuakes;
+    private EarthQuakeColumns columns;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.geoJson(events);
+        earthQuakes = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body));
+        columns = new EarthQuakeColumns(events);
+        QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body), columns);
+    }
+
+    @Benchmark
+    public List<EarthQuake> loadObjects() throws IOException {
+        return QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public EarthQuakeColumns loadColumns() throws IOException {
+        EarthQuakeColumns loaded = new EarthQuakeColumns(events);
+        QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body), loaded);
+        return loaded;
+    }
+
+    @Benchmark
+    public int scanObjects() {
+        int significant = 0;
+        for (EarthQuake earthQuake : earthQuakes) {
+            if (earthQuake.getMag() >= MIN_MAGNITUDE) {
+                significant++;
+            }
+        }
+        return significant;
+    }
+
+    @Benchmark
+    public int scanColumns() {
+        int significant = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.getMagnitude(i) >= MIN_MAGNITUDE) {
+                significant++;
+            }
+        }
+        return significant;
+    }
+
+    /**
+     * Scan through the list view of the columns, which builds an event for every row.
+     */
+    @Benchmark
+    public int scanColumnsAsList() {
+        int significant = 0;
+        for (EarthQuake earthQuake : columns.asList()) {
+            if (earthQuake.getMag() >= MIN_MAGNITUDE) {
+                significant++;
+            }
+        }
+        return significant;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.EarthQuakeFormat;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of formatting the text of every list row, per field, over a parsed response,
+ * and of binding every row by formatting it against looking up the one prepared after
+ * the load. The app's RowModelFactory needs Android resources, so the lookup is modeled
+ * here on the same access ordered map with the same staleness check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatBenchmark {
+    @Param({"25", "100", "1000", "20000"})
+    public int events;
+
+    private List<EarthQuake> earthQuakes;
+    private EarthQuakeFormat format;
+    //Rows prepared once after the load, keyed on the USGS id
+    private final LinkedHashMap<String, Row> rows = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Setup
+    public void setUp() throws IOException {
+        earthQuakes = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(Fixtures.geoJson(events)));
+        format = new EarthQuakeFormat("Near the");
+        for (EarthQuake earthQuake : earthQuakes) {
+            rows.put(earthQuake.getId(), new Row(earthQuake, format));
+        }
+    }
+
+    @Benchmark
+    public void formatMagnitude(Blackhole blackhole) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            blackhole.consume(format.formatMagnitude(earthQuake.getMag()));
+        }
+    }
+
+    @Benchmark
+    public void formatDateAndTime(Blackhole blackhole) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            blackhole.consume(format.formatDate(earthQuake.getTimestamp()));
+            blackhole.consume(format.formatTime(earthQuake.getTimestamp()));
+        }
+    }
+
+    @Benchmark
+    public void splitTitle(Blackhole blackhole) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            blackhole.consume(format.getLocation(earthQuake.getTitle()));
+            blackhole.consume(format.getCountry(earthQuake.getTitle()));
+        }
+    }
+
+    /**
+     * Bind every row formatting its fields on the spot, what the adapter did before rows were prepared.
+     */
+    @Benchmark
+    public void bindFormatting(Blackhole blackhole) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            bind(blackhole, new Row(earthQuake, format));
+        }
+    }
+
+    /**
+     * Bind every row from the rows prepared after the load.
+     */
+    @Benchmark
+    public void bindPrepared(Blackhole blackhole) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            Row row;
+            synchronized (rows) {
+                row = rows.get(earthQuake.getId());
+            }
+            if (row == null || row.updated != earthQuake.getUpdated()) {
+                row = new Row(earthQuake, format);
+            }
+            bind(blackhole, row);
+        }
+    }
+
+    private static void bind(Blackhole blackhole, Row row) {
+        blackhole.consume(row.magnitude);
+        blackhole.consume(row.location);
+        blackhole.consume(row.country);
+        blackhole.consume(row.date);
+        blackhole.consume(row.time);
+        blackhole.consume(row.band);
+    }
+
+    /**
+     * The text of a list row, as the app's EarthQuakeRow holds it.
+     */
+    private static class Row {
+        final long updated;
+        final String magnitude;
+        final String location;
+        final String country;
+        final String date;
+        final String time;
+        final int band;
+
+        Row(EarthQuake earthQuake, EarthQuakeFormat format) {
+            updated = earthQuake.getUpdated();
+            magnitude = format.formatMagnitude(earthQuake.getMag());
+            location = format.getLocation(earthQuake.getTitle());
+            country = format.getCountry(earthQuake.getTitle());
+            date = format.formatDate(earthQuake.getTimestamp());
+            time = format.formatTime(earthQuake.getTimestamp());
+            band = EarthQuakeFormat.bandOf(earthQuake.getMag());
+        }
+    }
+}
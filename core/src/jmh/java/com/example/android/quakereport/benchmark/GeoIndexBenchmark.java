@@ -0,0 +1,133 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeGeoIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "Near me" queries over a downloaded window: the grid index against a scan of every
+ * event, for a radius and for a bounding box, and keeping the index current after a
+ * delta sync against building it again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeoIndexBenchmark {
+    //Events a delta sync typically brings
+    private static final int DELTA = 100;
+    private static final double RADIUS_KM = 500;
+    private static final int LIMIT = 100;
+    //Points queried in turns, e.g. Tokyo, Anchorage, Santiago and Fiji next to the antimeridian
+    private static final double[][] POINTS = {{35.7, 139.7}, {61.2, -149.9}, {-33.4, -70.6}, {-17.7, 178.1}};
+
+    @Param({"1000", "20000"})
+    public int events;
+
+    private List<EarthQuake> earthQuakes;
+    private EarthQuakeGeoIndex index;
+    //The delta and the one that undoes it, applied in turns so the index stays the same size
+    private List<EarthQuake> delta;
+    private List<EarthQuake> undo;
+    private boolean undoNext;
+    private int nextPoint;
+
+    @Setup
+    public void setUp() throws IOException {
+        earthQuakes = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(Fixtures.geoJson(events)));
+        index = new EarthQuakeGeoIndex(earthQuakes);
+        delta = new ArrayList<>(DELTA);
+        undo = new ArrayList<>(DELTA);
+        for (int i = 0; i < Math.min(DELTA, earthQuakes.size()); i++) {
+            EarthQuake earthQuake = earthQuakes.get(i);
+            // Relocated events move between cells
+            delta.add(new EarthQuake(earthQuake.getId(), earthQuake.getMag(), earthQuake.getTitle(),
+                    earthQuake.getTimestamp(), earthQuake.getUpdated() + 1, earthQuake.getURL(),
+                    -earthQuake.getLatitude(), earthQuake.getLongitude(), earthQuake.getDepth(), false));
+            undo.add(earthQuake);
+        }
+    }
+
+    @Benchmark
+    public List<EarthQuake> radiusIndexed() {
+        double[] point = nextPoint();
+        return index.withinRadius(point[0], point[1], RADIUS_KM, LIMIT);
+    }
+
+    @Benchmark
+    public List<EarthQuake> radiusScan() {
+        final double[] point = nextPoint();
+        ArrayList<EarthQuake> result = new ArrayList<>();
+        for (EarthQuake earthQuake : earthQuakes) {
+            if (EarthQuakeGeoIndex.distanceKm(point[0], point[1], earthQuake.getLatitude(),
+                    earthQuake.getLongitude()) <= RADIUS_KM) {
+                result.add(earthQuake);
+            }
+        }
+        Collections.sort(result, new Comparator<EarthQuake>() {
+            @Override
+            public int compare(EarthQuake a, EarthQuake b) {
+                return Double.compare(
+                        EarthQuakeGeoIndex.distanceKm(point[0], point[1], a.getLatitude(), a.getLongitude()),
+                        EarthQuakeGeoIndex.distanceKm(point[0], point[1], b.getLatitude(), b.getLongitude()));
+            }
+        });
+        return result.size() > LIMIT ? result.subList(0, LIMIT) : result;
+    }
+
+    @Benchmark
+    public List<EarthQuake> boxIndexed() {
+        double[] point = nextPoint();
+        return index.withinBox(point[0] - 5, point[1] - 5, point[0] + 5, point[1] + 5);
+    }
+
+    @Benchmark
+    public List<EarthQuake> boxScan() {
+        double[] point = nextPoint();
+        ArrayList<EarthQuake> result = new ArrayList<>();
+        for (EarthQuake earthQuake : earthQuakes) {
+            double latitude = earthQuake.getLatitude();
+            double longitude = earthQuake.getLongitude();
+            if (latitude >= point[0] - 5 && latitude <= point[0] + 5
+                    && longitude >= point[1] - 5 && longitude <= point[1] + 5) {
+                result.add(earthQuake);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int incrementalUpdate() {
+        index.addAll(undoNext ? undo : delta);
+        undoNext = !undoNext;
+        return index.size();
+    }
+
+    @Benchmark
+    public EarthQuakeGeoIndex rebuild() {
+        return new EarthQuakeGeoIndex(earthQuakes);
+    }
+
+    private double[] nextPoint() {
+        double[] point = POINTS[nextPoint];
+        nextPoint = (nextPoint + 1) % POINTS.length;
+        return point;
+    }
+}
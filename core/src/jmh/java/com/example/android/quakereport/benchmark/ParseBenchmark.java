@@ -0,0 +1,128 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+import com.example.android.quakereport.net.ResponseReader;
+import com.example.android.quakereport.net.Transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Cost of turning a response body into earthquakes, for the result sizes the app asks for.
+ * Run with -prof gc to compare what the pooled and unpooled response paths allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+    @Param({"25", "100", "1000", "20000"})
+    public int events;
+
+    private byte[] body;
+    private byte[] gzippedBody;
+
+    @Setup
+    public void setUp() {
+        body = Fixtures.geoJson(events);
+        gzippedBody = Fixtures.gzip(body);
+    }
+
+    /**
+     * Parse into one {@link EarthQuake} per event, what the list screens get.
+     */
+    @Benchmark
+    public List<EarthQuake> extractToList() throws IOException {
+        return QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Parse into primitive columns, what large time windows use.
+     */
+    @Benchmark
+    public EarthQuakeColumns extractToColumns() throws IOException {
+        EarthQuakeColumns columns = new EarthQuakeColumns(events);
+        QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body), columns);
+        return columns;
+    }
+
+    /**
+     * Read a gzipped response through the pooled buffer and parse it,
+     * the whole path a network body takes.
+     */
+    @Benchmark
+    public List<EarthQuake> readGzippedResponse() throws IOException {
+        InputStream inputStream = ResponseReader.open(new BytesResponse(gzippedBody));
+        try {
+            return QueryUtils.extractFeatureFromJson(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * The same path with a fresh buffer for every response, the way a BufferedInputStream
+     * around the body would read it, the baseline for {@link #readGzippedResponse()}.
+     */
+    @Benchmark
+    public List<EarthQuake> readGzippedResponseUnpooled() throws IOException {
+        Transport.Response response = new BytesResponse(gzippedBody);
+        InputStream inputStream = new GZIPInputStream(new BufferedInputStream(response.getBody()));
+        try {
+            return QueryUtils.extractFeatureFromJson(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * A gzipped 200 response served from memory.
+     */
+    private static class BytesResponse implements Transport.Response {
+        private final byte[] body;
+
+        BytesResponse(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public int getCode() {
+            return 200;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return "Content-Encoding".equalsIgnoreCase(name) ? "gzip" : null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
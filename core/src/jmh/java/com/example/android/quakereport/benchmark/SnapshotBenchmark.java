@@ -0,0 +1,71 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.ListSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first screen of rows on a cold start, from the list snapshot compared
+ * with parsing the cached response, the fastest path without a snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+    //Rows that fit on the first screen
+    private static final int FIRST_SCREEN = 12;
+
+    @Param({"100", "1000", "20000"})
+    public int events;
+
+    private byte[] body;
+    private File snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Fixtures.geoJson(events);
+        snapshot = File.createTempFile("list", ".snapshot");
+        ListSnapshot.write(snapshot, QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body)), 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public void firstRowsFromSnapshot(Blackhole blackhole) throws IOException {
+        ListSnapshot listSnapshot = ListSnapshot.open(snapshot);
+        int rows = Math.min(FIRST_SCREEN, listSnapshot.size());
+        for (int i = 0; i < rows; i++) {
+            blackhole.consume(listSnapshot.get(i));
+        }
+    }
+
+    @Benchmark
+    public void firstRowsFromResponse(Blackhole blackhole) throws IOException {
+        List<EarthQuake> earthQuakes = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body));
+        int rows = Math.min(FIRST_SCREEN, earthQuakes.size());
+        for (int i = 0; i < rows; i++) {
+            blackhole.consume(earthQuakes.get(i));
+        }
+    }
+}
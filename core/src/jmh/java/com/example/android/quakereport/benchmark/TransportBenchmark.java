@@ -0,0 +1,107 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.net.OkHttpTransport;
+import com.example.android.quakereport.net.Transport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a small query over a pooled keep-alive connection against one that
+ * connects afresh every time, as a request with "Connection: close" does.
+ * The server is on the loopback interface, so this only shows the TCP setup and the
+ * per connection work on both ends. Against USGS a fresh connection also pays the
+ * round trips of the TCP and TLS handshakes, see the HTTP_CONNECT metric on a device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransportBenchmark {
+    //Events in the response, few enough that the connection dominates
+    private static final int EVENTS = 10;
+    private static final Map<String, String> KEEP_ALIVE = Collections.emptyMap();
+    private static final Map<String, String> CLOSE = Collections.singletonMap("Connection", "close");
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private OkHttpTransport transport;
+    private URL url;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] body = Fixtures.geoJson(EVENTS);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/fdsnws/event/1/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        serverThreads = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverThreads);
+        server.start();
+        // HTTP/2 needs TLS, so both variants speak HTTP/1.1
+        transport = new OkHttpTransport(false);
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                + "/fdsnws/event/1/query?format=geojson&limit=" + EVENTS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public long pooled() throws IOException {
+        return fetch(KEEP_ALIVE);
+    }
+
+    @Benchmark
+    public long fresh() throws IOException {
+        return fetch(CLOSE);
+    }
+
+    private long fetch(Map<String, String> headers) throws IOException {
+        Transport.Response response = transport.get(url, headers);
+        try {
+            // Read to the end, a connection only goes back to the pool once its body is consumed
+            InputStream in = response.getBody();
+            byte[] buffer = new byte[8192];
+            long length = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                length += read;
+            }
+            return length;
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.quakereport.benchmark;
+
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse time of the same events in each format USGS can answer with. The size of
+ * every body, plain and gzipped as it goes over the wire, is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WireFormatBenchmark {
+    @Param({EarthQuakeQuery.FORMAT_GEOJSON, EarthQuakeQuery.FORMAT_CSV, EarthQuakeQuery.FORMAT_TEXT})
+    public String format;
+
+    @Param({"100", "1000", "20000"})
+    public int events;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        if (format.equals(EarthQuakeQuery.FORMAT_CSV)) {
+            body = Fixtures.csv(events);
+        } else if (format.equals(EarthQuakeQuery.FORMAT_TEXT)) {
+            body = Fixtures.text(events);
+        } else {
+            body = Fixtures.geoJson(events);
+        }
+        int gzipped = Fixtures.gzip(body).length;
+        System.out.println(String.format(Locale.US, "%s, %d events: %d bytes (%d per event), %d gzipped (%d per event)",
+                format, events, body.length, body.length / events, gzipped, gzipped / events));
+    }
+
+    /**
+     * Parse into primitive columns, so the cost measured is the parser's own.
+     */
+    @Benchmark
+    public EarthQuakeColumns parse() throws IOException {
+        EarthQuakeColumns columns = new EarthQuakeColumns(events);
+        if (format.equals(EarthQuakeQuery.FORMAT_GEOJSON)) {
+            QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body), columns);
+        } else {
+            QueryUtils.extractFeatureFromDelimited(new ByteArrayInputStream(body), format, columns);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,413 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Parses the USGS "csv" and "text" (pipe delimited) formats in a single pass over the
+ * bytes of the response. Fields are split as the bytes arrive, numbers and times are
+ * read in place, so the only objects made per event are the id, place and URL strings
+ * handed to the {@link QueryUtils.FeatureSink}.
+ */
+public final class DelimitedParser {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    //Neither format carries the event page URL the GeoJSON one does, it is built from the id
+    static final String EVENT_PAGE_URL = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+    //A header longer than this is not one, e.g. the body is GeoJSON after all
+    private static final int MAX_HEADER_LENGTH = 4 * 1024;
+    //Exact powers of ten, dividing by one of these gives the same double Double.parseDouble does
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+    private static final int MAX_FAST_DIGITS = 15;
+
+    //Columns that are read, every other one is skipped
+    private static final int SKIPPED = -1;
+    private static final int ID = 0;
+    private static final int TIME = 1;
+    private static final int UPDATED = 2;
+    private static final int LATITUDE = 3;
+    private static final int LONGITUDE = 4;
+    private static final int DEPTH = 5;
+    private static final int MAGNITUDE = 6;
+    private static final int PLACE = 7;
+    private static final int STATUS = 8;
+
+    private static final byte[] DELETED = {'d', 'e', 'l', 'e', 't', 'e', 'd'};
+
+    private final byte delimiter;
+    //Only csv quotes fields, a quote in the text format is part of the value
+    private final boolean quoted;
+
+    //Bytes of the row being read without its delimiters and quotes, and where each field ends
+    private byte[] row = new byte[512];
+    private int rowLength;
+    private int[] fieldEnds = new int[32];
+    private int fieldCount;
+    //Column each field of a row holds, from the header
+    private int[] columns;
+    private long bytesRead;
+
+    private DelimitedParser(byte delimiter, boolean quoted) {
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+    }
+
+    /**
+     * Return a parser for the USGS "csv" format.
+     */
+    public static DelimitedParser csv() {
+        return new DelimitedParser((byte) ',', true);
+    }
+
+    /**
+     * Return a parser for the USGS "text" format.
+     */
+    public static DelimitedParser text() {
+        return new DelimitedParser((byte) '|', false);
+    }
+
+    /**
+     * Return the number of bytes of the last response parsed.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Parse a response off the given {@link InputStream} and hand every event to the sink.
+     * Returns the number of events read, or -1 if the response does not start with a
+     * header naming at least the id and time columns.
+     */
+    public int parse(InputStream inputStream, QueryUtils.FeatureSink sink) throws IOException {
+        columns = null;
+        rowLength = 0;
+        fieldCount = 0;
+        bytesRead = 0;
+        int events = 0;
+        boolean inQuotes = false;
+        //True right after a closing quote, where a second quote is an escaped one
+        boolean afterQuote = false;
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            bytesRead += read;
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (inQuotes) {
+                    if (b == '"') {
+                        inQuotes = false;
+                        afterQuote = true;
+                    } else {
+                        append(b);
+                    }
+                    continue;
+                }
+                if (b == '"' && quoted) {
+                    if (afterQuote) {
+                        append(b);
+                    }
+                    inQuotes = true;
+                    afterQuote = false;
+                    continue;
+                }
+                afterQuote = false;
+                if (b == delimiter) {
+                    endField();
+                } else if (b == '\n') {
+                    endField();
+                    int added = endRow(sink);
+                    if (added < 0) {
+                        return -1;
+                    }
+                    events += added;
+                } else if (b != '\r') {
+                    append(b);
+                    if (columns == null && rowLength > MAX_HEADER_LENGTH) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        // The last row does not have to end with a newline
+        if (rowLength > 0 || fieldCount > 0) {
+            endField();
+            int added = endRow(sink);
+            if (added < 0) {
+                return -1;
+            }
+            events += added;
+        }
+        return columns == null ? -1 : events;
+    }
+
+    private void append(byte b) {
+        if (rowLength == row.length) {
+            row = Arrays.copyOf(row, row.length * 2);
+        }
+        row[rowLength++] = b;
+    }
+
+    private void endField() {
+        if (fieldCount == fieldEnds.length) {
+            fieldEnds = Arrays.copyOf(fieldEnds, fieldEnds.length * 2);
+        }
+        fieldEnds[fieldCount++] = rowLength;
+    }
+
+    /**
+     * Handle a complete row, returns the number of events it added or -1 if it was
+     * meant to be the header and is not one.
+     */
+    private int endRow(QueryUtils.FeatureSink sink) {
+        try {
+            // Skip blank lines
+            if (fieldCount == 1 && rowLength == 0) {
+                return 0;
+            }
+            if (columns == null) {
+                return readHeader() ? 0 : -1;
+            }
+            return readEvent(sink) ? 1 : 0;
+        } finally {
+            rowLength = 0;
+            fieldCount = 0;
+        }
+    }
+
+    /**
+     * Map the header fields to the columns that are read, the text format starts its header with '#'.
+     */
+    private boolean readHeader() {
+        columns = new int[fieldCount];
+        boolean hasId = false;
+        boolean hasTime = false;
+        for (int field = 0; field < fieldCount; field++) {
+            int start = fieldStart(field);
+            if (field == 0 && start < fieldEnds[0] && row[start] == '#') {
+                start++;
+            }
+            String name = new String(row, start, fieldEnds[field] - start, UTF_8).trim().toLowerCase(Locale.US);
+            columns[field] = columnOf(name);
+            hasId |= columns[field] == ID;
+            hasTime |= columns[field] == TIME;
+        }
+        if (!hasId || !hasTime) {
+            columns = null;
+            return false;
+        }
+        return true;
+    }
+
+    private static int columnOf(String name) {
+        switch (name) {
+            case "id":
+            case "eventid":
+                return ID;
+            case "time":
+                return TIME;
+            case "updated":
+                return UPDATED;
+            case "latitude":
+                return LATITUDE;
+            case "longitude":
+                return LONGITUDE;
+            case "depth":
+            case "depth/km":
+                return DEPTH;
+            case "mag":
+            case "magnitude":
+                return MAGNITUDE;
+            case "place":
+            case "eventlocationname":
+                return PLACE;
+            case "status":
+                return STATUS;
+            default:
+                return SKIPPED;
+        }
+    }
+
+    /**
+     * Read the fields of one event, returns false if it has no id.
+     */
+    private boolean readEvent(QueryUtils.FeatureSink sink) {
+        String id = "";
+        double magnitude = 0;
+        String place = "";
+        long time = 0;
+        long updated = -1;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double depth = Double.NaN;
+        boolean deleted = false;
+        int fields = Math.min(fieldCount, columns.length);
+        for (int field = 0; field < fields; field++) {
+            int start = fieldStart(field);
+            int end = fieldEnds[field];
+            switch (columns[field]) {
+                case ID:
+                    id = new String(row, start, end - start, UTF_8);
+                    break;
+                case TIME:
+                    time = parseTime(start, end);
+                    break;
+                case UPDATED:
+                    updated = parseTime(start, end);
+                    break;
+                case LATITUDE:
+                    latitude = parseDouble(start, end);
+                    break;
+                case LONGITUDE:
+                    longitude = parseDouble(start, end);
+                    break;
+                case DEPTH:
+                    depth = parseDouble(start, end);
+                    break;
+                case MAGNITUDE:
+                    // Missing magnitudes read as 0, the same as a null "mag" in GeoJSON
+                    double value = parseDouble(start, end);
+                    magnitude = Double.isNaN(value) ? 0 : value;
+                    break;
+                case PLACE:
+                    place = new String(row, start, end - start, UTF_8);
+                    break;
+                case STATUS:
+                    deleted = equalsIgnoreCase(start, end, DELETED);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (id.isEmpty()) {
+            return false;
+        }
+        // The text format has no update time, an event counts as updated when it happened
+        sink.add(id, magnitude, place, time, updated < 0 ? time : updated, EVENT_PAGE_URL + id,
+                latitude, longitude, depth, deleted);
+        return true;
+    }
+
+    private int fieldStart(int field) {
+        return field == 0 ? 0 : fieldEnds[field - 1];
+    }
+
+    private boolean equalsIgnoreCase(int start, int end, byte[] lowerCase) {
+        if (end - start != lowerCase.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length; i++) {
+            if ((row[start + i] | 0x20) != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a plain decimal in place, anything else (exponents, very long mantissas)
+     * goes through {@link Double#parseDouble(String)}. Returns NaN for an empty field.
+     */
+    private double parseDouble(int start, int end) {
+        if (start == end) {
+            return Double.NaN;
+        }
+        int i = start;
+        boolean negative = row[i] == '-';
+        if (negative || row[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = row[i];
+            if (b >= '0' && b <= '9') {
+                if (++digits > MAX_FAST_DIGITS) {
+                    return parseDoubleSlowly(start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (point) {
+                    decimals++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                return parseDoubleSlowly(start, end);
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(int start, int end) {
+        try {
+            return Double.parseDouble(new String(row, start, end - start, UTF_8).trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Read a UTC time like 2019-01-01T12:34:56.789Z in place, the trailing Z and the
+     * fraction are optional. Returns 0 if the field is not such a time.
+     */
+    private long parseTime(int start, int end) {
+        if (end - start < 19 || row[start + 4] != '-' || row[start + 7] != '-' || row[start + 10] != 'T'
+                || row[start + 13] != ':' || row[start + 16] != ':') {
+            return 0;
+        }
+        int year = digits(start, 4);
+        int month = digits(start + 5, 2);
+        int day = digits(start + 8, 2);
+        int hour = digits(start + 11, 2);
+        int minute = digits(start + 14, 2);
+        int second = digits(start + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || hour < 0 || minute < 0 || second < 0) {
+            return 0;
+        }
+        int millis = 0;
+        int i = start + 19;
+        if (i < end && row[i] == '.') {
+            int scale = 100;
+            for (i++; i < end && row[i] >= '0' && row[i] <= '9'; i++) {
+                millis += (row[i] - '0') * scale;
+                scale /= 10;
+            }
+        }
+        long seconds = daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+        return seconds * 1000 + millis;
+    }
+
+    /**
+     * Return the value of the given number of decimal digits, or -1 if one is not a digit.
+     */
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            if (row[i] < '0' || row[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (row[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.android.quakereport;
+
+public class EarthQuake {
+    //USGS event id, stable across updates of the same event
+    private String id;
+    //Magnitute of the earthquake will be stored in mag
+    private double mag;
+    //Title of the earthquake will be stored here
+    private String title;
+    //Timestamp is returned in int value which will then be converted to day month year
+    private long timestamp;
+    //Time the event was last updated by USGS
+    private long updated;
+    //URL of the quake
+    private String URL;
+    //Epicenter in degrees and depth in kilometers, NaN when USGS sent no geometry
+    private double latitude;
+    private double longitude;
+    private double depth;
+    //True if USGS reported this event as deleted
+    private boolean deleted;
+
+    public EarthQuake(String id, double mag, String title, long timestamp, long updated, String URL,
+                      double latitude, double longitude, double depth, boolean deleted) {
+        this.id = id;
+        this.mag = mag;
+        this.title = title;
+        this.timestamp = timestamp;
+        this.updated = updated;
+        this.URL = URL;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.depth = depth;
+        this.deleted = deleted;
+    }
+
+    public String getId() {return id;}
+
+    public double getMag() {return mag;}
+
+    public String getTitle() {return title;}
+
+    public long getTimestamp() {return timestamp;}
+
+    public long getUpdated() {return updated;}
+
+    public String getURL() {return URL;}
+
+    public double getLatitude() {return latitude;}
+
+    public double getLongitude() {return longitude;}
+
+    public double getDepth() {return depth;}
+
+    /**
+     * Return true if the epicenter is known.
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+
+    public boolean isDeleted() {return deleted;}
+
+    @Override
+    public String toString() {
+        return "EarthQuake{" +
+                "id='" + id + '\'' +
+                ", mag=" + mag +
+                ", title='" + title + '\'' +
+                ", timestamp=" + timestamp +
+                ", updated=" + updated +
+                ", latitude=" + latitude +
+                ", longitude=" + longitude +
+                ", depth=" + depth +
+                '}';
+    }
+}
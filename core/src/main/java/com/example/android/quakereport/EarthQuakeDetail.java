@@ -0,0 +1,34 @@
+package com.example.android.quakereport;
+
+/**
+ * An earthquake with the fields only the USGS per-event detail response carries,
+ * what the detail screen shows.
+ */
+public class EarthQuakeDetail extends EarthQuake {
+    //Magnitude scale, e.g. "mb" or "ml", null if USGS did not say
+    private String magType;
+    //Number of "Did You Feel It?" reports, -1 if there are none
+    private int felt;
+    //PAGER alert level ("green", "yellow", "orange" or "red"), null if there is none
+    private String alert;
+    //True if the event is in a region where it could cause a tsunami
+    private boolean tsunami;
+
+    public EarthQuakeDetail(String id, double mag, String title, long timestamp, long updated, String URL,
+                            double latitude, double longitude, double depth,
+                            String magType, int felt, String alert, boolean tsunami) {
+        super(id, mag, title, timestamp, updated, URL, latitude, longitude, depth, false);
+        this.magType = magType;
+        this.felt = felt;
+        this.alert = alert;
+        this.tsunami = tsunami;
+    }
+
+    public String getMagType() {return magType;}
+
+    public int getFelt() {return felt;}
+
+    public String getAlert() {return alert;}
+
+    public boolean isTsunami() {return tsunami;}
+}
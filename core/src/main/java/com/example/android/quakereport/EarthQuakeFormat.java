@@ -0,0 +1,67 @@
+package com.example.android.quakereport;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats the fields of an earthquake the way the list shows them, e.g. "7.2",
+ * "Mar 06, 2010" and "3:12 PM", and splits titles such as "74km NW of Rumoi, Japan"
+ * into the location ("74km NW of ") and the country ("Rumoi, Japan").
+ * Not thread safe, SimpleDateFormat keeps state while it formats.
+ */
+public class EarthQuakeFormat {
+    public static final String LOCATION_SEPARATOR = " of ";
+    //One band per whole magnitude from 0 to 9, the last one 10 and above, like the list colors
+    public static final int MAGNITUDE_BANDS = 11;
+
+    //Location shown for titles that have no separator, e.g. "Near the"
+    private final String nearThe;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("LLL dd, yyyy");
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a");
+    private final Date date = new Date();
+
+    public EarthQuakeFormat(String nearThe) {
+        this.nearThe = nearThe;
+    }
+
+    /**
+     * Return the band of a magnitude, its whole part clamped to [0, {@link #MAGNITUDE_BANDS} - 1].
+     * Negative magnitudes, which USGS reports for the smallest local events, fall in band 0,
+     * where the list used to show them in the color of 10 and above.
+     */
+    public static int bandOf(double magnitude) {
+        int magnitudeFloor = (int) Math.floor(magnitude);
+        return Math.max(0, Math.min(magnitudeFloor, MAGNITUDE_BANDS - 1));
+    }
+
+    public String formatMagnitude(double magnitude) {
+        return String.format("%2.1f", magnitude);
+    }
+
+    public String formatDate(long timestamp) {
+        date.setTime(timestamp);
+        return dateFormat.format(date);
+    }
+
+    public String formatTime(long timestamp) {
+        date.setTime(timestamp);
+        return timeFormat.format(date);
+    }
+
+    /**
+     * Return the part of the title up to and including the separator,
+     * or the "near the" text if there is none.
+     */
+    public String getLocation(String title) {
+        int separator = title.indexOf(LOCATION_SEPARATOR);
+        return separator >= 0 ? title.substring(0, separator + LOCATION_SEPARATOR.length()) : nearThe;
+    }
+
+    /**
+     * Return the part of the title after the separator, or the whole title if there is none.
+     */
+    public String getCountry(String title) {
+        int separator = title.indexOf(LOCATION_SEPARATOR);
+        return separator >= 0 ? title.substring(separator + LOCATION_SEPARATOR.length()) : title;
+    }
+}
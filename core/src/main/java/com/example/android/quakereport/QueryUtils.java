@@ -0,0 +1,625 @@
+package com.example.android.quakereport;
+
+import com.example.android.quakereport.metrics.Metrics;
+import com.example.android.quakereport.net.DiskResponseCache;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.OkHttpTransport;
+import com.example.android.quakereport.net.ResilientTransport;
+import com.example.android.quakereport.net.ResponseReader;
+import com.example.android.quakereport.net.Transport;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class QueryUtils {
+    //java.util.logging rather than android.util.Log keeps this class runnable on a plain JVM
+    private final static Logger LOG = Logger.getLogger(QueryUtils.class.getName());
+    //Time a request may take across its retries, and how many attempts it gets
+    private static final long REQUEST_DEADLINE_MILLIS = 30000;
+    private static final int REQUEST_ATTEMPTS = 3;
+
+    //Disk cache of responses used for conditional requests, null until installed
+    private static volatile DiskResponseCache sResponseCache;
+    //Client every request goes through, keeps connections to USGS open between refreshes
+    //and hedges and retries requests that are slow or fail
+    private static volatile Transport sTransport = new ResilientTransport(new OkHttpTransport(true),
+            REQUEST_DEADLINE_MILLIS, REQUEST_ATTEMPTS);
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
+     */
+    private QueryUtils() {
+    }
+
+    /**
+     * Install the disk cache that {@link #fetchEarthquakeData(String)} revalidates against.
+     */
+    public static void setResponseCache(DiskResponseCache responseCache) {
+        sResponseCache = responseCache;
+    }
+
+    public static DiskResponseCache getResponseCache() {
+        return sResponseCache;
+    }
+
+    /**
+     * Replace the client requests are sent with, e.g. to talk to a local test server.
+     */
+    public static void setTransport(Transport transport) {
+        sTransport = transport;
+    }
+
+    public static Transport getTransport() {
+        return sTransport;
+    }
+
+    /**
+     * Receives the fields of every feature as the response is parsed, so callers can
+     * store them however they like without an {@link EarthQuake} object per event.
+     */
+    public interface FeatureSink {
+        void add(String id, double mag, String place, long time, long updated, String url,
+                 double latitude, double longitude, double depth, boolean deleted);
+    }
+
+    /**
+     * Return a list of {@link EarthQuake} objects that has been built up from
+     * parsing a JSON response.
+     */
+    public static List<EarthQuake> fetchEarthquakeData(String requestUrl) {
+        ListSink sink = new ListSink();
+        if (!fetchEarthquakeData(requestUrl, sink)) {
+            return null;
+        }
+
+        // Return the list of {@link Earthquake}s
+        return sink.earthquakes;
+    }
+
+    /**
+     * Fetch the given URL and hand every parsed feature to the sink,
+     * returns false if the request failed. The response is parsed in the format the
+     * URL asks for, if a csv or text response does not start like one it is fetched
+     * again as GeoJSON. Any other failure fails the request without a retry.
+     */
+    public static boolean fetchEarthquakeData(String requestUrl, final FeatureSink sink) {
+        // Create URL object
+        URL url = createUrl(requestUrl);
+        final String format = EarthQuakeQuery.formatOf(requestUrl);
+        //Set when the body is not in the format asked for, e.g. an endpoint that ignores it
+        final boolean[] unrecognized = {false};
+
+        // Perform HTTP request to the URL and parse the response as it arrives
+        long start = Metrics.start();
+        boolean success;
+        try {
+            success = makeHttpRequest(url, new ResponseParser() {
+                @Override
+                public void parse(InputStream inputStream) throws IOException {
+                    if (format.equals(EarthQuakeQuery.FORMAT_GEOJSON)) {
+                        extractFeatureFromJson(inputStream, sink);
+                    } else if (extractFeatureFromDelimited(inputStream, format, sink) < 0) {
+                        // Nothing was handed to the sink yet, so the GeoJSON retry starts clean
+                        unrecognized[0] = true;
+                    }
+                }
+            });
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Problem making the HTTP request.", e);
+            success = false;
+        } finally {
+            Metrics.end(Metrics.FETCH, start);
+        }
+        if (unrecognized[0]) {
+            LOG.warning("Falling back to GeoJSON after a response that was not " + format);
+            return fetchEarthquakeData(EarthQuakeQuery.toGeoJsonUrl(requestUrl), sink);
+        }
+        return success;
+    }
+
+    /**
+     * Return the detail of the event at the given USGS detail URL, or null if the request failed.
+     */
+    public static EarthQuakeDetail fetchEarthquakeDetail(String requestUrl) {
+        return fetchEarthquakeDetail(requestUrl, false);
+    }
+
+    /**
+     * Return the detail of the event at the given USGS detail URL, or null if the request failed.
+     * A prefetch is sent once, without hedging or retries, and skips the response cache,
+     * which is left to the lists a refresh revalidates.
+     */
+    public static EarthQuakeDetail fetchEarthquakeDetail(String requestUrl, boolean prefetch) {
+        final EarthQuakeDetail[] detail = {null};
+        try {
+            makeHttpRequest(createUrl(requestUrl), prefetch, new ResponseParser() {
+                @Override
+                public void parse(InputStream inputStream) {
+                    detail[0] = extractDetailFromJson(inputStream);
+                }
+            });
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Problem retrieving the earthquake detail.", e);
+            return null;
+        }
+        return detail[0];
+    }
+
+    /**
+     * Parse the single feature of a USGS detail response. Its "products" property,
+     * which holds most of the bytes, is skipped like every other field not shown.
+     * Returns null if the response is malformed.
+     */
+    public static EarthQuakeDetail extractDetailFromJson(InputStream inputStream) {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        Feature feature = new Feature();
+        feature.reset();
+        String magType = null;
+        int felt = -1;
+        String alert = null;
+        boolean tsunami = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id") && reader.peek() != JsonToken.NULL) {
+                    feature.id = reader.nextString();
+                } else if (name.equals("geometry") && reader.peek() != JsonToken.NULL) {
+                    readGeometry(reader, feature);
+                } else if (name.equals("properties")) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String property = reader.nextName();
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        switch (property) {
+                            case "mag":
+                                feature.magnitude = reader.nextDouble();
+                                break;
+                            case "magType":
+                                magType = reader.nextString();
+                                break;
+                            case "place":
+                                feature.location = reader.nextString();
+                                break;
+                            case "time":
+                                feature.time = reader.nextLong();
+                                break;
+                            case "updated":
+                                feature.updated = reader.nextLong();
+                                break;
+                            case "url":
+                                feature.URL = reader.nextString();
+                                break;
+                            case "felt":
+                                felt = reader.nextInt();
+                                break;
+                            case "alert":
+                                alert = reader.nextString();
+                                break;
+                            case "tsunami":
+                                tsunami = reader.nextInt() != 0;
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            LOG.log(Level.SEVERE, "Problem parsing the earthquake detail JSON", e);
+            return null;
+        }
+        return new EarthQuakeDetail(feature.id, feature.magnitude, feature.location, feature.time,
+                feature.updated, feature.URL, feature.latitude, feature.longitude, feature.depth,
+                magType, felt, alert, tsunami);
+    }
+
+    /**
+     * Return the number of events matching a USGS count query URL, or -1 if the request failed.
+     * The count endpoint answers {"count":N,"maxAllowed":20000} when asked for geojson.
+     */
+    public static int fetchEventCount(String requestUrl) {
+        final int[] count = {-1};
+        try {
+            makeHttpRequest(createUrl(requestUrl), new ResponseParser() {
+                @Override
+                public void parse(InputStream inputStream) throws IOException {
+                    JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("count")) {
+                            count[0] = reader.nextInt();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+            });
+        } catch (IOException | IllegalStateException e) {
+            LOG.log(Level.SEVERE, "Problem retrieving the earthquake count.", e);
+            return -1;
+        }
+        return count[0];
+    }
+
+    /**
+     * Parse a GeoJSON response straight off the given {@link InputStream} into a list.
+     */
+    public static ArrayList<EarthQuake> extractFeatureFromJson(InputStream inputStream) throws IOException {
+        // Create an empty ArrayList that we can start adding earthquakes to
+        ListSink sink = new ListSink();
+        extractFeatureFromJson(inputStream, sink);
+
+        // Return the list of earthquakes
+        return sink.earthquakes;
+    }
+
+    /**
+     * Parse a GeoJSON response straight off the given {@link InputStream}.
+     * Only the feature "id", the geometry coordinates and the "mag", "place", "time",
+     * "updated", "url" and "status" properties are read, every other field (the remaining
+     * properties, metadata) is skipped without being materialized, so only one feature is
+     * held in memory at a time. Throws if the stream fails, e.g. a download cut short.
+     */
+    public static void extractFeatureFromJson(InputStream inputStream, FeatureSink sink) throws IOException {
+        long start = Metrics.start();
+        int events = 0;
+        EndAwareInputStream body = new EndAwareInputStream(inputStream);
+        JsonReader reader = new JsonReader(new InputStreamReader(body, Charset.forName("UTF-8")));
+        // Fields of the feature being read, reused for every feature
+        Feature feature = new Feature();
+        // If the response is malformed the reader throws, keep whatever was parsed so far
+        // and print the error message to the logs so the app doesn't crash. Any other
+        // IOException is the stream failing, which fails the request.
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                // "features" represents a list of features (or earthquakes)
+                if (reader.nextName().equals("features")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (readFeature(reader, feature)) {
+                            sink.add(feature.id, feature.magnitude, feature.location, feature.time,
+                                    feature.updated, feature.URL, feature.latitude, feature.longitude,
+                                    feature.depth, feature.deleted);
+                            events++;
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            if (body.ended) {
+                // The body stopped in the middle of the document, e.g. a connection closed early
+                throw new EOFException("Response ended before the JSON document did: " + e.getMessage());
+            }
+            LOG.log(Level.SEVERE, "Problem parsing the earthquake JSON results", e);
+        }
+        // Streaming off the network this includes the time spent waiting on http.download
+        Metrics.end(Metrics.PARSE, start);
+        Metrics.value(Metrics.PARSE_EVENTS, events);
+    }
+
+    /**
+     * Parse a USGS "csv" or "text" response straight off the given {@link InputStream}.
+     * Returns the number of events read, or -1 if the response is not in that format.
+     * Throws if the stream fails, malformed rows are skipped by the parser.
+     */
+    public static int extractFeatureFromDelimited(InputStream inputStream, String format, FeatureSink sink)
+            throws IOException {
+        boolean csv = format.equals(EarthQuakeQuery.FORMAT_CSV);
+        DelimitedParser parser = csv ? DelimitedParser.csv() : DelimitedParser.text();
+        long start = Metrics.start();
+        int events = parser.parse(inputStream, sink);
+        Metrics.end(csv ? Metrics.PARSE_CSV : Metrics.PARSE_TEXT, start);
+        if (events > 0) {
+            Metrics.value(Metrics.PARSE_EVENTS, events);
+            Metrics.value(csv ? Metrics.PARSE_CSV_BYTES_PER_EVENT : Metrics.PARSE_TEXT_BYTES_PER_EVENT,
+                    parser.getBytesRead() / events);
+        }
+        return events;
+    }
+
+    /**
+     * Read a single feature object, returns false if it has no "properties".
+     */
+    private static boolean readFeature(JsonReader reader, Feature feature) throws IOException {
+        feature.reset();
+        boolean hasProperties = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id") && reader.peek() != JsonToken.NULL) {
+                feature.id = reader.nextString();
+            } else if (name.equals("properties")) {
+                readProperties(reader, feature);
+                hasProperties = true;
+            } else if (name.equals("geometry") && reader.peek() != JsonToken.NULL) {
+                readGeometry(reader, feature);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return hasProperties;
+    }
+
+    /**
+     * Read the "properties" object of a feature.
+     */
+    private static void readProperties(JsonReader reader, Feature feature) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // Some fields (e.g. "mag" of a deleted event) can be null, skip those
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "mag":
+                    feature.magnitude = reader.nextDouble();
+                    break;
+                case "place":
+                    feature.location = reader.nextString();
+                    break;
+                case "time":
+                    feature.time = reader.nextLong();
+                    break;
+                case "updated":
+                    feature.updated = reader.nextLong();
+                    break;
+                case "url":
+                    feature.URL = reader.nextString();
+                    break;
+                case "status":
+                    // "deleted" is only ever returned when the query asks for includedeleted
+                    feature.deleted = reader.nextString().equals("deleted");
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "geometry" of a feature, a point whose coordinates are
+     * [longitude, latitude, depth].
+     */
+    private static void readGeometry(JsonReader reader, Feature feature) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("coordinates") || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            for (int i = 0; reader.hasNext(); i++) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if (i == 0) {
+                    feature.longitude = reader.nextDouble();
+                } else if (i == 1) {
+                    feature.latitude = reader.nextDouble();
+                } else if (i == 2) {
+                    feature.depth = reader.nextDouble();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the body of a successful response.
+     */
+    private interface ResponseParser {
+        void parse(InputStream inputStream) throws IOException;
+    }
+
+    /**
+     * Remembers whether the stream it reads from reached its end, which tells a body cut
+     * short from one that is malformed in the middle.
+     */
+    private static class EndAwareInputStream extends FilterInputStream {
+        boolean ended;
+
+        EndAwareInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            ended |= b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            ended |= read == -1;
+            return read;
+        }
+    }
+
+    /**
+     * Fields of one feature while it is being read.
+     */
+    private static class Feature {
+        String id;
+        double magnitude;
+        String location;
+        long time;
+        long updated;
+        String URL;
+        double latitude;
+        double longitude;
+        double depth;
+        boolean deleted;
+
+        void reset() {
+            id = "";
+            magnitude = 0;
+            location = "";
+            time = 0;
+            updated = 0;
+            URL = "";
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+            depth = Double.NaN;
+            deleted = false;
+        }
+    }
+
+    /**
+     * Collects the parsed features as {@link EarthQuake} objects.
+     */
+    private static class ListSink implements FeatureSink {
+        final ArrayList<EarthQuake> earthquakes = new ArrayList<>();
+
+        @Override
+        public void add(String id, double mag, String place, long time, long updated, String url,
+                        double latitude, double longitude, double depth, boolean deleted) {
+            // Create a new {@link Earthquake} object with the magnitude, location, and time
+            // from the JSON response.
+            earthquakes.add(new EarthQuake(id, mag, place, time, updated, url,
+                    latitude, longitude, depth, deleted));
+        }
+    }
+
+    /**
+     * Returns new URL object from the given string URL.
+     */
+    private static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            LOG.log(Level.SEVERE, "Problem building the URL ", e);
+        }
+        return url;
+    }
+
+    /**
+     * Make an HTTP request to the given URL and hand the response to the parser,
+     * returns false if the request failed.
+     */
+    private static boolean makeHttpRequest(URL url, ResponseParser parser) throws IOException {
+        return makeHttpRequest(url, false, parser);
+    }
+
+    /**
+     * Make an HTTP request to the given URL and hand the response to the parser, returns
+     * false if the request failed. A low priority request goes past the response cache
+     * and is not hedged or retried, it is not worth the extra load on the server.
+     * A delta query goes past the response cache too, its URL changes with every sync
+     * so an entry for it would never be asked for again.
+     */
+    private static boolean makeHttpRequest(URL url, boolean lowPriority, ResponseParser parser) throws IOException {
+        // If the URL is null, then return early.
+        if (url == null) {
+            return false;
+        }
+
+        boolean success = false;
+        DiskResponseCache responseCache = lowPriority || EarthQuakeQuery.isDelta(url.toString())
+                ? null : sResponseCache;
+        Transport transport = sTransport;
+        if (lowPriority && transport instanceof ResilientTransport) {
+            transport = ((ResilientTransport) transport).getTransport();
+        }
+        DiskResponseCache.Entry cached = responseCache == null ? null : responseCache.get(url.toString());
+        Transport.Response response = null;
+        InputStream inputStream = null;
+        try {
+            Map<String, String> headers = new HashMap<>();
+            // Ask for a compressed body, ResponseReader inflates it while it is parsed
+            headers.put("Accept-Encoding", "gzip");
+            // If we have a cached copy, let the server answer 304 when nothing changed
+            if (cached != null && cached.getEtag() != null) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if (cached != null && cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+            long requestStart = Metrics.start();
+            response = transport.get(url, headers);
+            // The transport returns once the status line and headers are in
+            Metrics.end(Metrics.HTTP_TTFB, requestStart);
+
+            // If the request was successful (response code 200),
+            // then parse the input stream as it is downloaded.
+            int responseCode = response.getCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                inputStream = ResponseReader.open(response);
+                String etag = response.getHeader("ETag");
+                String lastModified = response.getHeader("Last-Modified");
+                if (responseCache != null && (etag != null || lastModified != null)) {
+                    inputStream = responseCache.put(url.toString(), etag, lastModified, inputStream);
+                }
+                parser.parse(inputStream);
+                success = true;
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                // Nothing changed on the server, parse the copy we already have
+                responseCache.recordNotModified(cached);
+                Metrics.count(Metrics.HTTP_NOT_MODIFIED);
+                inputStream = cached.openBody();
+                parser.parse(inputStream);
+                success = true;
+            } else {
+                LOG.severe("Error response code: " + responseCode);
+                Metrics.count(Metrics.HTTP_ERRORS);
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Problem retrieving the earthquake JSON results.", e);
+            Metrics.count(Metrics.HTTP_ERRORS);
+        } finally {
+            if (inputStream != null) {
+                // Closing the input stream could throw an IOException, which is why
+                // the makeHttpRequest(URL url, ResponseParser parser) method signature specifies than an IOException
+                // could be thrown.
+                inputStream.close();
+            }
+            if (response != null) {
+                // Closing instead of disconnecting hands the connection back to the pool
+                response.close();
+            }
+        }
+        return success;
+    }
+}
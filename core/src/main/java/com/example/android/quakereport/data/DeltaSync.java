@@ -0,0 +1,168 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Keeps the result of the last full query and brings it up to date with
+ * incremental queries that only ask USGS for events updated after the newest
+ * "updated" timestamp seen so far. Updated events replace the existing entry
+ * with the same id and deleted events are removed.
+ * An event whose magnitude is revised below the query's minimum is not in any delta,
+ * so a magnitude ordered query, where such an event sits near the top, is never delta
+ * synced, and a time ordered one is fetched in full again every {@link #FULL_SYNC_MILLIS}.
+ */
+public class DeltaSync {
+    //Window USGS answers a query without a start time with, events older than that leave the result
+    private static final long DEFAULT_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    //Age after which the events are fetched in full again instead of delta synced
+    private static final long FULL_SYNC_MILLIS = 60 * 60 * 1000;
+
+    //Events of the last synced query keyed on their USGS id
+    private final HashMap<String, EarthQuake> events = new HashMap<>();
+    //Full query URL these events belong to
+    private String query;
+    private String orderBy;
+    private int limit;
+    //Newest "updated" timestamp seen in any response
+    private long lastUpdated;
+    //When the events were last replaced by a full query
+    private long resetAt;
+
+    /**
+     * Return true if the given query was synced before and can be brought up to date with a delta.
+     */
+    public synchronized boolean canSync(String query) {
+        return canSync(query, System.currentTimeMillis());
+    }
+
+    synchronized boolean canSync(String query, long now) {
+        return query.equals(this.query) && lastUpdated > 0 && !EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy)
+                && now - resetAt < FULL_SYNC_MILLIS;
+    }
+
+    /**
+     * Return the URL that asks USGS only for the events of the given query
+     * updated after the last sync, including the ones deleted since,
+     * or null if the query has to be fetched in full.
+     * The URL is what {@link #merge(String, List)} checks the delta against.
+     */
+    public synchronized String buildDeltaUrl(String query) {
+        return buildDeltaUrl(query, System.currentTimeMillis());
+    }
+
+    synchronized String buildDeltaUrl(String query, long now) {
+        if (!canSync(query, now)) {
+            return null;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return query + "&" + EarthQuakeQuery.UPDATED_AFTER_PARAMETER + format.format(new Date(lastUpdated))
+                + "&includedeleted=true";
+    }
+
+    /**
+     * Replace the synced events with the result of a full query.
+     */
+    public synchronized List<EarthQuake> reset(String query, String orderBy, int limit, List<EarthQuake> earthQuakes) {
+        return reset(query, orderBy, limit, earthQuakes, System.currentTimeMillis());
+    }
+
+    synchronized List<EarthQuake> reset(String query, String orderBy, int limit, List<EarthQuake> earthQuakes,
+                                        long now) {
+        this.query = query;
+        this.orderBy = orderBy;
+        this.limit = limit;
+        events.clear();
+        lastUpdated = 0;
+        resetAt = now;
+        return apply(earthQuakes, now);
+    }
+
+    /**
+     * Merge the result of the given delta URL into the synced events and return them
+     * in the order of the query, capped at its limit. Returns null, leaving the events
+     * alone, if they were reset or synced since the URL was built, the delta may then
+     * be for another query or miss changes, and the query has to be fetched in full.
+     */
+    public synchronized List<EarthQuake> merge(String deltaUrl, List<EarthQuake> delta) {
+        return merge(deltaUrl, delta, System.currentTimeMillis());
+    }
+
+    synchronized List<EarthQuake> merge(String deltaUrl, List<EarthQuake> delta, long now) {
+        if (query == null || !deltaUrl.equals(buildDeltaUrl(query, now))) {
+            return null;
+        }
+        return apply(delta, now);
+    }
+
+    /**
+     * Apply the events as of the given time, dropping the ones a full query at that
+     * time would no longer return because they left the default window.
+     */
+    private List<EarthQuake> apply(List<EarthQuake> delta, long now) {
+        for (EarthQuake earthQuake : delta) {
+            lastUpdated = Math.max(lastUpdated, earthQuake.getUpdated());
+            if (earthQuake.isDeleted()) {
+                events.remove(earthQuake.getId());
+            } else {
+                events.put(earthQuake.getId(), earthQuake);
+            }
+        }
+
+        long windowStart = now - DEFAULT_WINDOW_MILLIS;
+        Iterator<EarthQuake> iterator = events.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getTimestamp() < windowStart) {
+                iterator.remove();
+            }
+        }
+
+        ArrayList<EarthQuake> sorted = new ArrayList<>(events.values());
+        Collections.sort(sorted, EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy) ? BY_MAGNITUDE : BY_TIME);
+        // Drop whatever fell off the end of the window so the set does not grow forever
+        while (sorted.size() > limit) {
+            events.remove(sorted.remove(sorted.size() - 1).getId());
+        }
+        return sorted;
+    }
+
+    /**
+     * Forget the synced events, the next refresh is a full query.
+     */
+    public synchronized void clear() {
+        query = null;
+        events.clear();
+        lastUpdated = 0;
+        resetAt = 0;
+    }
+
+    //Same orders USGS uses for orderby=magnitude and orderby=time, largest / newest first
+    private static final Comparator<EarthQuake> BY_MAGNITUDE = new Comparator<EarthQuake>() {
+        @Override
+        public int compare(EarthQuake a, EarthQuake b) {
+            return Double.compare(b.getMag(), a.getMag());
+        }
+    };
+
+    private static final Comparator<EarthQuake> BY_TIME = new Comparator<EarthQuake>() {
+        @Override
+        public int compare(EarthQuake a, EarthQuake b) {
+            // Not Long.compare, which is api 19
+            long x = b.getTimestamp();
+            long y = a.getTimestamp();
+            return x < y ? -1 : (x == y ? 0 : 1);
+        }
+    };
+}
@@ -0,0 +1,259 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.EarthQuakeFormat;
+import com.example.android.quakereport.QueryUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Summary figures of a window of events: counts per magnitude band, counts per UTC day
+ * and the largest magnitude of every region. Events are added, updated and removed one
+ * at a time, each only touches the figures it counts towards, so a delta of a few events
+ * does not rescan the whole window. A full rebuild splits the columns over a fork/join pool.
+ */
+public class EarthQuakeAggregates implements QueryUtils.FeatureSink {
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    //Events a rebuild task counts itself instead of splitting further
+    private static final int SPLIT_THRESHOLD = 2048;
+
+    private final int[] bandCounts = new int[EarthQuakeFormat.MAGNITUDE_BANDS];
+    //Events per day, keyed on days since the epoch
+    private final HashMap<Long, Count> dayCounts = new HashMap<>();
+    //Magnitudes of the events of every region and how many events have each, the last key is the largest
+    private final HashMap<String, TreeMap<Double, Count>> regionMagnitudes = new HashMap<>();
+    //What every event counts towards, so an update or removal can take it back out
+    private final HashMap<String, Contribution> contributions;
+
+    public EarthQuakeAggregates() {
+        this(16);
+    }
+
+    private EarthQuakeAggregates(int capacity) {
+        contributions = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * Count every event of the columns, split over the given pool.
+     */
+    public static EarthQuakeAggregates build(EarthQuakeColumns columns, ForkJoinPool pool) {
+        return pool.invoke(new RebuildTask(columns, 0, columns.size()));
+    }
+
+    /**
+     * Return the UTC day of a time, in days since the epoch.
+     */
+    public static long dayOf(long time) {
+        // Rounded down for times before the epoch too
+        return time >= 0 ? time / DAY_MILLIS : (time + 1) / DAY_MILLIS - 1;
+    }
+
+    /**
+     * Add the event, or replace what it counted towards if it is already in.
+     */
+    public synchronized void put(String id, double magnitude, long time, String region) {
+        Contribution contribution = new Contribution(magnitude, dayOf(time), region);
+        Contribution old = contributions.put(id, contribution);
+        if (old != null) {
+            subtract(old);
+        }
+        count(contribution, 1);
+    }
+
+    /**
+     * Take the event out, returns false if it was not in.
+     */
+    public synchronized boolean remove(String id) {
+        Contribution old = contributions.remove(id);
+        if (old == null) {
+            return false;
+        }
+        subtract(old);
+        return true;
+    }
+
+    /**
+     * Add or update an event handed over by a parser, a deleted one is taken out.
+     */
+    @Override
+    public synchronized void add(String id, double mag, String place, long time, long updated, String url,
+                                 double latitude, double longitude, double depth, boolean deleted) {
+        if (deleted) {
+            remove(id);
+        } else {
+            put(id, mag, time, EarthQuakeColumns.regionOf(place));
+        }
+    }
+
+    /**
+     * Apply a delta of changed events, e.g. the one handed to {@link DeltaSync#merge(String, List)}.
+     */
+    public synchronized void apply(List<EarthQuake> delta) {
+        for (EarthQuake earthQuake : delta) {
+            add(earthQuake.getId(), earthQuake.getMag(), earthQuake.getTitle(), earthQuake.getTimestamp(),
+                    earthQuake.getUpdated(), earthQuake.getURL(), earthQuake.getLatitude(),
+                    earthQuake.getLongitude(), earthQuake.getDepth(), earthQuake.isDeleted());
+        }
+    }
+
+    public synchronized int size() {
+        return contributions.size();
+    }
+
+    /**
+     * Return the number of events in every magnitude band, indexed by {@link EarthQuakeFormat#bandOf(double)}.
+     */
+    public synchronized int[] getBandCounts() {
+        return bandCounts.clone();
+    }
+
+    /**
+     * Return the number of events of every day that has any, keyed on {@link #dayOf(long)}.
+     */
+    public synchronized SortedMap<Long, Integer> getDayCounts() {
+        TreeMap<Long, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Long, Count> entry : dayCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().value);
+        }
+        return counts;
+    }
+
+    /**
+     * Return the largest magnitude in the region, or NaN if it has no events.
+     */
+    public synchronized double getMaxMagnitude(String region) {
+        TreeMap<Double, Count> magnitudes = regionMagnitudes.get(region);
+        return magnitudes == null ? Double.NaN : magnitudes.lastKey();
+    }
+
+    /**
+     * Return the largest magnitude of every region that has events.
+     */
+    public synchronized Map<String, Double> getMaxMagnitudeByRegion() {
+        HashMap<String, Double> maxima = new HashMap<>(regionMagnitudes.size() * 4 / 3 + 1);
+        for (Map.Entry<String, TreeMap<Double, Count>> entry : regionMagnitudes.entrySet()) {
+            maxima.put(entry.getKey(), entry.getValue().lastKey());
+        }
+        return maxima;
+    }
+
+    private void count(Contribution contribution, int events) {
+        bandCounts[EarthQuakeFormat.bandOf(contribution.magnitude)] += events;
+        add(dayCounts, contribution.day, events);
+        TreeMap<Double, Count> magnitudes = regionMagnitudes.get(contribution.region);
+        if (magnitudes == null) {
+            magnitudes = new TreeMap<>();
+            regionMagnitudes.put(contribution.region, magnitudes);
+        }
+        add(magnitudes, contribution.magnitude, events);
+        if (magnitudes.isEmpty()) {
+            regionMagnitudes.remove(contribution.region);
+        }
+    }
+
+    private void subtract(Contribution contribution) {
+        count(contribution, -1);
+    }
+
+    /**
+     * Add to the count of the key, dropping it once it reaches zero.
+     */
+    private static <K> void add(Map<K, Count> counts, K key, int events) {
+        Count count = counts.get(key);
+        if (count == null) {
+            count = new Count();
+            counts.put(key, count);
+        }
+        count.value += events;
+        if (count.value == 0) {
+            counts.remove(key);
+        }
+    }
+
+    /**
+     * Add the events of another instance to this one, an event in both ends up counted once, as in the other.
+     * Only used while rebuilding, when neither instance is shared yet.
+     */
+    private void merge(EarthQuakeAggregates other) {
+        for (Map.Entry<String, Contribution> entry : other.contributions.entrySet()) {
+            Contribution old = contributions.put(entry.getKey(), entry.getValue());
+            if (old != null) {
+                subtract(old);
+            }
+        }
+        for (int band = 0; band < EarthQuakeFormat.MAGNITUDE_BANDS; band++) {
+            bandCounts[band] += other.bandCounts[band];
+        }
+        for (Map.Entry<Long, Count> entry : other.dayCounts.entrySet()) {
+            add(dayCounts, entry.getKey(), entry.getValue().value);
+        }
+        for (Map.Entry<String, TreeMap<Double, Count>> entry : other.regionMagnitudes.entrySet()) {
+            TreeMap<Double, Count> magnitudes = regionMagnitudes.get(entry.getKey());
+            if (magnitudes == null) {
+                regionMagnitudes.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            for (Map.Entry<Double, Count> magnitude : entry.getValue().entrySet()) {
+                add(magnitudes, magnitude.getKey(), magnitude.getValue().value);
+            }
+        }
+    }
+
+    private static class Count {
+        int value;
+    }
+
+    private static class Contribution {
+        final double magnitude;
+        final long day;
+        final String region;
+
+        Contribution(double magnitude, long day, String region) {
+            this.magnitude = magnitude;
+            this.day = day;
+            this.region = region;
+        }
+    }
+
+    /**
+     * Counts a range of the columns, halving it until the halves are small enough to count directly.
+     */
+    private static class RebuildTask extends RecursiveTask<EarthQuakeAggregates> {
+        private static final long serialVersionUID = 1L;
+
+        private final EarthQuakeColumns columns;
+        private final int start;
+        private final int end;
+
+        RebuildTask(EarthQuakeColumns columns, int start, int end) {
+            this.columns = columns;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected EarthQuakeAggregates compute() {
+            if (end - start <= SPLIT_THRESHOLD) {
+                EarthQuakeAggregates aggregates = new EarthQuakeAggregates(end - start);
+                for (int i = start; i < end; i++) {
+                    aggregates.put(columns.getId(i), columns.getMagnitude(i), columns.getTime(i),
+                            columns.getRegion(i));
+                }
+                return aggregates;
+            }
+            int middle = (start + end) >>> 1;
+            RebuildTask left = new RebuildTask(columns, start, middle);
+            left.fork();
+            EarthQuakeAggregates right = new RebuildTask(columns, middle, end).compute();
+            EarthQuakeAggregates aggregates = left.join();
+            aggregates.merge(right);
+            return aggregates;
+        }
+    }
+}
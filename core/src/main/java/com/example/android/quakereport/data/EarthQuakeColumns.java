@@ -0,0 +1,294 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.EarthQuakeFormat;
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Column oriented collection of earthquakes for large result windows.
+ * Magnitudes and times live in primitive arrays, and the two halves of every place
+ * title (e.g. "10km SSW of " and "Anchorage, Alaska") are deduplicated, since the
+ * same distances, directions and regions come back thousands of times.
+ * The parser can fill it directly through {@link QueryUtils.FeatureSink}.
+ */
+public class EarthQuakeColumns implements QueryUtils.FeatureSink {
+
+    private int size;
+    private String[] ids;
+    private double[] magnitudes;
+    private long[] times;
+    private long[] updated;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] depths;
+    //Part of the place up to and including " of ", null when the place has no separator
+    private String[] locations;
+    private String[] regions;
+    private String[] urls;
+
+    //Pool used to share equal location and region strings
+    private final HashMap<String, String> strings = new HashMap<>();
+
+    public EarthQuakeColumns() {
+        this(64);
+    }
+
+    public EarthQuakeColumns(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new String[capacity];
+        magnitudes = new double[capacity];
+        times = new long[capacity];
+        updated = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        depths = new double[capacity];
+        locations = new String[capacity];
+        regions = new String[capacity];
+        urls = new String[capacity];
+    }
+
+    public static EarthQuakeColumns fromList(List<EarthQuake> earthQuakes) {
+        EarthQuakeColumns columns = new EarthQuakeColumns(earthQuakes.size());
+        for (EarthQuake earthQuake : earthQuakes) {
+            columns.add(earthQuake.getId(), earthQuake.getMag(), earthQuake.getTitle(),
+                    earthQuake.getTimestamp(), earthQuake.getUpdated(), earthQuake.getURL(),
+                    earthQuake.getLatitude(), earthQuake.getLongitude(), earthQuake.getDepth(),
+                    earthQuake.isDeleted());
+        }
+        return columns;
+    }
+
+    /**
+     * Append an event, deleted events are left out.
+     */
+    @Override
+    public void add(String id, double mag, String place, long time, long updated, String url,
+                    double latitude, double longitude, double depth, boolean deleted) {
+        if (deleted) {
+            return;
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = id;
+        magnitudes[size] = mag;
+        times[size] = time;
+        this.updated[size] = updated;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        depths[size] = depth;
+        int end = regionStart(place);
+        locations[size] = end > 0 ? dedupe(place.substring(0, end)) : null;
+        regions[size] = dedupe(place.substring(end));
+        urls[size] = url;
+        size++;
+    }
+
+    /**
+     * Return the region of a place title, e.g. "Anchorage, Alaska" for "10km SSW of Anchorage, Alaska".
+     */
+    public static String regionOf(String place) {
+        return place.substring(regionStart(place));
+    }
+
+    private static int regionStart(String place) {
+        int separator = place.indexOf(EarthQuakeFormat.LOCATION_SEPARATOR);
+        return separator >= 0 ? separator + EarthQuakeFormat.LOCATION_SEPARATOR.length() : 0;
+    }
+
+    /**
+     * Append the event at the given position of another collection, sharing its strings.
+     */
+    public void addFrom(EarthQuakeColumns other, int i) {
+        if (size == ids.length) {
+            grow();
+        }
+        ids[size] = other.ids[i];
+        magnitudes[size] = other.magnitudes[i];
+        times[size] = other.times[i];
+        updated[size] = other.updated[i];
+        latitudes[size] = other.latitudes[i];
+        longitudes[size] = other.longitudes[i];
+        depths[size] = other.depths[i];
+        locations[size] = other.locations[i] == null ? null : dedupe(other.locations[i]);
+        regions[size] = dedupe(other.regions[i]);
+        urls[size] = other.urls[i];
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getId(int i) {return ids[i];}
+
+    public double getMagnitude(int i) {return magnitudes[i];}
+
+    public long getTime(int i) {return times[i];}
+
+    public long getUpdated(int i) {return updated[i];}
+
+    public double getLatitude(int i) {return latitudes[i];}
+
+    public double getLongitude(int i) {return longitudes[i];}
+
+    public double getDepth(int i) {return depths[i];}
+
+    public String getLocation(int i) {return locations[i];}
+
+    public String getRegion(int i) {return regions[i];}
+
+    public String getURL(int i) {return urls[i];}
+
+    public String getPlace(int i) {
+        return locations[i] == null ? regions[i] : locations[i] + regions[i];
+    }
+
+    /**
+     * Build an {@link EarthQuake} for the event at the given position,
+     * only meant for the few events that are actually shown.
+     */
+    public EarthQuake get(int i) {
+        return new EarthQuake(ids[i], magnitudes[i], getPlace(i), times[i], updated[i], urls[i],
+                latitudes[i], longitudes[i], depths[i], false);
+    }
+
+    /**
+     * Return the events as a list that builds each one when it is asked for, for callers
+     * that need a list but only look at a few of the events.
+     */
+    public List<EarthQuake> asList() {
+        return new AbstractList<EarthQuake>() {
+            @Override
+            public EarthQuake get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Event " + index + " of " + size);
+                }
+                return EarthQuakeColumns.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Return a reusable view on the events, move it with {@link Row#moveTo(int)}.
+     */
+    public Row row() {
+        return new Row();
+    }
+
+    /**
+     * Flyweight over one position of the columns, lets callers walk thousands of events
+     * without creating an object per event.
+     */
+    public class Row {
+        private int position;
+
+        public Row moveTo(int position) {
+            this.position = position;
+            return this;
+        }
+
+        public int getPosition() {return position;}
+
+        public String getId() {return ids[position];}
+
+        public double getMagnitude() {return magnitudes[position];}
+
+        public long getTime() {return times[position];}
+
+        public long getUpdated() {return updated[position];}
+
+        public double getLatitude() {return latitudes[position];}
+
+        public double getLongitude() {return longitudes[position];}
+
+        public double getDepth() {return depths[position];}
+
+        public String getLocation() {return locations[position];}
+
+        public String getRegion() {return regions[position];}
+
+        public String getPlace() {return EarthQuakeColumns.this.getPlace(position);}
+
+        public String getURL() {return urls[position];}
+    }
+
+    /**
+     * Sort the events in place, largest or newest first like the USGS orderby parameter.
+     */
+    public void sort(String orderBy) {
+        long[] keys = new long[size];
+        boolean byMagnitude = EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy);
+        for (int i = 0; i < size; i++) {
+            // Negated so the ascending sort puts the largest / newest first
+            keys[i] = byMagnitude ? -PrimitiveSort.sortableBits(magnitudes[i]) : -times[i];
+        }
+        int[] order = PrimitiveSort.sortIndices(keys, size);
+        ids = permute(ids, order);
+        urls = permute(urls, order);
+        locations = permute(locations, order);
+        regions = permute(regions, order);
+        magnitudes = permute(magnitudes, order);
+        latitudes = permute(latitudes, order);
+        longitudes = permute(longitudes, order);
+        depths = permute(depths, order);
+        long[] sortedTimes = new long[times.length];
+        long[] sortedUpdated = new long[updated.length];
+        for (int i = 0; i < size; i++) {
+            sortedTimes[i] = times[order[i]];
+            sortedUpdated[i] = updated[order[i]];
+        }
+        times = sortedTimes;
+        updated = sortedUpdated;
+    }
+
+    private double[] permute(double[] column, int[] order) {
+        double[] sorted = new double[column.length];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = column[order[i]];
+        }
+        return sorted;
+    }
+
+    private String[] permute(String[] column, int[] order) {
+        String[] sorted = new String[column.length];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = column[order[i]];
+        }
+        return sorted;
+    }
+
+    private String dedupe(String value) {
+        String shared = strings.get(value);
+        if (shared == null) {
+            strings.put(value, value);
+            return value;
+        }
+        return shared;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        magnitudes = Arrays.copyOf(magnitudes, capacity);
+        times = Arrays.copyOf(times, capacity);
+        updated = Arrays.copyOf(updated, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        locations = Arrays.copyOf(locations, capacity);
+        regions = Arrays.copyOf(regions, capacity);
+        urls = Arrays.copyOf(urls, capacity);
+    }
+}
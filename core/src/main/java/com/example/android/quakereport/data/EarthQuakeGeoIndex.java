@@ -0,0 +1,258 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Spatial index of earthquakes on a fixed grid of one degree cells, for "near me"
+ * radius and bounding box queries on the device. A query only looks at the cells its
+ * area overlaps. Events are added, replaced and removed one at a time as updates
+ * arrive, so the index never has to be rebuilt from scratch.
+ */
+public class EarthQuakeGeoIndex {
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+    //Side of a grid cell in degrees, a radius of a few hundred kilometers spans a handful of cells
+    private static final double CELL_DEGREES = 1.0;
+    private static final int ROWS = (int) (180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) (360 / CELL_DEGREES);
+
+    //Slot of every indexed event by id
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    //Events and their coordinates by slot, slots of removed events are reused
+    private EarthQuake[] earthQuakes = new EarthQuake[64];
+    private double[] latitudes = new double[64];
+    private double[] longitudes = new double[64];
+    private int[] cellOf = new int[64];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    //Slots in every non empty cell, keyed by row * COLUMNS + column
+    private final HashMap<Integer, Cell> cells = new HashMap<>();
+
+    public EarthQuakeGeoIndex() {
+    }
+
+    public EarthQuakeGeoIndex(List<EarthQuake> earthQuakes) {
+        addAll(earthQuakes);
+    }
+
+    public void addAll(List<EarthQuake> earthQuakes) {
+        for (EarthQuake earthQuake : earthQuakes) {
+            add(earthQuake);
+        }
+    }
+
+    /**
+     * Add the event, replacing an older version with the same id.
+     * Deleted events and events without a location are removed instead.
+     */
+    public void add(EarthQuake earthQuake) {
+        remove(earthQuake.getId());
+        if (earthQuake.isDeleted() || !earthQuake.hasLocation()) {
+            return;
+        }
+        int slot = allocate();
+        earthQuakes[slot] = earthQuake;
+        latitudes[slot] = earthQuake.getLatitude();
+        longitudes[slot] = earthQuake.getLongitude();
+        int cell = cell(row(latitudes[slot]), column(longitudes[slot]));
+        cellOf[slot] = cell;
+        Cell slotsInCell = cells.get(cell);
+        if (slotsInCell == null) {
+            slotsInCell = new Cell();
+            cells.put(cell, slotsInCell);
+        }
+        slotsInCell.add(slot);
+        slots.put(earthQuake.getId(), slot);
+    }
+
+    /**
+     * Remove the event with the given id, returns false if it was not indexed.
+     */
+    public boolean remove(String id) {
+        Integer slot = slots.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        Cell cell = cells.get(cellOf[slot]);
+        cell.remove(slot);
+        if (cell.count == 0) {
+            cells.remove(cellOf[slot]);
+        }
+        earthQuakes[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        return true;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Return up to limit events within the given distance of a point, nearest first.
+     */
+    public List<EarthQuake> withinRadius(double latitude, double longitude, double radiusKm, int limit) {
+        double latitudeSpan = radiusKm / KM_PER_DEGREE;
+        int firstRow = row(latitude - latitudeSpan);
+        int lastRow = row(latitude + latitudeSpan);
+        // A degree of longitude shrinks toward the poles, so the widest row sets the span
+        double widestLatitude = Math.min(90, Math.abs(latitude) + latitudeSpan);
+        double cos = Math.cos(Math.toRadians(widestLatitude));
+        double longitudeSpan = latitudeSpan / cos;
+        int firstColumn = 0;
+        int lastColumn = COLUMNS - 1;
+        // Close to a pole the circle covers every longitude
+        if (longitudeSpan < 180) {
+            firstColumn = (int) Math.floor((longitude - longitudeSpan + 180) / CELL_DEGREES);
+            lastColumn = Math.min((int) Math.floor((longitude + longitudeSpan + 180) / CELL_DEGREES),
+                    firstColumn + COLUMNS - 1);
+        }
+
+        int[] found = new int[16];
+        long[] keys = new long[16];
+        int count = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Cell cell = cells.get(cell(row, wrap(column)));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.count; i++) {
+                    int slot = cell.slots[i];
+                    double distance = distanceKm(latitude, longitude, latitudes[slot], longitudes[slot]);
+                    if (distance > radiusKm) {
+                        continue;
+                    }
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                        keys = Arrays.copyOf(keys, count * 2);
+                    }
+                    found[count] = slot;
+                    keys[count] = PrimitiveSort.sortableBits(distance);
+                    count++;
+                }
+            }
+        }
+
+        int[] order = PrimitiveSort.sortIndices(keys, count);
+        int resultSize = Math.min(count, limit);
+        ArrayList<EarthQuake> result = new ArrayList<>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            result.add(earthQuakes[found[order[i]]]);
+        }
+        return result;
+    }
+
+    /**
+     * Return the events inside the given box, in no particular order. A box whose west
+     * edge is east of its east edge crosses the antimeridian.
+     */
+    public List<EarthQuake> withinBox(double south, double west, double north, double east) {
+        boolean crossesAntimeridian = west > east;
+        int firstColumn = (int) Math.floor((west + 180) / CELL_DEGREES);
+        int lastColumn = (int) Math.floor((east + 180) / CELL_DEGREES);
+        if (crossesAntimeridian) {
+            lastColumn += COLUMNS;
+        }
+        lastColumn = Math.min(lastColumn, firstColumn + COLUMNS - 1);
+
+        ArrayList<EarthQuake> result = new ArrayList<>();
+        for (int row = row(south); row <= row(north); row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Cell cell = cells.get(cell(row, wrap(column)));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.count; i++) {
+                    int slot = cell.slots[i];
+                    double latitude = latitudes[slot];
+                    double longitude = longitudes[slot];
+                    boolean insideLongitude = crossesAntimeridian
+                            ? longitude >= west || longitude <= east
+                            : longitude >= west && longitude <= east;
+                    if (insideLongitude && latitude >= south && latitude <= north) {
+                        result.add(earthQuakes[slot]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Great circle distance between two points in kilometers, using the haversine formula.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double sinLatitude = Math.sin(dLatitude / 2);
+        double sinLongitude = Math.sin(dLongitude / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == earthQuakes.length) {
+            int capacity = slotCount * 2;
+            earthQuakes = Arrays.copyOf(earthQuakes, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            cellOf = Arrays.copyOf(cellOf, capacity);
+        }
+        return slotCount++;
+    }
+
+    private static int row(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / CELL_DEGREES);
+        return Math.max(0, Math.min(row, ROWS - 1));
+    }
+
+    private static int column(double longitude) {
+        return wrap((int) Math.floor((longitude + 180) / CELL_DEGREES));
+    }
+
+    private static int wrap(int column) {
+        int wrapped = column % COLUMNS;
+        return wrapped < 0 ? wrapped + COLUMNS : wrapped;
+    }
+
+    private static int cell(int row, int column) {
+        return row * COLUMNS + column;
+    }
+
+    /**
+     * Growable list of the slots in one grid cell.
+     */
+    private static class Cell {
+        int[] slots = new int[4];
+        int count;
+
+        void add(int slot) {
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, count * 2);
+            }
+            slots[count++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < count; i++) {
+                if (slots[i] == slot) {
+                    slots[i] = slots[--count];
+                    return;
+                }
+            }
+        }
+    }
+}
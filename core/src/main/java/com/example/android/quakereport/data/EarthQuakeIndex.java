@@ -0,0 +1,148 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.net.EarthQuakeQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory query engine over an already fetched set of earthquakes.
+ * Keeps the {@link EarthQuakeColumns} sorted by magnitude and by time in primitive index arrays, so a
+ * "min magnitude >= X, order by Y" view is a binary search and a slice instead of a
+ * new USGS query, as long as {@link #covers(double, String, int)} says the set holds
+ * every event of that view.
+ */
+public class EarthQuakeIndex {
+
+    private final EarthQuakeColumns events;
+    //Magnitudes in ascending order and the event behind each of them
+    private final double[] sortedMagnitudes;
+    private final int[] byMagnitude;
+    //Events newest first, and the position of every event in that order
+    private final int[] byTime;
+    private final int[] timeRank;
+    //Smallest magnitude the events were fetched with, anything below it is not known locally
+    private final double coveredMinMagnitude;
+    //Order the events were fetched in, null if not known
+    private final String orderBy;
+    //True if the fetch hit its limit, so further events of that order were cut off
+    private final boolean truncated;
+
+    /**
+     * @param orderBy order the earthquakes were fetched in, null if not known
+     * @param limit   limit they were fetched with
+     */
+    public EarthQuakeIndex(List<EarthQuake> earthQuakes, double coveredMinMagnitude, String orderBy, int limit) {
+        // Deleted events are left out of the columns, count them towards the limit all the same
+        this(EarthQuakeColumns.fromList(earthQuakes), coveredMinMagnitude, orderBy, earthQuakes.size() >= limit);
+    }
+
+    public EarthQuakeIndex(EarthQuakeColumns events, double coveredMinMagnitude, String orderBy, int limit) {
+        this(events, coveredMinMagnitude, orderBy, events.size() >= limit);
+    }
+
+    private EarthQuakeIndex(EarthQuakeColumns events, double coveredMinMagnitude, String orderBy,
+                            boolean truncated) {
+        this.events = events;
+        this.coveredMinMagnitude = coveredMinMagnitude;
+        this.orderBy = orderBy;
+        this.truncated = truncated;
+        int count = events.size();
+
+        long[] magnitudeKeys = new long[count];
+        long[] timeKeys = new long[count];
+        for (int i = 0; i < count; i++) {
+            magnitudeKeys[i] = PrimitiveSort.sortableBits(events.getMagnitude(i));
+            // Negated so the ascending sort puts the newest event first
+            timeKeys[i] = -events.getTime(i);
+        }
+        byMagnitude = PrimitiveSort.sortIndices(magnitudeKeys, count);
+        byTime = PrimitiveSort.sortIndices(timeKeys, count);
+
+        sortedMagnitudes = new double[count];
+        timeRank = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedMagnitudes[i] = events.getMagnitude(byMagnitude[i]);
+            timeRank[byTime[i]] = i;
+        }
+    }
+
+    /**
+     * Return true if the first limit events of at least the given magnitude in the given
+     * order are all in this index. Below the magnitude the events were fetched with
+     * nothing is known. If the fetch was cut off by its limit, only a view in the same
+     * order is known, and only as far as it does not reach past the cut.
+     */
+    public boolean covers(double minMagnitude, String orderBy, int limit) {
+        if (minMagnitude < coveredMinMagnitude) {
+            return false;
+        }
+        if (!truncated) {
+            return true;
+        }
+        if (this.orderBy == null || !this.orderBy.equals(orderBy)) {
+            return false;
+        }
+        int size = events.size();
+        if (size - lowerBound(sortedMagnitudes, minMagnitude) >= limit) {
+            return true;
+        }
+        // Ordered by magnitude, everything cut off is at most as large as the smallest event kept
+        return EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy) && size > 0 && sortedMagnitudes[0] < minMagnitude;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * Return up to limit events of at least the given magnitude,
+     * largest or newest first depending on orderBy.
+     */
+    public List<EarthQuake> query(double minMagnitude, String orderBy, int limit) {
+        int size = events.size();
+        int start = lowerBound(sortedMagnitudes, minMagnitude);
+        int count = Math.min(size - start, limit);
+        ArrayList<EarthQuake> result = new ArrayList<>(Math.max(count, 0));
+        if (count <= 0) {
+            return result;
+        }
+
+        if (EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy)) {
+            // The slice is already in magnitude order, walk it from the largest down
+            for (int i = size - 1; result.size() < count; i--) {
+                result.add(events.get(byMagnitude[i]));
+            }
+        } else {
+            // Sort the time ranks of the slice, smaller rank means newer
+            int[] ranks = new int[size - start];
+            for (int i = start; i < size; i++) {
+                ranks[i - start] = timeRank[byMagnitude[i]];
+            }
+            Arrays.sort(ranks);
+            for (int i = 0; i < count; i++) {
+                result.add(events.get(byTime[ranks[i]]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index of the first magnitude that is not smaller than the given one.
+     */
+    private static int lowerBound(double[] sorted, double value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
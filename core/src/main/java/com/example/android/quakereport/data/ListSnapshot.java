@@ -0,0 +1,239 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Binary snapshot of the last list the app showed, so the next launch can draw its
+ * first rows straight from a memory mapped file instead of waiting for the store or
+ * the network. The file is a header, one fixed width record per event and a table of
+ * the distinct strings the records point into:
+ * <pre>
+ * header   magic, version, count, string count, covered min magnitude
+ * records  id, place and url string index, magnitude, time, updated, latitude, longitude, depth
+ * offsets  byte offset of every string in the string data
+ * strings  UTF-8 bytes of every string, back to back
+ * </pre>
+ * The query cache keeps results it demotes in the same encoding, in memory or on disk.
+ */
+public final class ListSnapshot {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x51554b53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8;
+    private static final int RECORD_SIZE = 4 + 4 + 4 + 8 + 8 + 8 + 8 + 8 + 8;
+
+    //Mapped from a file, or on the heap for a snapshot only kept in memory
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int stringCount;
+    private final double coveredMinMagnitude;
+    private final int offsetsStart;
+    private final int stringsStart;
+
+    private ListSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a list snapshot");
+        }
+        count = buffer.getInt(8);
+        stringCount = buffer.getInt(12);
+        coveredMinMagnitude = buffer.getDouble(16);
+        offsetsStart = HEADER_SIZE + count * RECORD_SIZE;
+        stringsStart = offsetsStart + (stringCount + 1) * 4;
+        if (count < 0 || stringCount < 0 || stringsStart > buffer.capacity()
+                || stringsStart + buffer.getInt(offsetsStart + stringCount * 4) != buffer.capacity()) {
+            throw new IOException("Truncated list snapshot");
+        }
+    }
+
+    /**
+     * Map the snapshot in the given file, returns null if there is none.
+     */
+    public static ListSnapshot open(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid once the file is closed
+            FileChannel channel = randomAccessFile.getChannel();
+            return new ListSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write the given earthquakes, fetched with the given min magnitude, replacing the
+     * previous snapshot only once the new one is complete. Deleted events are left out.
+     */
+    public static void write(File file, List<EarthQuake> earthQuakes, double coveredMinMagnitude)
+            throws IOException {
+        encode(earthQuakes, coveredMinMagnitude).writeTo(file);
+    }
+
+    /**
+     * Encode the given earthquakes into a snapshot held in memory, a fraction of the
+     * size of the events themselves. Deleted events are left out.
+     */
+    public static ListSnapshot encode(List<EarthQuake> earthQuakes, double coveredMinMagnitude) {
+        ArrayList<EarthQuake> kept = new ArrayList<>(earthQuakes.size());
+        for (EarthQuake earthQuake : earthQuakes) {
+            if (!earthQuake.isDeleted()) {
+                kept.add(earthQuake);
+            }
+        }
+
+        // Intern the strings so repeated places and regions are stored once
+        HashMap<String, Integer> indexes = new HashMap<>();
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int[] stringIndexes = new int[kept.size() * 3];
+        int stringBytes = 0;
+        for (int i = 0; i < kept.size(); i++) {
+            EarthQuake earthQuake = kept.get(i);
+            String[] fields = {earthQuake.getId(), earthQuake.getTitle(), earthQuake.getURL()};
+            for (int j = 0; j < fields.length; j++) {
+                Integer index = indexes.get(fields[j]);
+                if (index == null) {
+                    index = strings.size();
+                    indexes.put(fields[j], index);
+                    byte[] bytes = fields[j].getBytes(UTF_8);
+                    strings.add(bytes);
+                    stringBytes += bytes.length;
+                }
+                stringIndexes[i * 3 + j] = index;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + kept.size() * RECORD_SIZE
+                + (strings.size() + 1) * 4 + stringBytes);
+        out.putInt(MAGIC).putInt(VERSION).putInt(kept.size()).putInt(strings.size()).putDouble(coveredMinMagnitude);
+        for (int i = 0; i < kept.size(); i++) {
+            EarthQuake earthQuake = kept.get(i);
+            out.putInt(stringIndexes[i * 3]).putInt(stringIndexes[i * 3 + 1]).putInt(stringIndexes[i * 3 + 2])
+                    .putDouble(earthQuake.getMag())
+                    .putLong(earthQuake.getTimestamp())
+                    .putLong(earthQuake.getUpdated())
+                    .putDouble(earthQuake.getLatitude())
+                    .putDouble(earthQuake.getLongitude())
+                    .putDouble(earthQuake.getDepth());
+        }
+        // One offset past the end, so the length of string i is offset[i + 1] - offset[i]
+        int offset = 0;
+        for (byte[] string : strings) {
+            out.putInt(offset);
+            offset += string.length;
+        }
+        out.putInt(offset);
+        for (byte[] string : strings) {
+            out.put(string);
+        }
+        out.flip();
+        try {
+            return new ListSnapshot(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Encoded an unreadable snapshot", e);
+        }
+    }
+
+    /**
+     * Write the snapshot to the given file, replacing the previous one only once the new one is complete.
+     */
+    public void writeTo(File file) throws IOException {
+        byte[] bytes = new byte[buffer.capacity()];
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        view.get(bytes);
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            stream.write(bytes);
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Return the size of the snapshot in bytes, in memory or on disk.
+     */
+    public int getByteSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Return the min magnitude the snapshotted list was fetched with.
+     */
+    public double getCoveredMinMagnitude() {
+        return coveredMinMagnitude;
+    }
+
+    /**
+     * Decode the event of the given record.
+     */
+    public EarthQuake get(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Record " + i + " of " + count);
+        }
+        int record = HEADER_SIZE + i * RECORD_SIZE;
+        return new EarthQuake(string(buffer.getInt(record)),
+                buffer.getDouble(record + 12),
+                string(buffer.getInt(record + 4)),
+                buffer.getLong(record + 20),
+                buffer.getLong(record + 28),
+                string(buffer.getInt(record + 8)),
+                buffer.getDouble(record + 36),
+                buffer.getDouble(record + 44),
+                buffer.getDouble(record + 52),
+                false);
+    }
+
+    /**
+     * Return the events as a list that decodes each one when it is asked for,
+     * so showing the first rows only reads the first records.
+     */
+    public List<EarthQuake> asList() {
+        return new AbstractList<EarthQuake>() {
+            @Override
+            public EarthQuake get(int index) {
+                return ListSnapshot.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private String string(int index) {
+        int start = buffer.getInt(offsetsStart + index * 4);
+        int end = buffer.getInt(offsetsStart + (index + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        // A duplicate has its own position, so records can be decoded from any thread
+        ByteBuffer view = buffer.duplicate();
+        view.position(stringsStart + start);
+        view.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prefix search over the words of place titles, e.g. "ala" finds "72km W of Anchorage,
+ * Alaska" and "jap hon" finds "Honshu, Japan". Every query word has to be the start of
+ * some word of the place.
+ * The sorted vocabulary turns a query word into a range of word ids with two binary
+ * searches. The word with the fewest events seeds the candidates through its posting
+ * lists, and the other words are checked against each candidate's own word ids. While
+ * the user keeps typing, the new query only narrows the matches of the previous one,
+ * so those are refined instead of searched again.
+ * Not thread safe, it can be built on any thread and then handed to the main thread
+ * that searches it.
+ */
+public class PlaceSearchIndex {
+    private final EarthQuake[] earthQuakes;
+    private final HashMap<String, Integer> positions;
+    //Distinct words in sorted order, a word id is its position here
+    private final String[] words;
+    //Positions of the events containing each word, ascending
+    private final int[][] postings;
+    //Word ids of each event
+    private final int[][] eventWords;
+
+    //Last query and its matches, refined when the next query only adds to it
+    private String lastQuery;
+    private int[] lastMatches = new int[0];
+    private int lastMatchCount;
+    //Marks the matches of the last query by event position
+    private final boolean[] matched;
+
+    public PlaceSearchIndex(List<EarthQuake> earthQuakes) {
+        int size = earthQuakes.size();
+        this.earthQuakes = earthQuakes.toArray(new EarthQuake[size]);
+        positions = new HashMap<>(size * 2);
+        matched = new boolean[size];
+
+        ArrayList<String> tokens = new ArrayList<>();
+        String[][] eventTokens = new String[size][];
+        HashMap<String, int[]> counts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            positions.put(this.earthQuakes[i].getId(), i);
+            tokens.clear();
+            tokenize(this.earthQuakes[i].getTitle(), tokens);
+            eventTokens[i] = tokens.toArray(new String[tokens.size()]);
+            for (String token : eventTokens[i]) {
+                int[] count = counts.get(token);
+                if (count == null) {
+                    counts.put(token, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        words = counts.keySet().toArray(new String[counts.size()]);
+        Arrays.sort(words);
+        HashMap<String, Integer> ids = new HashMap<>(words.length * 2);
+        postings = new int[words.length][];
+        for (int id = 0; id < words.length; id++) {
+            ids.put(words[id], id);
+            postings[id] = new int[counts.get(words[id])[0]];
+        }
+        int[] filled = new int[words.length];
+        eventWords = new int[size][];
+        for (int i = 0; i < size; i++) {
+            eventWords[i] = new int[eventTokens[i].length];
+            for (int j = 0; j < eventTokens[i].length; j++) {
+                int id = ids.get(eventTokens[i][j]);
+                eventWords[i][j] = id;
+                postings[id][filled[id]++] = i;
+            }
+        }
+    }
+
+    public int size() {
+        return earthQuakes.length;
+    }
+
+    /**
+     * Return the events of the given list whose place matches the query, in the order
+     * of the list. Events that were not indexed never match, a blank query matches all.
+     */
+    public List<EarthQuake> filter(List<EarthQuake> earthQuakes, String query) {
+        if (!search(query)) {
+            return earthQuakes;
+        }
+        ArrayList<EarthQuake> result = new ArrayList<>(Math.min(earthQuakes.size(), lastMatchCount));
+        for (EarthQuake earthQuake : earthQuakes) {
+            Integer position = positions.get(earthQuake.getId());
+            if (position != null && matched[position]) {
+                result.add(earthQuake);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return every indexed event whose place matches the query, in index order.
+     */
+    public List<EarthQuake> search(String query, int limit) {
+        if (!search(query)) {
+            return Arrays.asList(earthQuakes).subList(0, Math.min(limit, earthQuakes.length));
+        }
+        int count = Math.min(lastMatchCount, limit);
+        ArrayList<EarthQuake> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(earthQuakes[lastMatches[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Find the matches of the query into lastMatches and matched,
+     * returns false if the query has no words.
+     */
+    private boolean search(String query) {
+        ArrayList<String> queryWords = new ArrayList<>();
+        tokenize(query, queryWords);
+        if (queryWords.isEmpty()) {
+            return false;
+        }
+        String normalized = normalize(queryWords, query);
+        if (normalized.equals(lastQuery)) {
+            return true;
+        }
+
+        // Word id range [from[w], to[w]) of the words starting with each query word
+        int[] from = new int[queryWords.size()];
+        int[] to = new int[queryWords.size()];
+        for (int w = 0; w < queryWords.size(); w++) {
+            String prefix = queryWords.get(w);
+            from[w] = lowerBound(prefix);
+            to[w] = lowerBound(prefix + Character.MAX_VALUE);
+        }
+
+        for (int i = 0; i < lastMatchCount; i++) {
+            matched[lastMatches[i]] = false;
+        }
+        int[] candidates;
+        int candidateCount;
+        if (lastQuery != null && normalized.startsWith(lastQuery)) {
+            // Typing on only narrows the previous matches
+            candidates = lastMatches;
+            candidateCount = lastMatchCount;
+        } else {
+            candidates = seed(from, to);
+            candidateCount = candidates.length;
+        }
+
+        int[] matches = new int[candidateCount];
+        int matchCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int position = candidates[i];
+            if (matchesAll(eventWords[position], from, to)) {
+                matches[matchCount++] = position;
+                matched[position] = true;
+            }
+        }
+        lastQuery = normalized;
+        lastMatches = matches;
+        lastMatchCount = matchCount;
+        return true;
+    }
+
+    /**
+     * Return the positions of the events containing any word of the most selective
+     * query word, ascending.
+     */
+    private int[] seed(int[] from, int[] to) {
+        int best = 0;
+        int bestCount = Integer.MAX_VALUE;
+        for (int w = 0; w < from.length; w++) {
+            int count = 0;
+            for (int id = from[w]; id < to[w] && count < bestCount; id++) {
+                count += postings[id].length;
+            }
+            if (count < bestCount) {
+                best = w;
+                bestCount = count;
+            }
+        }
+        // Events with several words of the range are only taken once
+        boolean[] seen = new boolean[earthQuakes.length];
+        int[] candidates = new int[bestCount];
+        int count = 0;
+        for (int id = from[best]; id < to[best]; id++) {
+            for (int position : postings[id]) {
+                if (!seen[position]) {
+                    seen[position] = true;
+                    candidates[count++] = position;
+                }
+            }
+        }
+        candidates = Arrays.copyOf(candidates, count);
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    private static boolean matchesAll(int[] wordIds, int[] from, int[] to) {
+        for (int w = 0; w < from.length; w++) {
+            boolean found = false;
+            for (int id : wordIds) {
+                if (id >= from[w] && id < to[w]) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the position of the first word not smaller than the given one.
+     */
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Join the query words back, keeping a trailing separator so that "japan " is not
+     * seen as narrowing "japan" (it starts a new word instead of extending the last one).
+     */
+    private static String normalize(List<String> queryWords, String query) {
+        StringBuilder normalized = new StringBuilder();
+        for (String word : queryWords) {
+            if (normalized.length() > 0) {
+                normalized.append(' ');
+            }
+            normalized.append(word);
+        }
+        if (!Character.isLetterOrDigit(query.charAt(query.length() - 1))) {
+            normalized.append(' ');
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Split text into lower case words of letters and digits.
+     */
+    static void tokenize(String text, List<String> out) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+}
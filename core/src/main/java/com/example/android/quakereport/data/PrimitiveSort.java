@@ -0,0 +1,49 @@
+package com.example.android.quakereport.data;
+
+/**
+ * Sorting helpers on primitive arrays, so ordering events never boxes a key or
+ * goes through a {@link java.util.Comparator}.
+ */
+final class PrimitiveSort {
+    private PrimitiveSort() {
+    }
+
+    /**
+     * Map a double to a long that sorts the same way, negative values included.
+     */
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Return the positions 0..n-1 ordered by ascending key, using a stable bottom-up merge sort.
+     */
+    static int[] sortIndices(long[] keys, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, count);
+                int left = low;
+                int right = mid;
+                int out = low;
+                while (left < mid && right < high) {
+                    buffer[out++] = keys[order[right]] < keys[order[left]] ? order[right++] : order[left++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < high) {
+                    buffer[out++] = order[right++];
+                }
+                System.arraycopy(buffer, low, order, low, high - low);
+            }
+        }
+        return order;
+    }
+}
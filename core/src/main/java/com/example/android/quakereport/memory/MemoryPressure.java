@@ -0,0 +1,92 @@
+package com.example.android.quakereport.memory;
+
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tells the caches to give memory back. The app forwards the levels it gets in
+ * onTrimMemory to {@link #dispatch(int)}, which turns each level into how much every
+ * registered cache should release. Plain Java, so a JVM can dispatch simulated levels
+ * to the same caches.
+ */
+public final class MemoryPressure {
+    /**
+     * A cache that can give up memory.
+     */
+    public interface Trimmable {
+        /**
+         * Release memory as asked, {@link #RELEASE_IDLE}, {@link #RELEASE_HOT} or {@link #RELEASE_ALL}.
+         */
+        void trim(int release);
+    }
+
+    //Levels of ComponentCallbacks2.onTrimMemory, repeated here since core does not know Android
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_MODERATE = 60;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    //How much a cache releases, each one includes the ones before it
+    public static final int RELEASE_NONE = 0;
+    //Only what is on screen stays parsed
+    public static final int RELEASE_IDLE = 1;
+    //Nothing stays parsed, compact copies stay in memory
+    public static final int RELEASE_HOT = 2;
+    //Nothing stays in memory that can live on disk or be fetched again
+    public static final int RELEASE_ALL = 3;
+
+    private static final CopyOnWriteArrayList<Trimmable> sTrimmables = new CopyOnWriteArrayList<>();
+
+    private MemoryPressure() {
+    }
+
+    public static void register(Trimmable trimmable) {
+        sTrimmables.addIfAbsent(trimmable);
+    }
+
+    public static void unregister(Trimmable trimmable) {
+        sTrimmables.remove(trimmable);
+    }
+
+    /**
+     * Return how much caches release at the given trim level.
+     */
+    public static int releaseFor(int level) {
+        switch (level) {
+            case TRIM_MEMORY_RUNNING_MODERATE:
+            case TRIM_MEMORY_UI_HIDDEN:
+                return RELEASE_IDLE;
+            case TRIM_MEMORY_RUNNING_LOW:
+            case TRIM_MEMORY_BACKGROUND:
+                return RELEASE_HOT;
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+            case TRIM_MEMORY_MODERATE:
+            case TRIM_MEMORY_COMPLETE:
+                return RELEASE_ALL;
+            default:
+                // Levels added after these ones, judged by the background levels they sit between
+                if (level >= TRIM_MEMORY_MODERATE) {
+                    return RELEASE_ALL;
+                }
+                return level >= TRIM_MEMORY_BACKGROUND ? RELEASE_HOT : RELEASE_NONE;
+        }
+    }
+
+    /**
+     * Have every registered cache release what the given trim level calls for.
+     */
+    public static void dispatch(int level) {
+        int release = releaseFor(level);
+        if (release == RELEASE_NONE) {
+            return;
+        }
+        Metrics.count(Metrics.MEMORY_TRIMS);
+        for (Trimmable trimmable : sTrimmables) {
+            trimmable.trim(release);
+        }
+    }
+}
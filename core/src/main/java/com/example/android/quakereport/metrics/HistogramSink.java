@@ -0,0 +1,100 @@
+package com.example.android.quakereport.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default sink, aggregates every stage and value into a {@link Histogram} in memory
+ * and can dump them as text for the debug screen.
+ */
+public class HistogramSink implements MetricsSink {
+    private final ConcurrentHashMap<String, Histogram> timings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordTiming(String stage, long nanos) {
+        histogram(timings, stage).record(nanos);
+    }
+
+    @Override
+    public void recordValue(String name, long value) {
+        histogram(values, name).record(value);
+    }
+
+    @Override
+    public void count(String counter, long delta) {
+        AtomicLong total = counters.get(counter);
+        if (total == null) {
+            AtomicLong created = new AtomicLong();
+            total = counters.putIfAbsent(counter, created);
+            if (total == null) {
+                total = created;
+            }
+        }
+        total.addAndGet(delta);
+    }
+
+    public Histogram getTiming(String stage) {
+        return timings.get(stage);
+    }
+
+    public Histogram getValue(String name) {
+        return values.get(name);
+    }
+
+    public long getCount(String counter) {
+        AtomicLong total = counters.get(counter);
+        return total == null ? 0 : total.get();
+    }
+
+    public void reset() {
+        timings.clear();
+        values.clear();
+        counters.clear();
+    }
+
+    /**
+     * Return every stage, value and counter as text, one per line, e.g.
+     * "parse  n=12 p50=3.1ms p90=4.0ms p99=9.8ms max=9.8ms".
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(timings).entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.append(String.format(Locale.US, "%s  n=%d p50=%s p90=%s p99=%s max=%s%n", entry.getKey(),
+                    histogram.getCount(), millis(histogram.getPercentile(0.5)),
+                    millis(histogram.getPercentile(0.9)), millis(histogram.getPercentile(0.99)),
+                    millis(histogram.getMax())));
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(values).entrySet()) {
+            Histogram histogram = entry.getValue();
+            out.append(String.format(Locale.US, "%s  n=%d mean=%d p50=%d p99=%d max=%d%n", entry.getKey(),
+                    histogram.getCount(), histogram.getMean(), histogram.getPercentile(0.5),
+                    histogram.getPercentile(0.99), histogram.getMax()));
+        }
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(counters).entrySet()) {
+            out.append(entry.getKey()).append("  ").append(entry.getValue().get()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static Histogram histogram(ConcurrentHashMap<String, Histogram> histograms, String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.1fms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.quakereport.metrics;
+
+/**
+ * Entry point the pipeline reports its stages through. Timings are taken with
+ * {@link System#nanoTime()} around whole stages, never per event, so the
+ * instrumentation stays on in production.
+ */
+public final class Metrics {
+    //Stage names, shared by the code that records them and the dump that reads them
+    public static final String FETCH = "fetch";
+    public static final String HTTP_CONNECT = "http.connect";
+    public static final String HTTP_TTFB = "http.ttfb";
+    public static final String HTTP_DOWNLOAD = "http.download";
+    public static final String PARSE = "parse";
+    //Parsing the csv and text formats, "parse" is GeoJSON
+    public static final String PARSE_CSV = "parse.csv";
+    public static final String PARSE_TEXT = "parse.text";
+    public static final String BIND = "bind";
+    //From onCreate to the first rows on screen, with and without a list snapshot
+    public static final String STARTUP_FIRST_ROWS = "startup.first_rows";
+    public static final String STARTUP_FIRST_ROWS_SNAPSHOT = "startup.first_rows.snapshot";
+    //Launch work done in the background: from onCreate to the list request sent, and the font load
+    public static final String STARTUP_LIST_REQUEST = "startup.list_request";
+    public static final String STARTUP_FONT = "startup.font";
+    //Values and counters
+    public static final String HTTP_BYTES = "http.bytes";
+    public static final String PARSE_EVENTS = "parse.events";
+    //Body bytes per event of a csv or text response, to set against GeoJSON's
+    public static final String PARSE_CSV_BYTES_PER_EVENT = "parse.csv.bytes_per_event";
+    public static final String PARSE_TEXT_BYTES_PER_EVENT = "parse.text.bytes_per_event";
+    public static final String HTTP_NOT_MODIFIED = "http.not_modified";
+    public static final String HTTP_ERRORS = "http.errors";
+    public static final String HTTP_RETRIES = "http.retries";
+    public static final String HTTP_HEDGES = "http.hedges";
+    public static final String HTTP_TIMEOUTS = "http.timeouts";
+    public static final String POOL_HITS = "pool.hits";
+    public static final String POOL_MISSES = "pool.misses";
+    public static final String QUERY_CACHE_HITS = "query_cache.hits";
+    public static final String QUERY_CACHE_MISSES = "query_cache.misses";
+    //Bytes in each tier of the query cache, sampled whenever a result moves, the hot tier estimated
+    public static final String QUERY_CACHE_HOT_BYTES = "query_cache.hot_bytes";
+    public static final String QUERY_CACHE_WARM_BYTES = "query_cache.warm_bytes";
+    public static final String QUERY_CACHE_COLD_BYTES = "query_cache.cold_bytes";
+    //Trim levels that made the caches release memory
+    public static final String MEMORY_TRIMS = "memory.trims";
+    //Detail screens opened with their detail already prefetched, or not
+    public static final String DETAIL_CACHE_HITS = "detail_cache.hits";
+    public static final String DETAIL_CACHE_MISSES = "detail_cache.misses";
+    public static final String DETAIL_PREFETCH_CANCELLED = "detail_prefetch.cancelled";
+
+    private static volatile MetricsSink sSink = new HistogramSink();
+
+    private Metrics() {
+    }
+
+    /**
+     * Replace where the metrics go, {@link MetricsSink#NONE} turns them off.
+     */
+    public static void setSink(MetricsSink sink) {
+        sSink = sink;
+    }
+
+    public static MetricsSink getSink() {
+        return sSink;
+    }
+
+    /**
+     * Return the start time of a stage, to hand to {@link #end(String, long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time since the given start for the stage.
+     */
+    public static void end(String stage, long start) {
+        sSink.recordTiming(stage, System.nanoTime() - start);
+    }
+
+    public static void value(String name, long value) {
+        sSink.recordValue(name, value);
+    }
+
+    public static void count(String counter) {
+        sSink.count(counter, 1);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.android.quakereport.metrics;
+
+/**
+ * Receives the timings and counters of the pipeline stages. Implementations are called
+ * from every thread that fetches, parses or binds, so they must be thread safe and cheap.
+ */
+public interface MetricsSink {
+    /**
+     * Record how long one run of the given stage took, e.g. "http.connect".
+     */
+    void recordTiming(String stage, long nanos);
+
+    /**
+     * Record a measured amount, e.g. bytes downloaded or events parsed by one request.
+     */
+    void recordValue(String name, long value);
+
+    /**
+     * Add to a running counter, e.g. cache hits.
+     */
+    void count(String counter, long delta);
+
+    /**
+     * Sink that drops everything.
+     */
+    MetricsSink NONE = new MetricsSink() {
+        @Override
+        public void recordTiming(String stage, long nanos) {
+        }
+
+        @Override
+        public void recordValue(String name, long value) {
+        }
+
+        @Override
+        public void count(String counter, long delta) {
+        }
+    };
+}
@@ -0,0 +1,220 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.EarthQuakeDetail;
+import com.example.android.quakereport.memory.MemoryPressure;
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads event details ahead of a tap. The list prefetches the rows on screen on low
+ * priority threads and drops the ones scrolled away before they are fetched, results
+ * are kept in a bounded LRU so the detail screen usually renders straight from memory.
+ * A detail asked for by the screen itself runs on its own thread, ahead of any prefetch.
+ */
+public class DetailPrefetcher implements MemoryPressure.Trimmable {
+    /**
+     * Fetches the detail of an event, returns null if it failed. A prefetch nobody waits
+     * for yet can be sent more cheaply than a fetch for the detail screen.
+     */
+    public interface Source {
+        EarthQuakeDetail load(String id, boolean prefetch);
+    }
+
+    public interface Listener {
+        /**
+         * Called with the detail of the event, or null if it could not be fetched.
+         */
+        void onDetailLoaded(String id, EarthQuakeDetail detail);
+    }
+
+    private final Source source;
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final ExecutorService fetchExecutor;
+    private final LinkedHashMap<String, EarthQuakeDetail> details;
+    //Fetches in flight by event id
+    private final HashMap<String, Request> inFlight = new HashMap<>();
+    private long hits;
+    private long misses;
+
+    public DetailPrefetcher(Source source, Executor callbackExecutor, int prefetchThreads, final int maxDetails) {
+        this.source = source;
+        this.callbackExecutor = callbackExecutor;
+        details = new LinkedHashMap<String, EarthQuakeDetail>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EarthQuakeDetail> eldest) {
+                return size() > maxDetails;
+            }
+        };
+        // Prefetches must not compete with the list for the CPU or the fetches the user waits on
+        prefetchExecutor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("detail-prefetch", Thread.MIN_PRIORITY));
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+        fetchExecutor = Executors.newSingleThreadExecutor(threadFactory("detail-fetch", Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * Return the cached detail of the event, or null if it has not been fetched.
+     */
+    public synchronized EarthQuakeDetail getCached(String id) {
+        EarthQuakeDetail detail = details.get(id);
+        if (detail != null) {
+            hits++;
+            Metrics.count(Metrics.DETAIL_CACHE_HITS);
+        } else {
+            misses++;
+            Metrics.count(Metrics.DETAIL_CACHE_MISSES);
+        }
+        return detail;
+    }
+
+    /**
+     * Fetch the details of the given events in the background unless they are cached or
+     * on their way, and drop the prefetches of every other event that have not finished.
+     */
+    public synchronized void prefetch(Collection<String> visibleIds) {
+        List<String> gone = new ArrayList<>();
+        for (Map.Entry<String, Request> entry : inFlight.entrySet()) {
+            // A detail somebody waits for is kept whether its row is on screen or not
+            if (entry.getValue().listeners.isEmpty() && !visibleIds.contains(entry.getKey())) {
+                gone.add(entry.getKey());
+            }
+        }
+        for (String id : gone) {
+            inFlight.remove(id).future.cancel(true);
+            Metrics.count(Metrics.DETAIL_PREFETCH_CANCELLED);
+        }
+        for (String id : visibleIds) {
+            if (!details.containsKey(id) && !inFlight.containsKey(id)) {
+                Request request = new Request(id, true);
+                inFlight.put(id, request);
+                request.future = prefetchExecutor.submit(request);
+            }
+        }
+    }
+
+    /**
+     * Deliver the detail of the event to the listener, from the cache if it is there.
+     * A prefetch already running is joined, one still queued is moved ahead of the others.
+     */
+    public synchronized void fetch(String id, Listener listener) {
+        EarthQuakeDetail detail = details.get(id);
+        if (detail != null) {
+            deliver(listener, id, detail);
+            return;
+        }
+        Request request = inFlight.get(id);
+        if (request != null && !request.started) {
+            inFlight.remove(id);
+            request.future.cancel(false);
+            request = null;
+        }
+        if (request == null) {
+            request = new Request(id, false);
+            inFlight.put(id, request);
+            request.future = fetchExecutor.submit(request);
+        }
+        request.listeners.add(listener);
+    }
+
+    /**
+     * Stop delivering to the given listener, the fetch it waited for goes on and is cached.
+     */
+    public synchronized void removeListener(Listener listener) {
+        for (Request request : inFlight.values()) {
+            request.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Return the share of detail screens that found their detail cached.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Drop the cached details once nothing parsed is to stay in memory, they are fetched again on a tap.
+     */
+    @Override
+    public synchronized void trim(int release) {
+        if (release >= MemoryPressure.RELEASE_HOT) {
+            details.clear();
+        }
+    }
+
+    private synchronized void finished(Request request, EarthQuakeDetail detail) {
+        // A cancelled request has already been dropped or replaced
+        if (inFlight.get(request.id) != request) {
+            return;
+        }
+        inFlight.remove(request.id);
+        if (detail != null) {
+            details.put(request.id, detail);
+        }
+        for (Listener listener : request.listeners) {
+            deliver(listener, request.id, detail);
+        }
+    }
+
+    private void deliver(final Listener listener, final String id, final EarthQuakeDetail detail) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onDetailLoaded(id, detail);
+            }
+        });
+    }
+
+    private static ThreadFactory threadFactory(final String name, final int priority) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setPriority(priority);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private class Request implements Runnable {
+        final String id;
+        final boolean prefetch;
+        final List<Listener> listeners = new ArrayList<>(1);
+        Future<?> future;
+        boolean started;
+
+        Request(String id, boolean prefetch) {
+            this.id = id;
+            this.prefetch = prefetch;
+        }
+
+        @Override
+        public void run() {
+            synchronized (DetailPrefetcher.this) {
+                // Taken over by a fetch on the other executor in the meantime
+                if (inFlight.get(id) != this) {
+                    return;
+                }
+                started = true;
+            }
+            finished(this, source.load(id, prefetch));
+        }
+    }
+}
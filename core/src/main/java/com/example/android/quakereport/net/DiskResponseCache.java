@@ -0,0 +1,408 @@
+package com.example.android.quakereport.net;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk backed cache of response bodies keyed on the request URL.
+ * Every entry remembers the ETag and Last-Modified validators of its response so the
+ * next request can be made conditional, and a 304 answer is served from disk.
+ * Entries are evicted least recently used first once the cache grows past its byte budget.
+ */
+public final class DiskResponseCache {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final long maxSize;
+    //Size of every entry keyed on its file name, in least recently used order
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    //Bytes that had to be downloaded and bytes served from disk after a 304
+    private long networkBytes;
+    private long savedBytes;
+
+    public DiskResponseCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        directory.mkdirs();
+        loadEntries();
+    }
+
+    /**
+     * A cached response, with the validators to send on the next request.
+     */
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final File body;
+
+        Entry(String etag, String lastModified, File body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public String getEtag() {return etag;}
+
+        public String getLastModified() {return lastModified;}
+
+        public long getLength() {return body.length();}
+
+        public InputStream openBody() throws IOException {
+            return new FileInputStream(body);
+        }
+    }
+
+    /**
+     * Return the cached response for the given URL, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        String key = keyOf(url);
+        // get, not containsKey, so the lookup counts as a use in the LRU order
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File body = new File(directory, key + BODY_SUFFIX);
+        String[] meta = readMeta(new File(directory, key + META_SUFFIX));
+        // The URL is stored alongside the validators so a hash collision is never served
+        if (meta == null || !body.exists() || !url.equals(meta[0])) {
+            remove(key);
+            return null;
+        }
+        // Persist the access so the LRU order survives a restart
+        body.setLastModified(System.currentTimeMillis());
+        return new Entry(emptyToNull(meta[1]), emptyToNull(meta[2]), body);
+    }
+
+    /**
+     * Store the body of a 200 response for the given URL as it is read. The returned stream
+     * hands the body to the caller straight from the network and copies it to disk on the
+     * way, the entry is committed once the body was read to the end. A body larger than the
+     * whole cache, or one that fails or is closed halfway, is not cached.
+     */
+    public InputStream put(String url, String etag, String lastModified, InputStream body) throws IOException {
+        String key = keyOf(url);
+        // A name of its own, a fetch of the same URL may be writing its copy at the same time
+        File temp = File.createTempFile(key, TEMP_SUFFIX, directory);
+        return new TeeInputStream(body, url, key, etag, lastModified, temp);
+    }
+
+    private synchronized void commit(String url, String key, String etag, String lastModified,
+                                     File temp, long length) throws IOException {
+        networkBytes += length;
+        File bodyFile = new File(directory, key + BODY_SUFFIX);
+        remove(key);
+        writeMeta(new File(directory, key + META_SUFFIX), url, etag, lastModified);
+        if (!temp.renameTo(bodyFile)) {
+            temp.delete();
+            throw new IOException("Could not commit cache entry for " + url);
+        }
+        entries.put(key, length);
+        size += length;
+        trimToSize();
+    }
+
+    private synchronized void recordUncached(long length) {
+        networkBytes += length;
+    }
+
+    /**
+     * Record that the given entry was served from disk after a 304 response.
+     */
+    public synchronized void recordNotModified(Entry entry) {
+        savedBytes += entry.getLength();
+    }
+
+    public synchronized long getSize() {return size;}
+
+    public synchronized long getNetworkBytes() {return networkBytes;}
+
+    public synchronized long getSavedBytes() {return savedBytes;}
+
+    /**
+     * Fraction of all response bytes that were served from disk instead of the network.
+     */
+    public synchronized double getBytesSavedRatio() {
+        long total = networkBytes + savedBytes;
+        return total == 0 ? 0 : (double) savedBytes / total;
+    }
+
+    /**
+     * Rebuild the in-memory LRU order from the files left by a previous run.
+     */
+    private void loadEntries() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                // Not Long.compare, which is api 19
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                String key = name.substring(0, name.length() - BODY_SUFFIX.length());
+                entries.put(key, file.length());
+                size += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue();
+            deleteFiles(eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Long length = entries.remove(key);
+        if (length != null) {
+            size -= length;
+        }
+        deleteFiles(key);
+    }
+
+    private void deleteFiles(String key) {
+        new File(directory, key + BODY_SUFFIX).delete();
+        new File(directory, key + META_SUFFIX).delete();
+    }
+
+    /**
+     * The meta file holds three lines: the URL, the ETag and the Last-Modified value.
+     */
+    private static void writeMeta(File file, String url, String etag, String lastModified) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+        try {
+            writer.write(url + "\n" + nullToEmpty(etag) + "\n" + nullToEmpty(lastModified) + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String[] readMeta(File file) {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+            try {
+                String[] meta = new String[3];
+                for (int i = 0; i < meta.length; i++) {
+                    meta[i] = reader.readLine();
+                    if (meta[i] == null) {
+                        return null;
+                    }
+                }
+                return meta;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * File name for the given URL, the hex SHA-1 of the URL.
+     */
+    private static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(UTF_8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Hands a response body to its reader and writes what is read to a temp file, which
+     * becomes the cache entry once the end of the body is reached. A file left behind by a
+     * crash is deleted on the next start.
+     */
+    private class TeeInputStream extends FilterInputStream {
+        //A parser done with its document leaves at most this much, e.g. a trailing newline
+        private static final int MAX_DRAIN = 8 * 1024;
+
+        private final String url;
+        private final String key;
+        private final String etag;
+        private final String lastModified;
+        private final File temp;
+        //Null once the copy was given up or committed
+        private OutputStream copy;
+        private long length;
+        //Set once the bytes read were counted, at the end of the body or on close
+        private boolean finished;
+
+        TeeInputStream(InputStream body, String url, String key, String etag, String lastModified, File temp)
+                throws IOException {
+            super(body);
+            this.url = url;
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.temp = temp;
+            copy = new FileOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read;
+            try {
+                read = in.read(buffer, offset, count);
+            } catch (IOException e) {
+                abandon();
+                throw e;
+            }
+            if (read == -1) {
+                finish();
+            } else {
+                length += read;
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would be missing from the copy
+            byte[] buffer = new byte[(int) Math.min(count, 8 * 1024)];
+            int read = read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                // A reader done with its document may stop right before the end of the body
+                byte[] buffer = new byte[MAX_DRAIN];
+                int drained = 0;
+                while (copy != null && !finished && drained < MAX_DRAIN) {
+                    int read = read(buffer, 0, MAX_DRAIN - drained);
+                    if (read == -1) {
+                        break;
+                    }
+                    drained += read;
+                }
+            } finally {
+                abandon();
+                if (!finished) {
+                    finished = true;
+                    recordUncached(length);
+                }
+                in.close();
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (copy == null) {
+                return;
+            }
+            if (length > maxSize) {
+                // Storing it would evict everything including itself, it is only passed through
+                abandon();
+                return;
+            }
+            try {
+                copy.write(buffer, offset, count);
+            } catch (IOException e) {
+                // A full disk costs the cache entry, not the response
+                abandon();
+            }
+        }
+
+        /**
+         * The end of the body was read, commit the copy if there still is one.
+         */
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (copy == null) {
+                recordUncached(length);
+                return;
+            }
+            OutputStream out = copy;
+            copy = null;
+            try {
+                out.close();
+                commit(url, key, etag, lastModified, temp, length);
+            } catch (IOException e) {
+                // The reader has its body, only the cache entry is lost
+                temp.delete();
+            }
+        }
+
+        /**
+         * Give up the copy, the body is still handed to the reader.
+         */
+        private void abandon() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+            } catch (IOException ignored) {
+                // The file is deleted anyway
+            }
+            copy = null;
+            temp.delete();
+        }
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
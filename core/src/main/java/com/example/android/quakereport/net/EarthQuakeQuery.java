@@ -0,0 +1,222 @@
+package com.example.android.quakereport.net;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parameters of a USGS earthquake query. Two queries with the same parameters are
+ * equal, which is what lets {@link FetchEngine} share one request between them.
+ */
+public final class EarthQuakeQuery {
+    private static final String USGS_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+    private static final String USGS_COUNT_URL = "https://earthquake.usgs.gov/fdsnws/event/1/count";
+    private static final String FORMAT_PARAMETER = "format=";
+    //Parameter of a delta query, which only asks for the events updated after a given time
+    public static final String UPDATED_AFTER_PARAMETER = "updatedafter=";
+
+    //Values of the orderby parameter, largest or newest first
+    public static final String ORDER_BY_TIME = "time";
+    public static final String ORDER_BY_MAGNITUDE = "magnitude";
+
+    //Response formats, GeoJSON is the default and what every other format falls back to
+    public static final String FORMAT_GEOJSON = "geojson";
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_TEXT = "text";
+
+    private final double minMagnitude;
+    private final String orderBy;
+    private final int limit;
+    //Time window in milliseconds since the epoch, 0 leaves that end of the window open
+    private final long startTime;
+    private final long endTime;
+    private final String format;
+
+    public EarthQuakeQuery(double minMagnitude, String orderBy, int limit) {
+        this(minMagnitude, orderBy, limit, 0, 0);
+    }
+
+    public EarthQuakeQuery(double minMagnitude, String orderBy, int limit, long startTime, long endTime) {
+        this(minMagnitude, orderBy, limit, startTime, endTime, FORMAT_GEOJSON);
+    }
+
+    private EarthQuakeQuery(double minMagnitude, String orderBy, int limit, long startTime, long endTime,
+                            String format) {
+        this.minMagnitude = minMagnitude;
+        // Spelled the way USGS does, so equal queries are equal whatever the preference held
+        this.orderBy = orderBy == null || orderBy.isEmpty() ? ORDER_BY_TIME : orderBy.trim().toLowerCase(Locale.US);
+        this.limit = limit;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.format = format;
+    }
+
+    public double getMinMagnitude() {return minMagnitude;}
+
+    public String getOrderBy() {return orderBy;}
+
+    public int getLimit() {return limit;}
+
+    public long getStartTime() {return startTime;}
+
+    public long getEndTime() {return endTime;}
+
+    public String getFormat() {return format;}
+
+    /**
+     * Return true if both ends of the time window are set.
+     */
+    public boolean hasTimeWindow() {
+        return startTime > 0 && endTime > startTime;
+    }
+
+    /**
+     * Return the same query restricted to the given time window and limit.
+     */
+    public EarthQuakeQuery slice(long startTime, long endTime, int limit) {
+        return new EarthQuakeQuery(minMagnitude, orderBy, limit, startTime, endTime, format);
+    }
+
+    /**
+     * Return the same query asking for the response in the given format, one of
+     * {@link #FORMAT_GEOJSON}, {@link #FORMAT_CSV} or {@link #FORMAT_TEXT}.
+     */
+    public EarthQuakeQuery withFormat(String format) {
+        if (!FORMAT_GEOJSON.equals(format) && !FORMAT_CSV.equals(format) && !FORMAT_TEXT.equals(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        return new EarthQuakeQuery(minMagnitude, orderBy, limit, startTime, endTime, format);
+    }
+
+    /**
+     * Return the URL of this query, e.g.
+     * `https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=100&minmag=2.5&orderby=time`
+     */
+    public String toUrl() {
+        return USGS_URL + "?" + FORMAT_PARAMETER + format
+                + "&limit=" + limit
+                + "&minmag=" + minMagnitude
+                + "&orderby=" + encode(orderBy)
+                + timeWindowParameters();
+    }
+
+    /**
+     * Return the URL asking USGS how many events this query matches, without the limit.
+     */
+    public String toCountUrl() {
+        return USGS_COUNT_URL + "?format=geojson"
+                + "&minmag=" + minMagnitude
+                + timeWindowParameters();
+    }
+
+    /**
+     * Return the URL of the GeoJSON detail of the event with the given id.
+     */
+    public static String toDetailUrl(String id) {
+        return USGS_URL + "?eventid=" + encode(id) + "&" + FORMAT_PARAMETER + FORMAT_GEOJSON;
+    }
+
+    /**
+     * Return the format the given query URL asks for, {@link #FORMAT_GEOJSON} if it names none.
+     */
+    public static String formatOf(String url) {
+        int start = indexOfParameter(url, FORMAT_PARAMETER);
+        if (start < 0) {
+            return FORMAT_GEOJSON;
+        }
+        start += FORMAT_PARAMETER.length();
+        int end = url.indexOf('&', start);
+        return url.substring(start, end < 0 ? url.length() : end);
+    }
+
+    /**
+     * Return true if the given query URL only asks for the events updated after a given time.
+     * Its answer changes with every sync and is never worth a revalidation.
+     */
+    public static boolean isDelta(String url) {
+        return indexOfParameter(url, UPDATED_AFTER_PARAMETER) >= 0;
+    }
+
+    /**
+     * Return the given query URL asking for GeoJSON instead of the format it names.
+     */
+    public static String toGeoJsonUrl(String url) {
+        String format = formatOf(url);
+        return format.equals(FORMAT_GEOJSON) ? url
+                : url.replace(FORMAT_PARAMETER + format, FORMAT_PARAMETER + FORMAT_GEOJSON);
+    }
+
+    private static int indexOfParameter(String url, String parameter) {
+        int start = url.indexOf(parameter);
+        // Only a whole parameter counts, not the end of another one's name
+        while (start > 0 && url.charAt(start - 1) != '?' && url.charAt(start - 1) != '&') {
+            start = url.indexOf(parameter, start + 1);
+        }
+        return start;
+    }
+
+    private String timeWindowParameters() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String parameters = "";
+        if (startTime > 0) {
+            parameters += "&starttime=" + format.format(new Date(startTime));
+        }
+        if (endTime > 0) {
+            parameters += "&endtime=" + format.format(new Date(endTime));
+        }
+        return parameters;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EarthQuakeQuery)) {
+            return false;
+        }
+        EarthQuakeQuery that = (EarthQuakeQuery) o;
+        return Double.compare(minMagnitude, that.minMagnitude) == 0
+                && limit == that.limit
+                && startTime == that.startTime
+                && endTime == that.endTime
+                && orderBy.equals(that.orderBy)
+                && format.equals(that.format);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(minMagnitude);
+        int result = (int) (bits ^ (bits >>> 32));
+        result = 31 * result + orderBy.hashCode();
+        result = 31 * result + limit;
+        result = 31 * result + (int) (startTime ^ (startTime >>> 32));
+        result = 31 * result + (int) (endTime ^ (endTime >>> 32));
+        result = 31 * result + format.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "EarthQuakeQuery{" +
+                "minMagnitude=" + minMagnitude +
+                ", orderBy='" + orderBy + '\'' +
+                ", limit=" + limit +
+                ", startTime=" + startTime +
+                ", endTime=" + endTime +
+                ", format='" + format + '\'' +
+                '}';
+    }
+}
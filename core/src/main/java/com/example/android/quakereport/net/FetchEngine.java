@@ -0,0 +1,219 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.EarthQuake;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single entry point for earthquake downloads, running on a small bounded pool.
+ * Identical queries that are in flight at the same time share one request, and every
+ * caller is identified by a tag that only ever waits for its latest query: asking for
+ * a new query under the same tag drops the old one, and cancels it if nobody else
+ * is waiting for it. Results are delivered on the callback executor to the listener
+ * currently registered for each tag, so a recreated screen picks up a request its
+ * predecessor started. Results are kept in a {@link QueryCache}: a cached result is
+ * delivered at once and only fetched again when it went stale or on a refresh. A result
+ * the cache moved to disk is read back on the pool and delivered the same way.
+ */
+public class FetchEngine {
+    /**
+     * Does the actual work for a query, returns null if it failed.
+     */
+    public interface Pipeline {
+        List<EarthQuake> load(EarthQuakeQuery query);
+    }
+
+    public interface Listener {
+        /**
+         * Called with the result of the query, or null if it failed. A revalidation that
+         * found nothing changed delivers the very list that was delivered before.
+         */
+        void onFetchFinished(EarthQuakeQuery query, List<EarthQuake> earthQuakes);
+    }
+
+    private final Pipeline pipeline;
+    private final Executor callbackExecutor;
+    private final ThreadPoolExecutor executor;
+    private final QueryCache cache;
+
+    //Requests in flight and the tags waiting for each of them
+    private final HashMap<EarthQuakeQuery, Request> inFlight = new HashMap<>();
+    //Latest query and listener of every tag
+    private final HashMap<String, EarthQuakeQuery> wanted = new HashMap<>();
+    private final HashMap<String, Listener> listeners = new HashMap<>();
+
+    public FetchEngine(Pipeline pipeline, Executor callbackExecutor, int threads, QueryCache cache) {
+        this.pipeline = pipeline;
+        this.callbackExecutor = callbackExecutor;
+        this.cache = cache;
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetch the given query for the given tag, joining a request already in flight for it.
+     * A cached result is delivered first, and the network is skipped while it is fresh
+     * unless refresh is set.
+     */
+    public synchronized void fetch(EarthQuakeQuery query, String tag, Listener listener, boolean refresh) {
+        listeners.put(tag, listener);
+        QueryCache.Entry cached = cache.get(query);
+        if (cached != null) {
+            deliver(tag, listener, query, cached.getEarthQuakes());
+            if (cached.isFresh() && !refresh) {
+                cancel(tag);
+                return;
+            }
+        }
+
+        EarthQuakeQuery previous = wanted.put(tag, query);
+        if (previous != null && !previous.equals(query)) {
+            release(previous, tag);
+        }
+
+        Request request = inFlight.get(query);
+        if (request == null) {
+            request = new Request(query);
+            inFlight.put(query, request);
+            request.future = executor.submit(request);
+        }
+        request.tags.add(tag);
+        request.refresh |= refresh;
+    }
+
+    /**
+     * Stop waiting for the query of the given tag.
+     */
+    public synchronized void cancel(String tag) {
+        EarthQuakeQuery query = wanted.remove(tag);
+        if (query != null) {
+            release(query, tag);
+        }
+    }
+
+    /**
+     * Return true if the given tag is still waiting for a result.
+     */
+    public synchronized boolean isFetching(String tag) {
+        return wanted.containsKey(tag);
+    }
+
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Stop delivering to the given listener, its requests keep running for whoever
+     * registers for the same tag next.
+     */
+    public synchronized void removeListener(Listener listener) {
+        listeners.values().remove(listener);
+    }
+
+    /**
+     * Detach the tag from the request of the query and cancel it if it was the last one.
+     */
+    private void release(EarthQuakeQuery query, String tag) {
+        Request request = inFlight.get(query);
+        if (request == null) {
+            return;
+        }
+        request.tags.remove(tag);
+        if (request.tags.isEmpty()) {
+            inFlight.remove(query);
+            request.future.cancel(true);
+        }
+    }
+
+    /**
+     * Deliver a result read back from the cache's disk tier while the request runs.
+     * Returns true if it was fresh enough to finish the request with, or the request
+     * was cancelled meanwhile.
+     */
+    private synchronized boolean loaded(Request request, QueryCache.Entry entry) {
+        if (inFlight.get(request.query) != request) {
+            return true;
+        }
+        boolean done = entry.isFresh() && !request.refresh;
+        if (done) {
+            inFlight.remove(request.query);
+        }
+        for (String tag : request.tags) {
+            if (!request.query.equals(wanted.get(tag))) {
+                continue;
+            }
+            if (done) {
+                wanted.remove(tag);
+            }
+            deliver(tag, listeners.get(tag), request.query, entry.getEarthQuakes());
+        }
+        return done;
+    }
+
+    private synchronized void finished(Request request, List<EarthQuake> earthQuakes) {
+        // A cancelled request has already been replaced or dropped
+        if (inFlight.get(request.query) != request) {
+            return;
+        }
+        inFlight.remove(request.query);
+        if (earthQuakes != null) {
+            earthQuakes = cache.put(request.query, earthQuakes);
+        }
+        for (String tag : request.tags) {
+            if (!request.query.equals(wanted.get(tag))) {
+                continue;
+            }
+            wanted.remove(tag);
+            deliver(tag, listeners.get(tag), request.query, earthQuakes);
+        }
+    }
+
+    /**
+     * Post the result to the listener, unless another one took over the tag meanwhile.
+     */
+    private void deliver(final String tag, final Listener listener, final EarthQuakeQuery query,
+                         final List<EarthQuake> earthQuakes) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The screen may have gone away while the result was posted
+                synchronized (FetchEngine.this) {
+                    if (listener == null || listeners.get(tag) != listener) {
+                        return;
+                    }
+                }
+                listener.onFetchFinished(query, earthQuakes);
+            }
+        });
+    }
+
+    private class Request implements Runnable {
+        final EarthQuakeQuery query;
+        final HashSet<String> tags = new HashSet<>();
+        //True if any of the tags asked for a refresh, which a fresh cached result does not satisfy
+        boolean refresh;
+        Future<?> future;
+
+        Request(EarthQuakeQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        public void run() {
+            // fetch() only looks in memory, a result on disk is read here off the caller's thread
+            QueryCache.Entry cold = cache.load(query);
+            if (cold != null && loaded(this, cold)) {
+                return;
+            }
+            finished(this, pipeline.load(query));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link Transport} on OkHttp. Connections are kept alive in a pool between refreshes,
+ * so only the first request to USGS pays for the TCP and TLS handshakes, and with
+ * HTTP/2 parallel requests share a single connection.
+ */
+public class OkHttpTransport implements Transport {
+    //Idle connections kept open, we only ever talk to one host
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    //How long an idle connection is kept, long enough to span a few refreshes
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private final OkHttpClient client;
+    private final AtomicLong poolHits = new AtomicLong();
+    private final AtomicLong poolMisses = new AtomicLong();
+
+    /**
+     * @param http2 allow HTTP/2 when the server offers it, otherwise stick to HTTP/1.1
+     */
+    public OkHttpTransport(boolean http2) {
+        client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(25, TimeUnit.SECONDS)
+                .readTimeout(20, TimeUnit.SECONDS)
+                .protocols(http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .eventListenerFactory(new EventListener.Factory() {
+                    @Override
+                    public EventListener create(Call call) {
+                        return new PoolListener();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Transport.Response get(URL url, Map<String, String> headers) throws IOException {
+        Request.Builder request = new Request.Builder().url(url).get();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        return new OkHttpResponse(client.newCall(request.build()).execute());
+    }
+
+    @Override
+    public long getPoolHits() {
+        return poolHits.get();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return poolMisses.get();
+    }
+
+    /**
+     * Counts every call as a pool hit or miss, depending on whether it had to connect
+     * before it got its connection, and times the connects.
+     */
+    private class PoolListener extends EventListener {
+        private boolean connected;
+        private long connectStart;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connected = true;
+            connectStart = Metrics.start();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            // Covers TCP and TLS, the handshakes a pooled connection saves
+            Metrics.end(Metrics.HTTP_CONNECT, connectStart);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (connected) {
+                poolMisses.incrementAndGet();
+                Metrics.count(Metrics.POOL_MISSES);
+            } else {
+                poolHits.incrementAndGet();
+                Metrics.count(Metrics.POOL_HITS);
+            }
+            connected = false;
+        }
+    }
+
+    private static class OkHttpResponse implements Transport.Response {
+        private final okhttp3.Response response;
+
+        OkHttpResponse(okhttp3.Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getCode() {
+            return response.code();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.header(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            ResponseBody body = response.body();
+            return body == null ? -1 : body.contentLength();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Response has no body");
+            }
+            return body.byteStream();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.data.ListSnapshot;
+import com.example.android.quakereport.memory.MemoryPressure;
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of parsed query results, so a rotation, a return from the settings or a swipe
+ * to refresh shows the last result at once while it is revalidated.
+ * Results move between three tiers, least recently used first: hot results are parsed
+ * events, warm ones the compact {@link ListSnapshot} encoding of them in memory and cold
+ * ones that encoding in a file. Hot results are demoted once they hold more events than
+ * the event budget, and warm ones once the memory of both tiers is over the heap budget.
+ * {@link MemoryPressure} levels demote them further, and a lookup promotes a result back
+ * to hot. Encoding and writing demoted results, and decoding promoted warm ones, runs on
+ * the given executor, so neither a trim, a put nor a lookup does that work on the caller's
+ * thread, and a cold result is only read back by {@link #load}, never by {@link #get}.
+ * Results are considered stale once they are older than the time to live.
+ */
+public final class QueryCache implements MemoryPressure.Trimmable {
+    private static final Logger LOG = Logger.getLogger(QueryCache.class.getName());
+
+    //Tiers a result can be in
+    public static final int TIER_HOT = 0;
+    public static final int TIER_WARM = 1;
+    public static final int TIER_COLD = 2;
+    //Rough heap cost of a parsed event, the object and its id, place and url strings
+    static final int HOT_BYTES_PER_EVENT = 400;
+
+    private final int maxEvents;
+    private final long timeToLiveMillis;
+    private final long heapBudgetBytes;
+    //Where cold results are written, null to drop results instead
+    private final File coldDirectory;
+    private final long coldBudgetBytes;
+    //Runs the demotions, one pass at a time
+    private final Executor executor;
+    private final Runnable maintenance = new Runnable() {
+        @Override
+        public void run() {
+            maintain();
+        }
+    };
+    //Results in least recently used order
+    private final LinkedHashMap<EarthQuakeQuery, Slot> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //Parsed events in the hot tier, and the bytes of the other two
+    private int events;
+    private long warmBytes;
+    private long coldBytes;
+    //Files of an earlier process are deleted before the first cold write
+    private boolean coldDirectoryReady;
+    private int nextColdFile;
+    //True from the time a demotion pass is submitted until it finds nothing left to do
+    private boolean maintenanceScheduled;
+
+    //Lookups answered from memory, and the ones that had to wait for the network
+    private long hits;
+    private long misses;
+    //Stale entries served while they were revalidated, and their summed age
+    private long staleHits;
+    private long staleAgeMillis;
+
+    /**
+     * A cache of parsed results only, their compact copies share the memory the events would take.
+     * Demotions run on the thread that caused them.
+     */
+    public QueryCache(int maxEvents, long timeToLiveMillis) {
+        this(maxEvents, timeToLiveMillis, (long) maxEvents * HOT_BYTES_PER_EVENT, null, 0, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    /**
+     * @param maxEvents       parsed events kept hot
+     * @param heapBudgetBytes memory the hot and warm tiers may take together
+     * @param coldDirectory   directory cold results are written to, null for no cold tier
+     * @param coldBudgetBytes disk the cold tier may take
+     * @param executor        runs the encoding and file writes of demotions, off the main thread
+     */
+    public QueryCache(int maxEvents, long timeToLiveMillis, long heapBudgetBytes,
+                      File coldDirectory, long coldBudgetBytes, Executor executor) {
+        this.maxEvents = maxEvents;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.heapBudgetBytes = heapBudgetBytes;
+        this.coldDirectory = coldDirectory;
+        this.coldBudgetBytes = coldBudgetBytes;
+        this.executor = executor;
+    }
+
+    /**
+     * A cached result and when it was fetched.
+     */
+    public static class Entry {
+        private final List<EarthQuake> earthQuakes;
+        private final long fetchedAt;
+        private final boolean fresh;
+
+        Entry(List<EarthQuake> earthQuakes, long fetchedAt, boolean fresh) {
+            this.earthQuakes = earthQuakes;
+            this.fetchedAt = fetchedAt;
+            this.fresh = fresh;
+        }
+
+        public List<EarthQuake> getEarthQuakes() {return earthQuakes;}
+
+        /** Return false if the entry outlived the time to live and should be revalidated. */
+        public boolean isFresh() {return fresh;}
+
+        public long getAgeMillis() {
+            return now() - fetchedAt;
+        }
+    }
+
+    /**
+     * Return the cached result of the query if it is in memory, or null. A warm result is
+     * returned as a view that decodes each event as it is read, and becomes hot again once
+     * the executor decoded it. A cold one is left for {@link #load} to read.
+     */
+    public synchronized Entry get(EarthQuakeQuery query) {
+        Slot slot = entries.get(query);
+        if (slot == null) {
+            miss();
+            return null;
+        }
+        if (slot.tier == TIER_COLD) {
+            // Counted by load(), which the caller goes on to
+            return null;
+        }
+        if (slot.tier == TIER_WARM) {
+            schedulePromotion(slot);
+            return hit(slot, slot.snapshot.asList());
+        }
+        return hit(slot, slot.earthQuakes);
+    }
+
+    /**
+     * Read the result of the query back from disk into the hot tier, or return null if
+     * it is not cold. Reads a file, so call it off the main thread.
+     */
+    public Entry load(EarthQuakeQuery query) {
+        Slot slot;
+        File file;
+        synchronized (this) {
+            slot = entries.get(query);
+            if (slot == null || slot.tier != TIER_COLD) {
+                return null;
+            }
+            file = slot.file;
+        }
+        List<EarthQuake> earthQuakes = null;
+        try {
+            ListSnapshot snapshot = ListSnapshot.open(file);
+            if (snapshot != null) {
+                earthQuakes = new ArrayList<>(snapshot.asList());
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Problem reading a cached result from disk", e);
+        }
+        synchronized (this) {
+            // Dropped, replaced or read back by someone else meanwhile
+            if (slot.removed || slot.file != file) {
+                return null;
+            }
+            if (earthQuakes == null) {
+                // An interrupted read says nothing about the file
+                if (!Thread.currentThread().isInterrupted()) {
+                    LOG.warning("Dropping unreadable cached result " + file);
+                    drop(query);
+                }
+                miss();
+                return null;
+            }
+            promote(slot, earthQuakes);
+            return hit(slot, earthQuakes);
+        }
+    }
+
+    private Entry hit(Slot slot, List<EarthQuake> earthQuakes) {
+        hits++;
+        Metrics.count(Metrics.QUERY_CACHE_HITS);
+        long age = now() - slot.fetchedAt;
+        if (age < timeToLiveMillis) {
+            return new Entry(earthQuakes, slot.fetchedAt, true);
+        }
+        staleHits++;
+        staleAgeMillis += age;
+        return new Entry(earthQuakes, slot.fetchedAt, false);
+    }
+
+    private void miss() {
+        misses++;
+        Metrics.count(Metrics.QUERY_CACHE_MISSES);
+    }
+
+    /**
+     * Cache the result of the query. If it holds the same events as the cached one
+     * only the age is reset, and the cached list is returned so callers can tell
+     * nothing changed; otherwise the given list is returned.
+     */
+    public synchronized List<EarthQuake> put(EarthQuakeQuery query, List<EarthQuake> earthQuakes) {
+        Slot previous = entries.get(query);
+        List<EarthQuake> result = earthQuakes;
+        // Only a hot result can be the list a caller still holds
+        if (previous != null && previous.tier == TIER_HOT && sameEvents(previous.earthQuakes, earthQuakes)) {
+            result = previous.earthQuakes;
+        }
+        if (previous != null) {
+            drop(query);
+        }
+        // A result bigger than the whole budget would only evict everything else
+        if (result.size() > maxEvents) {
+            recordOccupancy();
+            return result;
+        }
+        entries.put(query, new Slot(result, now()));
+        events += result.size();
+        scheduleMaintenance();
+        recordOccupancy();
+        return result;
+    }
+
+    public synchronized void clear() {
+        for (EarthQuakeQuery query : new ArrayList<>(entries.keySet())) {
+            drop(query);
+        }
+        recordOccupancy();
+    }
+
+    /**
+     * Demote results as the memory pressure asks, the most recently used one stays hot
+     * unless every parsed result has to go. Only marks the results and drops the ones
+     * with no tier to go to, the executor does the encoding and writing.
+     */
+    @Override
+    public synchronized void trim(int release) {
+        if (release == MemoryPressure.RELEASE_NONE) {
+            return;
+        }
+        EarthQuakeQuery mostRecent = null;
+        for (EarthQuakeQuery query : entries.keySet()) {
+            mostRecent = query;
+        }
+        int target = release == MemoryPressure.RELEASE_ALL ? TIER_COLD : TIER_WARM;
+        for (Map.Entry<EarthQuakeQuery, Slot> entry : new ArrayList<>(entries.entrySet())) {
+            Slot slot = entry.getValue();
+            if (release == MemoryPressure.RELEASE_IDLE && entry.getKey().equals(mostRecent)) {
+                continue;
+            }
+            if (target == TIER_COLD && coldDirectory == null) {
+                drop(entry.getKey());
+            } else {
+                slot.target = Math.max(slot.target, target);
+            }
+        }
+        scheduleMaintenance();
+        recordOccupancy();
+    }
+
+    /**
+     * Return the share of lookups answered from memory, fresh or stale.
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public synchronized long getHits() {return hits;}
+
+    public synchronized long getMisses() {return misses;}
+
+    public synchronized long getStaleHits() {return staleHits;}
+
+    /**
+     * Return how old stale entries were on average when they were served, in milliseconds.
+     */
+    public synchronized long getAverageStaleAgeMillis() {
+        return staleHits == 0 ? 0 : staleAgeMillis / staleHits;
+    }
+
+    /**
+     * Return the number of parsed events in the hot tier.
+     */
+    public synchronized int getEventCount() {return events;}
+
+    /**
+     * Return the number of results in the given tier.
+     */
+    public synchronized int getTierEntries(int tier) {
+        int count = 0;
+        for (Slot slot : entries.values()) {
+            if (slot.tier == tier) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the bytes the given tier takes, estimated for the hot one.
+     */
+    public synchronized long getTierBytes(int tier) {
+        switch (tier) {
+            case TIER_HOT:
+                return (long) events * HOT_BYTES_PER_EVENT;
+            case TIER_WARM:
+                return warmBytes;
+            default:
+                return coldBytes;
+        }
+    }
+
+    private void scheduleMaintenance() {
+        if (!maintenanceScheduled) {
+            maintenanceScheduled = true;
+            executor.execute(maintenance);
+        }
+    }
+
+    /**
+     * Demote results one step at a time until every result reached the tier a trim asked
+     * for and every tier fits its budget. The lock is only held to pick the next result
+     * and to swap in its demoted copy, lookups and puts go on while it is encoded or written.
+     */
+    private void maintain() {
+        while (true) {
+            Map.Entry<EarthQuakeQuery, Slot> next;
+            synchronized (this) {
+                next = nextDemotion();
+                if (next == null) {
+                    trimColdTier();
+                    maintenanceScheduled = false;
+                    recordOccupancy();
+                    return;
+                }
+            }
+            demote(next.getKey(), next.getValue());
+        }
+    }
+
+    /**
+     * Return the least recently used result that has to move down a tier, or null if none.
+     * The most recently used result is never demoted for the budgets, it is what is on
+     * screen. Results with nowhere to go are dropped on the way.
+     */
+    private Map.Entry<EarthQuakeQuery, Slot> nextDemotion() {
+        ArrayList<Map.Entry<EarthQuakeQuery, Slot>> lru = new ArrayList<>(entries.entrySet());
+        for (int i = 0; i < lru.size(); i++) {
+            Slot slot = lru.get(i).getValue();
+            boolean overBudget = i < lru.size() - 1
+                    && (slot.tier == TIER_HOT && events > maxEvents || isOverHeapBudget());
+            if (slot.tier == TIER_COLD || (slot.tier >= slot.target && !overBudget)) {
+                continue;
+            }
+            if (slot.tier == TIER_WARM && coldDirectory == null) {
+                drop(lru.get(i).getKey());
+                continue;
+            }
+            return lru.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Drop cold results, least recently used first, until the cold tier fits its budget.
+     */
+    private void trimColdTier() {
+        for (Map.Entry<EarthQuakeQuery, Slot> entry : new ArrayList<>(entries.entrySet())) {
+            if (coldBytes <= coldBudgetBytes) {
+                return;
+            }
+            if (entry.getValue().tier == TIER_COLD) {
+                drop(entry.getKey());
+            }
+        }
+    }
+
+    private boolean isOverHeapBudget() {
+        return getTierBytes(TIER_HOT) + warmBytes > heapBudgetBytes;
+    }
+
+    /**
+     * Decode a warm result on the executor and make it hot, unless it changed meanwhile.
+     */
+    private void schedulePromotion(final Slot slot) {
+        // Used again, so a trim asked for before does not demote it further meanwhile
+        slot.target = TIER_HOT;
+        if (slot.promoting) {
+            return;
+        }
+        slot.promoting = true;
+        final ListSnapshot snapshot = slot.snapshot;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<EarthQuake> earthQuakes = new ArrayList<>(snapshot.asList());
+                synchronized (QueryCache.this) {
+                    slot.promoting = false;
+                    // Dropped, replaced or demoted to disk meanwhile
+                    if (!slot.removed && slot.snapshot == snapshot) {
+                        promote(slot, earthQuakes);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Make the result hot with the given events, decoded from its warm or cold copy.
+     */
+    private void promote(Slot slot, List<EarthQuake> earthQuakes) {
+        release(slot);
+        slot.earthQuakes = earthQuakes;
+        slot.tier = TIER_HOT;
+        // Used again, so only the budgets demote it from now on
+        slot.target = TIER_HOT;
+        events += earthQuakes.size();
+        scheduleMaintenance();
+        recordOccupancy();
+    }
+
+    /**
+     * Move a hot result to warm or a warm one to cold. The copy is made without the lock
+     * and thrown away if the result changed meanwhile. A result that could not be written
+     * to disk is dropped.
+     */
+    private void demote(EarthQuakeQuery query, Slot slot) {
+        int tier;
+        List<EarthQuake> earthQuakes;
+        ListSnapshot snapshot;
+        File file = null;
+        synchronized (this) {
+            tier = slot.tier;
+            earthQuakes = slot.earthQuakes;
+            snapshot = slot.snapshot;
+            if (tier == TIER_WARM) {
+                file = new File(coldDirectory, "result-" + nextColdFile++ + ".snapshot");
+            }
+        }
+
+        if (tier == TIER_HOT) {
+            ListSnapshot encoded = ListSnapshot.encode(earthQuakes, 0);
+            synchronized (this) {
+                if (!slot.removed && slot.earthQuakes == earthQuakes) {
+                    release(slot);
+                    slot.snapshot = encoded;
+                    slot.tier = TIER_WARM;
+                    warmBytes += encoded.getByteSize();
+                }
+            }
+            return;
+        }
+
+        boolean written = false;
+        try {
+            if (!coldDirectoryReady) {
+                deleteColdFiles();
+                coldDirectory.mkdirs();
+                coldDirectoryReady = true;
+            }
+            snapshot.writeTo(file);
+            written = true;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Problem writing a cached result to disk", e);
+        }
+        synchronized (this) {
+            if (slot.removed || slot.snapshot != snapshot) {
+                file.delete();
+                return;
+            }
+            if (!written) {
+                drop(query);
+                return;
+            }
+            release(slot);
+            slot.file = file;
+            slot.fileBytes = file.length();
+            slot.tier = TIER_COLD;
+            coldBytes += slot.fileBytes;
+        }
+    }
+
+    /**
+     * Take the result out of the cache, deleting its file if it has one.
+     */
+    private void drop(EarthQuakeQuery query) {
+        Slot slot = entries.remove(query);
+        if (slot != null) {
+            release(slot);
+            slot.removed = true;
+        }
+    }
+
+    /**
+     * Free what the result holds in its tier and take it off the tier's count.
+     */
+    private void release(Slot slot) {
+        switch (slot.tier) {
+            case TIER_HOT:
+                events -= slot.earthQuakes.size();
+                slot.earthQuakes = null;
+                break;
+            case TIER_WARM:
+                warmBytes -= slot.snapshot.getByteSize();
+                slot.snapshot = null;
+                break;
+            default:
+                coldBytes -= slot.fileBytes;
+                slot.file.delete();
+                slot.file = null;
+                break;
+        }
+    }
+
+    private void deleteColdFiles() {
+        File[] files = coldDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private void recordOccupancy() {
+        Metrics.value(Metrics.QUERY_CACHE_HOT_BYTES, getTierBytes(TIER_HOT));
+        Metrics.value(Metrics.QUERY_CACHE_WARM_BYTES, warmBytes);
+        Metrics.value(Metrics.QUERY_CACHE_COLD_BYTES, coldBytes);
+    }
+
+    /**
+     * A cached result in one of the tiers, only the field of its tier is set.
+     */
+    private static class Slot {
+        final long fetchedAt;
+        int tier = TIER_HOT;
+        //Tier a trim asked the result to be moved down to
+        int target = TIER_HOT;
+        List<EarthQuake> earthQuakes;
+        ListSnapshot snapshot;
+        File file;
+        long fileBytes;
+        //Set once the result left the cache, so a demotion in progress leaves it alone
+        boolean removed;
+        //Set while a lookup's promotion of the warm copy waits for the executor
+        boolean promoting;
+
+        Slot(List<EarthQuake> earthQuakes, long fetchedAt) {
+            this.earthQuakes = earthQuakes;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * Return true if both lists hold the same events, in the same order and revision.
+     */
+    private static boolean sameEvents(List<EarthQuake> a, List<EarthQuake> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            EarthQuake x = a.get(i);
+            EarthQuake y = b.get(i);
+            if (x.getUpdated() != y.getUpdated() || !x.getId().equals(y.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.QueryUtils;
+import com.example.android.quakereport.data.EarthQuakeColumns;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Fetches queries over large time windows, which USGS refuses once they match more than
+ * {@link #MAX_EVENTS_PER_QUERY} events. The window is split into slices sized from the
+ * count endpoint, the slices are fetched in parallel on a bounded pool, and the results
+ * are merged back in the order of the query with duplicates on the slice edges dropped.
+ */
+public class QueryPlanner {
+    private static final Logger LOG = Logger.getLogger(QueryPlanner.class.getName());
+    //USGS refuses queries matching more events than this
+    public static final int MAX_EVENTS_PER_QUERY = 20000;
+    //Windows shorter than this are never split further
+    private static final long MIN_SLICE_MILLIS = 60 * 1000;
+
+    /**
+     * Where counts and events come from, USGS unless a test server is plugged in.
+     */
+    public interface Source {
+        /** Return the number of events the query matches, or -1 if the request failed. */
+        int count(EarthQuakeQuery query);
+
+        /** Parse the events of the query into the given columns, returns false if the request failed. */
+        boolean fetch(EarthQuakeQuery query, EarthQuakeColumns into);
+    }
+
+    public static final Source USGS = new Source() {
+        @Override
+        public int count(EarthQuakeQuery query) {
+            return QueryUtils.fetchEventCount(query.toCountUrl());
+        }
+
+        @Override
+        public boolean fetch(EarthQuakeQuery query, EarthQuakeColumns into) {
+            return QueryUtils.fetchEarthquakeData(query.toUrl(), into);
+        }
+    };
+
+    private final Source source;
+    private final ExecutorService pool;
+    //Events a slice should match, smaller slices mean more parallel requests
+    private final int eventsPerSlice;
+
+    public QueryPlanner(Source source, int threads, int eventsPerSlice) {
+        this.source = source;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.eventsPerSlice = Math.min(eventsPerSlice, MAX_EVENTS_PER_QUERY);
+    }
+
+    /**
+     * Fetch every event of the query's time window, up to its limit.
+     * Returns null if the count or any slice failed.
+     */
+    public EarthQuakeColumns fetch(EarthQuakeQuery query) throws InterruptedException {
+        List<EarthQuakeQuery> slices = plan(query);
+        if (slices == null) {
+            return null;
+        }
+
+        ArrayList<Future<EarthQuakeColumns>> futures = new ArrayList<>(slices.size());
+        for (final EarthQuakeQuery slice : slices) {
+            futures.add(pool.submit(new Callable<EarthQuakeColumns>() {
+                @Override
+                public EarthQuakeColumns call() {
+                    EarthQuakeColumns columns = new EarthQuakeColumns();
+                    if (!source.fetch(slice, columns)) {
+                        return null;
+                    }
+                    columns.sort(slice.getOrderBy());
+                    return columns;
+                }
+            }));
+        }
+        ArrayList<EarthQuakeColumns> parts = new ArrayList<>(futures.size());
+        try {
+            for (Future<EarthQuakeColumns> future : futures) {
+                EarthQuakeColumns part = future.get();
+                if (part == null) {
+                    return null;
+                }
+                parts.add(part);
+            }
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            // Nothing left to wait for when a slice failed or we were interrupted
+            for (Future<EarthQuakeColumns> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return merge(parts, query.getOrderBy(), query.getLimit());
+    }
+
+    /**
+     * Split the query's time window into slices of at most eventsPerSlice events each,
+     * newest slice first. Returns null if a count request failed.
+     */
+    public List<EarthQuakeQuery> plan(EarthQuakeQuery query) throws InterruptedException {
+        int count = source.count(query);
+        if (count < 0) {
+            return null;
+        }
+        ArrayList<EarthQuakeQuery> slices = new ArrayList<>();
+        if (!planWindow(query, count, slices)) {
+            return null;
+        }
+        return slices;
+    }
+
+    private boolean planWindow(EarthQuakeQuery query, int count, List<EarthQuakeQuery> slices)
+            throws InterruptedException {
+        long start = query.getStartTime();
+        long end = query.getEndTime();
+        if (count <= eventsPerSlice || end - start < 2 * MIN_SLICE_MILLIS) {
+            // No slice contributes more than the limit to the merged result
+            int limit = Math.min(query.getLimit(), MAX_EVENTS_PER_QUERY);
+            if (count > limit && limit < query.getLimit()) {
+                LOG.warning("Window of " + query + " matches " + count + " events and cannot be split, only "
+                        + limit + " of them are fetched");
+            }
+            slices.add(query.slice(start, end, limit));
+            return true;
+        }
+
+        // Assume events are spread evenly, then count every piece to check
+        int pieces = (int) Math.min((count + eventsPerSlice - 1) / eventsPerSlice,
+                (end - start) / MIN_SLICE_MILLIS);
+        long width = (end - start) / pieces;
+        ArrayList<EarthQuakeQuery> windows = new ArrayList<>(pieces);
+        ArrayList<Future<Integer>> counts = new ArrayList<>(pieces);
+        for (int i = 0; i < pieces; i++) {
+            long sliceEnd = end - i * width;
+            long sliceStart = i == pieces - 1 ? start : sliceEnd - width;
+            final EarthQuakeQuery window = query.slice(sliceStart, sliceEnd, query.getLimit());
+            windows.add(window);
+            counts.add(pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return source.count(window);
+                }
+            }));
+        }
+        for (int i = 0; i < pieces; i++) {
+            int windowCount;
+            try {
+                windowCount = counts.get(i).get();
+            } catch (ExecutionException e) {
+                return false;
+            }
+            if (windowCount < 0 || !planWindow(windows.get(i), windowCount, slices)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merge slices that are each sorted in the query order, dropping events seen twice
+     * where slices touch, and stop at the limit.
+     */
+    static EarthQuakeColumns merge(final List<EarthQuakeColumns> parts, String orderBy, int limit) {
+        int total = 0;
+        for (EarthQuakeColumns part : parts) {
+            total += part.size();
+        }
+        EarthQuakeColumns merged = new EarthQuakeColumns(Math.min(total, limit));
+        HashSet<String> seen = new HashSet<>();
+        final int[] positions = new int[parts.size()];
+        final boolean byMagnitude = EarthQuakeQuery.ORDER_BY_MAGNITUDE.equals(orderBy);
+
+        // Heap of slice numbers, ordered by the next event of each slice
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(parts.size(), 1), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                EarthQuakeColumns partA = parts.get(a);
+                EarthQuakeColumns partB = parts.get(b);
+                int i = positions[a];
+                int j = positions[b];
+                if (byMagnitude) {
+                    int result = Double.compare(partB.getMagnitude(j), partA.getMagnitude(i));
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                // Not Long.compare, which is api 19
+                long x = partB.getTime(j);
+                long y = partA.getTime(i);
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i).size() > 0) {
+                heads.add(i);
+            }
+        }
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int next = heads.poll();
+            EarthQuakeColumns part = parts.get(next);
+            int position = positions[next];
+            if (seen.add(part.getId(position))) {
+                merged.addFrom(part, position);
+            }
+            positions[next]++;
+            if (positions[next] < part.size()) {
+                heads.add(next);
+            }
+        }
+        return merged;
+    }
+}
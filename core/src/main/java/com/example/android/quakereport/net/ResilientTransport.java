@@ -0,0 +1,390 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Transport} that cuts the tail latency of another one on flaky networks.
+ * Every request gets a timeout derived from the latencies seen lately, a duplicate
+ * (hedged) request is sent when the first has not answered by the usual 95th
+ * percentile, and failed requests are retried with jittered exponential backoff
+ * as long as the total deadline allows. Whichever attempt answers first is returned,
+ * the responses of the others are closed as they come in.
+ * <p>
+ * Latencies are kept per class of request, the endpoint and the names of its query
+ * parameters, so a slow list query does not stretch the timeouts of event details
+ * and a quick count does not get the list queries hedged early.
+ * <p>
+ * Only the wait for the status line and headers is covered, once a response is
+ * returned its body is read under the read timeout of the wrapped transport.
+ */
+public class ResilientTransport implements Transport {
+    //Latencies the timeouts are derived from, the most recent ones only
+    private static final int LATENCY_SAMPLES = 64;
+    //Request classes tracked at most, the least recently used one is forgotten past this
+    private static final int MAX_REQUEST_CLASSES = 16;
+    //Below this many samples the percentiles mean little, the defaults are used
+    private static final int MIN_SAMPLES = 8;
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 2000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    //An attempt gets this many times the 99th percentile, within the bounds below
+    private static final int TIMEOUT_MULTIPLIER = 4;
+    private static final long MIN_ATTEMPT_TIMEOUT_MILLIS = 2000;
+    private static final long MAX_ATTEMPT_TIMEOUT_MILLIS = 20000;
+    private static final long BASE_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 4000;
+
+    private final Transport transport;
+    private final long deadlineMillis;
+    private final int maxAttempts;
+    private final ExecutorService pool;
+    //Latency windows by request class, see requestClassOf
+    private final LinkedHashMap<String, LatencyWindow> latencies =
+            new LinkedHashMap<String, LatencyWindow>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LatencyWindow> eldest) {
+                    return size() > MAX_REQUEST_CLASSES;
+                }
+            };
+    private final Random random = new Random();
+
+    /**
+     * @param deadlineMillis time a request may take across all its attempts and backoffs
+     * @param maxAttempts    attempts made at most, a hedged duplicate does not count as one
+     */
+    public ResilientTransport(Transport transport, long deadlineMillis, int maxAttempts) {
+        this.transport = transport;
+        this.deadlineMillis = deadlineMillis;
+        this.maxAttempts = maxAttempts;
+        // Attempts that lost a race keep their thread until the wrapped transport gives up
+        this.pool = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "resilient-transport");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        long deadline = now() + deadlineMillis;
+        IOException failure = null;
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            try {
+                response = race(url, headers, Math.min(getAttemptTimeoutMillis(url), deadline - now()));
+                if (!isRetryable(response.getCode())) {
+                    return response;
+                }
+            } catch (InterruptedIOException e) {
+                // Interrupted means cancelled, not a flaky network
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                failure = e;
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            // Full jitter keeps clients that failed together from retrying together
+            long backoff = (long) (random.nextDouble()
+                    * Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1)));
+            if (attempt >= maxAttempts || now() + backoff >= deadline) {
+                // Out of attempts, an error response still tells the caller more than an exception
+                if (response != null) {
+                    return response;
+                }
+                throw failure;
+            }
+            if (response != null) {
+                response.close();
+            }
+            Metrics.count(Metrics.HTTP_RETRIES);
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off");
+            }
+        }
+    }
+
+    /**
+     * Send the request and, if it has not answered by the hedge delay, a duplicate of it.
+     * Returns the first response, throws if every attempt failed or none answered in time.
+     */
+    private Response race(final URL url, final Map<String, String> headers, long timeoutMillis)
+            throws IOException {
+        final Round round = new Round();
+        LatencyWindow window = windowOf(url);
+        CompletionService<Response> attempts = new ExecutorCompletionService<>(pool);
+        List<Future<Response>> futures = new ArrayList<>(2);
+        long start = now();
+        long end = start + Math.max(timeoutMillis, 0);
+        long hedgeAt = start + getHedgeDelayMillis(url);
+        futures.add(attempts.submit(new Attempt(round, window, url, headers)));
+        int pending = 1;
+        boolean hedged = false;
+        IOException failure = null;
+        try {
+            while (pending > 0) {
+                long wakeAt = hedged ? end : Math.min(hedgeAt, end);
+                Future<Response> done = attempts.poll(Math.max(wakeAt - now(), 0), TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (now() >= end) {
+                        break;
+                    }
+                    if (!hedged && now() >= hedgeAt) {
+                        hedged = true;
+                        pending++;
+                        futures.add(attempts.submit(new Attempt(round, window, url, headers)));
+                        Metrics.count(Metrics.HTTP_HEDGES);
+                    }
+                    continue;
+                }
+                pending--;
+                try {
+                    return round.win(done.get());
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause() : new IOException(e.getCause());
+                    // The first attempt failing outright is no reason to wait for the hedge delay
+                    if (!hedged && pending == 0 && now() < end) {
+                        hedged = true;
+                        pending++;
+                        futures.add(attempts.submit(new Attempt(round, window, url, headers)));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        } finally {
+            round.settle();
+            // Interrupt the attempts still waiting, so a lost hedge or a cancelled fetch does
+            // not hold on to a thread and a connection until the wrapped transport gives up
+            for (Future<Response> future : futures) {
+                if (!future.isDone()) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        if (pending > 0) {
+            // Nobody answered in time, count it as a sample so a slower network raises the timeouts.
+            // The attempts it stands for were cancelled, they record nothing themselves
+            window.record(end - start);
+            Metrics.count(Metrics.HTTP_TIMEOUTS);
+            throw new InterruptedIOException("No response from " + url + " in " + (end - start) + " ms");
+        }
+        throw failure;
+    }
+
+    /**
+     * Return the wrapped transport, for requests that should go out once without a hedge.
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Return how long an attempt at the given URL may wait for its response headers.
+     */
+    public long getAttemptTimeoutMillis(URL url) {
+        long p99 = windowOf(url).getPercentile(0.99);
+        if (p99 < 0) {
+            return MAX_ATTEMPT_TIMEOUT_MILLIS;
+        }
+        return Math.max(MIN_ATTEMPT_TIMEOUT_MILLIS, Math.min(MAX_ATTEMPT_TIMEOUT_MILLIS, p99 * TIMEOUT_MULTIPLIER));
+    }
+
+    /**
+     * Return how long an attempt at the given URL runs alone before a duplicate is sent.
+     */
+    public long getHedgeDelayMillis(URL url) {
+        long p95 = windowOf(url).getPercentile(0.95);
+        return p95 < 0 ? DEFAULT_HEDGE_DELAY_MILLIS : Math.max(MIN_HEDGE_DELAY_MILLIS, p95);
+    }
+
+    private LatencyWindow windowOf(URL url) {
+        String requestClass = requestClassOf(url);
+        synchronized (latencies) {
+            LatencyWindow window = latencies.get(requestClass);
+            if (window == null) {
+                window = new LatencyWindow(LATENCY_SAMPLES);
+                latencies.put(requestClass, window);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Return the class of the request to the given URL, its host and path and the names
+     * of its query parameters without their values, e.g. `earthquake.usgs.gov/fdsnws/event/1/query?eventid&format`
+     * for an event detail. Requests of one class cost the server about the same.
+     */
+    static String requestClassOf(URL url) {
+        StringBuilder requestClass = new StringBuilder(url.getHost()).append(url.getPath());
+        String query = url.getQuery();
+        if (query != null) {
+            String[] names = query.split("&");
+            for (int i = 0; i < names.length; i++) {
+                int equals = names[i].indexOf('=');
+                names[i] = equals < 0 ? names[i] : names[i].substring(0, equals);
+            }
+            // Parameters in any order are the same request
+            Arrays.sort(names);
+            char separator = '?';
+            for (String name : names) {
+                requestClass.append(separator).append(name);
+                separator = '&';
+            }
+        }
+        return requestClass.toString();
+    }
+
+    /**
+     * Server errors and throttling are worth another try, any other answer is final.
+     */
+    private static boolean isRetryable(int code) {
+        return code >= HttpURLConnection.HTTP_INTERNAL_ERROR || code == 429;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public long getPoolHits() {
+        return transport.getPoolHits();
+    }
+
+    @Override
+    public long getPoolMisses() {
+        return transport.getPoolMisses();
+    }
+
+    /**
+     * Sends the request once and hands the response to its round, which closes it if
+     * another attempt already won. How long the headers took is recorded in the window
+     * of its request class only if the round was still open, a round that timed out has
+     * recorded its timeout instead.
+     */
+    private class Attempt implements Callable<Response> {
+        private final Round round;
+        private final LatencyWindow latencies;
+        private final URL url;
+        private final Map<String, String> headers;
+
+        Attempt(Round round, LatencyWindow latencies, URL url, Map<String, String> headers) {
+            this.round = round;
+            this.latencies = latencies;
+            this.url = url;
+            this.headers = headers;
+        }
+
+        @Override
+        public Response call() throws IOException {
+            long start = now();
+            Response response = transport.get(url, headers);
+            if (round.offer(response)) {
+                latencies.record(now() - start);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * The attempts of one race. Once it is settled every response that is not the
+     * winner is closed, so its connection goes back to the pool.
+     */
+    private static class Round {
+        private final List<Response> responses = new ArrayList<>(2);
+        private Response winner;
+        private boolean settled;
+
+        /**
+         * Take the response of an attempt, returns false if the round was already settled
+         * and the response closed.
+         */
+        synchronized boolean offer(Response response) throws IOException {
+            if (settled) {
+                response.close();
+                return false;
+            }
+            responses.add(response);
+            return true;
+        }
+
+        synchronized Response win(Response response) {
+            winner = response;
+            return response;
+        }
+
+        synchronized void settle() {
+            settled = true;
+            for (Response response : responses) {
+                if (response != winner) {
+                    try {
+                        response.close();
+                    } catch (IOException ignored) {
+                        // Nothing to do about a response nobody reads
+                    }
+                }
+            }
+            responses.clear();
+        }
+    }
+
+    /**
+     * The last few latencies in milliseconds, enough to take percentiles from.
+     */
+    private static class LatencyWindow {
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        LatencyWindow(int size) {
+            samples = new long[size];
+        }
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * Return the given percentile, or -1 if there are too few samples yet.
+         */
+        synchronized long getPercentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.metrics.Metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens HTTP response bodies on top of a small pool of reusable byte buffers.
+ * The buffer is sized from the Content-Length header when the server sends one and
+ * replaces the one a BufferedInputStream would allocate for every request. gzip encoded
+ * bodies are inflated while they are read. The readers on top still copy out of the
+ * pooled buffer into their own, the inflater and the parser's InputStreamReader, so
+ * what is saved is the allocation, not those copies.
+ */
+public final class ResponseReader {
+    //Buffer sizes used when Content-Length is missing or out of range
+    private static final int MIN_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+    //Only keep a few buffers around, we never have more requests than that in flight
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final ArrayDeque<byte[]> POOL = new ArrayDeque<>();
+
+    private ResponseReader() {
+    }
+
+    /**
+     * Return an {@link InputStream} of the decoded body of the given response.
+     * Closing the returned stream gives its buffer back to the pool and records the
+     * bytes read off the network and the time spent waiting for them.
+     */
+    public static InputStream open(Transport.Response response) throws IOException {
+        InputStream body = new PooledInputStream(response.getBody(),
+                bufferSize(response.getContentLength()));
+        if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+            body = new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Pick a buffer size large enough to hold the whole body if it is small,
+     * otherwise fall back to the largest pooled size.
+     */
+    private static int bufferSize(long contentLength) {
+        if (contentLength <= 0) {
+            return MAX_BUFFER_SIZE;
+        }
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(contentLength, MAX_BUFFER_SIZE));
+    }
+
+    private static byte[] acquire(int size) {
+        synchronized (POOL) {
+            for (byte[] buffer : POOL) {
+                if (buffer.length >= size) {
+                    POOL.remove(buffer);
+                    return buffer;
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    private static void release(byte[] buffer) {
+        synchronized (POOL) {
+            if (POOL.size() < MAX_POOLED_BUFFERS) {
+                POOL.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * Buffered stream that borrows its buffer from the pool instead of allocating one.
+     */
+    private static class PooledInputStream extends FilterInputStream {
+        private byte[] buffer;
+        private int position;
+        private int count;
+        //Raw bytes read and time spent blocked reading them
+        private long bytesRead;
+        private long readNanos;
+
+        PooledInputStream(InputStream in, int size) {
+            super(in);
+            buffer = acquire(size);
+        }
+
+        /**
+         * Refill the buffer, returns false at the end of the stream.
+         */
+        private boolean fill() throws IOException {
+            if (buffer == null) {
+                throw new IOException("Stream closed");
+            }
+            position = 0;
+            long start = System.nanoTime();
+            count = Math.max(in.read(buffer, 0, buffer.length), 0);
+            readNanos += System.nanoTime() - start;
+            bytesRead += count;
+            return count > 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= count && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= count && !fill()) {
+                return -1;
+            }
+            int read = Math.min(len, count - position);
+            System.arraycopy(buffer, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (position >= count && !fill()) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, count - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (count - position) + in.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (buffer != null) {
+                release(buffer);
+                buffer = null;
+                Metrics.getSink().recordTiming(Metrics.HTTP_DOWNLOAD, readNanos);
+                Metrics.value(Metrics.HTTP_BYTES, bytesRead);
+            }
+            super.close();
+        }
+    }
+}
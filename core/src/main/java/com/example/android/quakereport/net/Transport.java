@@ -0,0 +1,38 @@
+package com.example.android.quakereport.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Sends the GET requests of the app, so QueryUtils does not care which HTTP client
+ * is underneath or how it keeps its connections.
+ */
+public interface Transport {
+    /**
+     * Send a GET request with the given extra headers. The response must be closed,
+     * which hands its connection back for the next request.
+     */
+    Response get(URL url, Map<String, String> headers) throws IOException;
+
+    /** Requests sent over a connection that was already open. */
+    long getPoolHits();
+
+    /** Requests that had to open a new connection, with its TCP and TLS handshakes. */
+    long getPoolMisses();
+
+    interface Response extends Closeable {
+        int getCode();
+
+        /** Return the value of a response header, or null if the server did not send it. */
+        String getHeader(String name);
+
+        /** Return the length of the body, or -1 if unknown. */
+        long getContentLength();
+
+        /** Return the raw body, still compressed if the server gzipped it. */
+        InputStream getBody() throws IOException;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.quakereport.sync;
+
+/**
+ * Decides when the app syncs in the background. Small delta fetches of the list run
+ * every interval on any network, a foreground refresh counts as one so the two never
+ * double up, and failures push the next attempt out exponentially. Large backfills wait
+ * for an unmetered network while charging, and only settle for unmetered alone once
+ * they are overdue. Plain Java on an injected {@link Clock}, so it can be driven by a
+ * fake one; the caller persists its state with {@link #restore} and the getters.
+ */
+public class SyncPolicy {
+    /**
+     * Source of the current time in milliseconds, wall clock time since the state outlives the process.
+     */
+    public interface Clock {
+        long now();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    //Work decide() can ask for
+    public static final int WORK_NONE = 0;
+    public static final int WORK_DELTA = 1;
+    public static final int WORK_BACKFILL = 2;
+
+    //On a low battery that is not charging deltas run this many times less often
+    private static final int LOW_BATTERY_STRETCH = 4;
+
+    /**
+     * State of the device when a sync could run.
+     */
+    public static class Conditions {
+        final boolean connected;
+        final boolean unmetered;
+        final boolean charging;
+        final boolean batteryLow;
+
+        public Conditions(boolean connected, boolean unmetered, boolean charging, boolean batteryLow) {
+            this.connected = connected;
+            this.unmetered = unmetered;
+            this.charging = charging;
+            this.batteryLow = batteryLow;
+        }
+    }
+
+    private final Clock clock;
+    private final long intervalMillis;
+    private final long backfillIntervalMillis;
+    private final long retryMillis;
+    private final long maxBackoffMillis;
+
+    //Last successful delta (or foreground refresh) and backfill, 0 if never
+    private long lastSync;
+    private long lastBackfill;
+    //Failed attempts in a row and when the last one was made
+    private int failures;
+    private long lastFailure;
+
+    /**
+     * @param intervalMillis         time between two deltas
+     * @param backfillIntervalMillis time between two backfills, also how long a backfill waits
+     *                               for a charger once due
+     * @param retryMillis            wait after the first failure, doubled on every one after it
+     * @param maxBackoffMillis       longest wait after failures
+     */
+    public SyncPolicy(Clock clock, long intervalMillis, long backfillIntervalMillis,
+                      long retryMillis, long maxBackoffMillis) {
+        this.clock = clock;
+        this.intervalMillis = intervalMillis;
+        this.backfillIntervalMillis = backfillIntervalMillis;
+        this.retryMillis = retryMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Restore the state saved from the getters of a previous instance.
+     */
+    public synchronized void restore(long lastSync, long lastBackfill, int failures, long lastFailure) {
+        this.lastSync = lastSync;
+        this.lastBackfill = lastBackfill;
+        this.failures = failures;
+        this.lastFailure = lastFailure;
+    }
+
+    public synchronized long getLastSync() {return lastSync;}
+
+    public synchronized long getLastBackfill() {return lastBackfill;}
+
+    public synchronized int getFailures() {return failures;}
+
+    public synchronized long getLastFailure() {return lastFailure;}
+
+    /**
+     * Return the work to do now under the given conditions, {@link #WORK_NONE},
+     * {@link #WORK_DELTA} or {@link #WORK_BACKFILL}.
+     */
+    public synchronized int decide(Conditions conditions) {
+        long now = clock.now();
+        if (!conditions.connected || now < getRetryAt()) {
+            return WORK_NONE;
+        }
+        if (conditions.unmetered && now >= getBackfillAt()
+                && (conditions.charging || now >= getBackfillAt() + backfillIntervalMillis)) {
+            return WORK_BACKFILL;
+        }
+        long interval = conditions.batteryLow && !conditions.charging
+                ? intervalMillis * LOW_BATTERY_STRETCH : intervalMillis;
+        if (now >= lastSync + interval) {
+            return WORK_DELTA;
+        }
+        return WORK_NONE;
+    }
+
+    /**
+     * Return the earliest time a delta may run, later than the interval after failures.
+     */
+    public synchronized long getDeltaAt() {
+        return Math.max(lastSync + intervalMillis, getRetryAt());
+    }
+
+    /**
+     * Return the time the next backfill is due, it still waits for the right network after that.
+     */
+    public synchronized long getBackfillAt() {
+        return lastBackfill + backfillIntervalMillis;
+    }
+
+    /**
+     * Record the outcome of the given work.
+     */
+    public synchronized void onFinished(int work, boolean success) {
+        if (!success) {
+            failures++;
+            lastFailure = clock.now();
+            return;
+        }
+        failures = 0;
+        if (work == WORK_BACKFILL) {
+            lastBackfill = clock.now();
+        } else if (work == WORK_DELTA) {
+            lastSync = clock.now();
+        }
+    }
+
+    /**
+     * Record that the foreground fetched the list, which makes the next delta unnecessary for an interval.
+     */
+    public void onForegroundRefresh() {
+        onFinished(WORK_DELTA, true);
+    }
+
+    /**
+     * Return the time before which nothing runs because of the failures in a row.
+     */
+    private long getRetryAt() {
+        if (failures == 0) {
+            return 0;
+        }
+        // Capped shift, the backoff tops out long before the shift would overflow
+        long backoff = Math.min(maxBackoffMillis, retryMillis << Math.min(failures - 1, 30));
+        return lastFailure + backoff;
+    }
+}
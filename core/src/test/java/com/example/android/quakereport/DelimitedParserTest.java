@@ -0,0 +1,103 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DelimitedParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int EVENTS = 500;
+
+    @Test
+    public void csvMatchesGeoJson() throws IOException {
+        List<EarthQuake> expected = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(Fixtures.geoJson(EVENTS)));
+        ListSink sink = new ListSink();
+
+        assertEquals(EVENTS, DelimitedParser.csv().parse(new ByteArrayInputStream(Fixtures.csv(EVENTS)), sink));
+
+        for (int i = 0; i < EVENTS; i++) {
+            assertSameEvent(expected.get(i), sink.earthQuakes.get(i));
+            assertEquals(expected.get(i).getUpdated(), sink.earthQuakes.get(i).getUpdated());
+        }
+    }
+
+    @Test
+    public void textMatchesGeoJson() throws IOException {
+        List<EarthQuake> expected = QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(Fixtures.geoJson(EVENTS)));
+        ListSink sink = new ListSink();
+
+        assertEquals(EVENTS, DelimitedParser.text().parse(new ByteArrayInputStream(Fixtures.text(EVENTS)), sink));
+
+        for (int i = 0; i < EVENTS; i++) {
+            EarthQuake earthQuake = sink.earthQuakes.get(i);
+            assertSameEvent(expected.get(i), earthQuake);
+            // The text format has no update time
+            assertEquals(earthQuake.getTimestamp(), earthQuake.getUpdated());
+        }
+    }
+
+    @Test
+    public void readsQuotesEmptyFieldsAndDeletions() throws IOException {
+        String csv = "time,latitude,longitude,depth,mag,id,updated,place,status\r\n"
+                + "2019-01-01T00:00:00.000Z,,,,,us1,2019-01-01T00:01:00.000Z,\"5km \"\"N\"\" of Rumoi, Japan\",deleted\r\n"
+                + "\r\n"
+                + "2018-12-31T23:59:59.500Z,-6.25,129.5,10,4.5,us2,2018-12-31T23:59:59.500Z,Banda Sea,reviewed";
+        ListSink sink = new ListSink();
+
+        assertEquals(2, DelimitedParser.csv().parse(new ByteArrayInputStream(csv.getBytes(UTF_8)), sink));
+
+        EarthQuake deleted = sink.earthQuakes.get(0);
+        assertEquals("us1", deleted.getId());
+        assertEquals(1546300800000L, deleted.getTimestamp());
+        assertEquals(1546300860000L, deleted.getUpdated());
+        assertEquals("5km \"N\" of Rumoi, Japan", deleted.getTitle());
+        assertEquals(0, deleted.getMag(), 0);
+        assertFalse(deleted.hasLocation());
+        assertTrue(deleted.isDeleted());
+        EarthQuake reviewed = sink.earthQuakes.get(1);
+        assertEquals(1546300799500L, reviewed.getTimestamp());
+        assertEquals(4.5, reviewed.getMag(), 0);
+        assertEquals(-6.25, reviewed.getLatitude(), 0);
+        assertEquals(129.5, reviewed.getLongitude(), 0);
+        assertEquals(10, reviewed.getDepth(), 0);
+        assertFalse(reviewed.isDeleted());
+    }
+
+    @Test
+    public void rejectsOtherFormats() throws IOException {
+        ListSink sink = new ListSink();
+
+        assertEquals(-1, DelimitedParser.csv().parse(new ByteArrayInputStream(Fixtures.geoJson(10)), sink));
+        assertEquals(-1, DelimitedParser.text().parse(new ByteArrayInputStream(Fixtures.csv(10)), sink));
+        assertTrue(sink.earthQuakes.isEmpty());
+    }
+
+    private static void assertSameEvent(EarthQuake expected, EarthQuake actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMag(), actual.getMag(), 0);
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        assertEquals(expected.getURL(), actual.getURL());
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getDepth(), actual.getDepth(), 0);
+    }
+
+    private static class ListSink implements QueryUtils.FeatureSink {
+        final ArrayList<EarthQuake> earthQuakes = new ArrayList<>();
+
+        @Override
+        public void add(String id, double mag, String place, long time, long updated, String url,
+                        double latitude, double longitude, double depth, boolean deleted) {
+            earthQuakes.add(new EarthQuake(id, mag, place, time, updated, url, latitude, longitude, depth, deleted));
+        }
+    }
+}
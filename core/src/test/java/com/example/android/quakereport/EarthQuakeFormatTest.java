@@ -0,0 +1,39 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthQuakeFormatTest {
+    private static final int LAST_BAND = EarthQuakeFormat.MAGNITUDE_BANDS - 1;
+
+    @Test
+    public void aBandIsTheWholeMagnitude() {
+        assertEquals(0, EarthQuakeFormat.bandOf(0));
+        assertEquals(2, EarthQuakeFormat.bandOf(2.99));
+        assertEquals(7, EarthQuakeFormat.bandOf(7.0));
+        assertEquals(9, EarthQuakeFormat.bandOf(9.5));
+    }
+
+    @Test
+    public void tenAndAboveShareTheLastBand() {
+        assertEquals(LAST_BAND, EarthQuakeFormat.bandOf(10));
+        assertEquals(LAST_BAND, EarthQuakeFormat.bandOf(12.4));
+    }
+
+    @Test
+    public void negativeMagnitudesFallInTheFirstBand() {
+        assertEquals(0, EarthQuakeFormat.bandOf(-0.4));
+        assertEquals(0, EarthQuakeFormat.bandOf(-2.5));
+    }
+
+    @Test
+    public void splitsTheTitleAtTheSeparator() {
+        EarthQuakeFormat format = new EarthQuakeFormat("Near the");
+
+        assertEquals("74km NW of ", format.getLocation("74km NW of Rumoi, Japan"));
+        assertEquals("Rumoi, Japan", format.getCountry("74km NW of Rumoi, Japan"));
+        assertEquals("Near the", format.getLocation("Honshu, Japan"));
+        assertEquals("Honshu, Japan", format.getCountry("Honshu, Japan"));
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * USGS responses for the tests and benchmarks, built the same way every run so results
+ * stay comparable. Every feature carries the full set of properties USGS sends, most
+ * of which the parser has to skip, and places repeat the way real regions do. The
+ * GeoJSON, csv and text fixtures of one size hold the same events.
+ */
+public final class Fixtures {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String[] DIRECTIONS = {"N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+            "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"};
+    private static final String[] REGIONS = {"Anchorage, Alaska", "Ridgecrest, CA", "Pahala, Hawaii",
+            "Rumoi, Japan", "Neiafu, Tonga", "Ovalle, Chile", "Tonopah, Nevada", "Fiji region",
+            "Kuril'sk, Russia", "Mid-Atlantic Ridge", "Puerto Rico", "Banda Sea"};
+    //Every place has a separator except these, which the title split falls back on
+    private static final int PLACES_WITHOUT_SEPARATOR = 5;
+    //2019-01-01T00:00:00Z, the events count back from here
+    private static final long START_TIME = 1546300800000L;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Return a GeoJSON query response holding the given number of events, newest first.
+     */
+    public static byte[] geoJson(int events) {
+        Event[] generated = events(events);
+        StringBuilder json = new StringBuilder(events * 1200);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":").append(START_TIME)
+                .append(",\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=")
+                .append(events).append("\",\"title\":\"USGS Earthquakes\",\"status\":200,\"api\":\"1.7.0\",\"count\":")
+                .append(events).append("},\"features\":[");
+        for (int i = 0; i < events; i++) {
+            Event event = generated[i];
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":").append(event.magnitude)
+                    .append(",\"place\":\"").append(event.place)
+                    .append("\",\"time\":").append(event.time)
+                    .append(",\"updated\":").append(event.updated)
+                    .append(",\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/").append(event.id)
+                    .append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/query?eventid=").append(event.id)
+                    .append("&format=geojson\",\"felt\":").append(event.felt ? "12" : "null")
+                    .append(",\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\",\"tsunami\":0,\"sig\":")
+                    .append(event.significance)
+                    .append(",\"net\":\"us\",\"code\":\"").append(event.code)
+                    .append("\",\"ids\":\",").append(event.id).append(",\",\"sources\":\",us,\",\"types\":\",origin,phase-data,\"")
+                    .append(",\"nst\":").append(event.stations)
+                    .append(",\"dmin\":").append(event.minDistance)
+                    .append(",\"rms\":").append(event.rms)
+                    .append(",\"gap\":").append(event.gap)
+                    .append(",\"magType\":\"mb\",\"type\":\"earthquake\",\"title\":\"M ").append(event.magnitude)
+                    .append(" - ").append(event.place)
+                    .append("\"},\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(event.longitude).append(',')
+                    .append(event.latitude).append(',')
+                    .append(event.depth)
+                    .append("]},\"id\":\"").append(event.id).append("\"}");
+        }
+        json.append("],\"bbox\":[-180,-90,0,180,90,600]}");
+        return json.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Return the same events as {@link #geoJson(int)} in the USGS "csv" format.
+     */
+    public static byte[] csv(int events) {
+        StringBuilder csv = new StringBuilder(events * 200);
+        csv.append("time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,updated,place,type,")
+                .append("horizontalError,depthError,magError,magNst,status,locationSource,magSource\n");
+        for (Event event : events(events)) {
+            csv.append(isoTime(event.time)).append("Z,")
+                    .append(event.latitude).append(',')
+                    .append(event.longitude).append(',')
+                    .append(event.depth).append(',')
+                    .append(event.magnitude).append(",mb,")
+                    .append(event.stations).append(',')
+                    .append(event.gap).append(',')
+                    .append(event.minDistance).append(',')
+                    .append(event.rms).append(",us,")
+                    .append(event.id).append(',')
+                    .append(isoTime(event.updated)).append("Z,");
+            // USGS quotes the places holding a comma, which is most of them
+            if (event.place.indexOf(',') >= 0) {
+                csv.append('"').append(event.place).append('"');
+            } else {
+                csv.append(event.place);
+            }
+            csv.append(",earthquake,,,,,reviewed,us,us\n");
+        }
+        return csv.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Return the same events as {@link #geoJson(int)} in the USGS "text" format.
+     */
+    public static byte[] text(int events) {
+        StringBuilder text = new StringBuilder(events * 160);
+        text.append("#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|ContributorID|")
+                .append("MagType|Magnitude|MagAuthor|EventLocationName|EventType\n");
+        for (Event event : events(events)) {
+            text.append(event.id).append('|')
+                    .append(isoTime(event.time)).append('|')
+                    .append(event.latitude).append('|')
+                    .append(event.longitude).append('|')
+                    .append(event.depth).append("|us|us|us|")
+                    .append(event.id).append("|mb|")
+                    .append(event.magnitude).append("|us|")
+                    .append(event.place).append("|earthquake\n");
+        }
+        return text.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Return the given number of events, newest first.
+     */
+    private static Event[] events(int events) {
+        Random random = new Random(events);
+        long time = START_TIME;
+        Event[] generated = new Event[events];
+        for (int i = 0; i < events; i++) {
+            // Drawn in the order the original GeoJSON fixture used, so it stays byte for byte the same
+            Event event = new Event();
+            time -= 1000 + random.nextInt(600000);
+            event.time = time;
+            event.magnitude = Math.round((random.nextDouble() * 6.5 + 0.5) * 100) / 100.0;
+            event.place = random.nextInt(PLACES_WITHOUT_SEPARATOR + REGIONS.length) < PLACES_WITHOUT_SEPARATOR
+                    ? REGIONS[random.nextInt(REGIONS.length)]
+                    : (1 + random.nextInt(300)) + "km " + DIRECTIONS[random.nextInt(DIRECTIONS.length)]
+                    + " of " + REGIONS[random.nextInt(REGIONS.length)];
+            event.code = 1000000 + i;
+            event.id = "us" + event.code;
+            event.updated = time + random.nextInt(3600000);
+            event.felt = random.nextInt(4) == 0;
+            event.significance = random.nextInt(1000);
+            event.stations = random.nextInt(100);
+            event.minDistance = String.format(Locale.US, "%.3f", random.nextDouble() * 10);
+            event.rms = String.format(Locale.US, "%.2f", random.nextDouble());
+            event.gap = random.nextInt(360);
+            event.longitude = String.format(Locale.US, "%.4f", random.nextDouble() * 360 - 180);
+            event.latitude = String.format(Locale.US, "%.4f", random.nextDouble() * 180 - 90);
+            event.depth = String.format(Locale.US, "%.2f", random.nextDouble() * 600);
+            generated[i] = event;
+        }
+        return generated;
+    }
+
+    private static String isoTime(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    /**
+     * One generated event, the numbers that are printed with a fixed precision are kept as text.
+     */
+    private static class Event {
+        String id;
+        int code;
+        long time;
+        long updated;
+        double magnitude;
+        String place;
+        boolean felt;
+        int significance;
+        int stations;
+        String minDistance;
+        String rms;
+        int gap;
+        String longitude;
+        String latitude;
+        String depth;
+    }
+
+    public static byte[] gzip(byte[] bytes) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            gzip.write(bytes);
+            gzip.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.android.quakereport;
+
+import com.example.android.quakereport.net.EarthQuakeQuery;
+import com.example.android.quakereport.net.Transport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryUtilsTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int EVENTS = 500;
+    private static final String CSV_URL = new EarthQuakeQuery(2.5, "time", 10)
+            .withFormat(EarthQuakeQuery.FORMAT_CSV).toUrl();
+
+    private final Transport originalTransport = QueryUtils.getTransport();
+
+    @Test
+    public void parsesEveryFixtureEvent() throws IOException {
+        List<EarthQuake> earthQuakes = parse(Fixtures.geoJson(EVENTS));
+
+        assertEquals(EVENTS, earthQuakes.size());
+        for (int i = 0; i < EVENTS; i++) {
+            EarthQuake earthQuake = earthQuakes.get(i);
+            assertEquals("us" + (1000000 + i), earthQuake.getId());
+            assertTrue(earthQuake.getMag() >= 0.5 && earthQuake.getMag() <= 7);
+            assertFalse(earthQuake.getTitle().isEmpty());
+            assertTrue(earthQuake.getUpdated() >= earthQuake.getTimestamp());
+            assertEquals("https://earthquake.usgs.gov/earthquakes/eventpage/" + earthQuake.getId(),
+                    earthQuake.getURL());
+            assertTrue(earthQuake.hasLocation());
+            assertTrue(earthQuake.getLatitude() >= -90 && earthQuake.getLatitude() <= 90);
+            assertTrue(earthQuake.getLongitude() >= -180 && earthQuake.getLongitude() <= 180);
+            assertTrue(earthQuake.getDepth() >= 0 && earthQuake.getDepth() <= 600);
+            assertFalse(earthQuake.isDeleted());
+            if (i > 0) {
+                // The fixtures are newest first, like a query ordered by time
+                assertTrue(earthQuake.getTimestamp() < earthQuakes.get(i - 1).getTimestamp());
+            }
+        }
+    }
+
+    @Test
+    public void readsNullsAndDeletedEvents() throws IOException {
+        String json = "{\"type\":\"FeatureCollection\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"mag\":null,\"place\":null,\"time\":1546300800000,"
+                + "\"updated\":1546300900000,\"url\":null,\"status\":\"deleted\"},\"geometry\":null,\"id\":\"us1\"},"
+                + "{\"type\":\"Feature\",\"properties\":{\"mag\":4.5,\"place\":\"Banda Sea\",\"time\":1546300700000,"
+                + "\"updated\":1546300700000,\"status\":\"reviewed\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[129.5,-6.25,null]},\"id\":\"us2\"},"
+                + "{\"type\":\"Feature\",\"id\":\"us3\"}]}";
+
+        List<EarthQuake> earthQuakes = parse(json.getBytes(UTF_8));
+
+        // A feature without properties is skipped
+        assertEquals(2, earthQuakes.size());
+        EarthQuake deleted = earthQuakes.get(0);
+        assertEquals("us1", deleted.getId());
+        assertEquals(0, deleted.getMag(), 0);
+        assertEquals("", deleted.getTitle());
+        assertTrue(deleted.isDeleted());
+        assertFalse(deleted.hasLocation());
+        EarthQuake reviewed = earthQuakes.get(1);
+        assertEquals(4.5, reviewed.getMag(), 0);
+        assertEquals("Banda Sea", reviewed.getTitle());
+        assertEquals(-6.25, reviewed.getLatitude(), 0);
+        assertEquals(129.5, reviewed.getLongitude(), 0);
+        assertTrue(Double.isNaN(reviewed.getDepth()));
+        assertFalse(reviewed.isDeleted());
+    }
+
+    @Test
+    public void keepsWhatWasParsedBeforeMalformedContent() throws IOException {
+        byte[] body = Fixtures.geoJson(3);
+        String json = new String(body, UTF_8);
+        // Break the third feature's opening brace
+        int third = json.indexOf("{\"type\":\"Feature\"", json.indexOf("us1000001"));
+        byte[] malformed = (json.substring(0, third) + "]" + json.substring(third + 1)).getBytes(UTF_8);
+
+        List<EarthQuake> earthQuakes = parse(malformed);
+
+        assertEquals(2, earthQuakes.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnATruncatedStream() throws IOException {
+        byte[] body = Fixtures.geoJson(10);
+
+        parse(Arrays.copyOf(body, body.length / 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenTheStreamFails() throws IOException {
+        final byte[] body = Fixtures.geoJson(10);
+        InputStream failing = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position == body.length / 2) {
+                    throw new IOException("Connection reset");
+                }
+                return body[position++] & 0xff;
+            }
+        };
+
+        QueryUtils.extractFeatureFromJson(failing, new QueryUtils.FeatureSink() {
+            @Override
+            public void add(String id, double mag, String place, long time, long updated, String url,
+                            double latitude, double longitude, double depth, boolean deleted) {
+            }
+        });
+    }
+
+    @Test
+    public void readsEventDetail() {
+        String json = "{\"type\":\"Feature\",\"properties\":{\"mag\":6.1,\"place\":\"Neiafu, Tonga\","
+                + "\"time\":1546300800000,\"updated\":1546300900000,\"felt\":12,\"alert\":\"green\","
+                + "\"tsunami\":1,\"magType\":\"mww\",\"products\":{\"origin\":[{\"id\":\"x\"}]}},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-174.1,-18.7,10.0]},\"id\":\"us9\"}";
+
+        EarthQuakeDetail detail = QueryUtils.extractDetailFromJson(new ByteArrayInputStream(json.getBytes(UTF_8)));
+
+        assertEquals("us9", detail.getId());
+        assertEquals(6.1, detail.getMag(), 0);
+        assertEquals("mww", detail.getMagType());
+        assertEquals(12, detail.getFelt());
+        assertEquals("green", detail.getAlert());
+        assertTrue(detail.isTsunami());
+        assertEquals(10.0, detail.getDepth(), 0);
+    }
+
+    @Test
+    public void rejectsMalformedDetail() {
+        byte[] json = "{\"type\":\"Feature\",\"properties\":[".getBytes(UTF_8);
+
+        assertNull(QueryUtils.extractDetailFromJson(new ByteArrayInputStream(json)));
+    }
+
+    @Test
+    public void fallsBackToGeoJsonWhenTheFormatIsNotRecognized() {
+        FakeTransport transport = new FakeTransport();
+        transport.bodies.put("csv", Fixtures.geoJson(5));
+        transport.bodies.put("geojson", Fixtures.geoJson(5));
+        QueryUtils.setTransport(transport);
+
+        List<EarthQuake> earthQuakes = QueryUtils.fetchEarthquakeData(CSV_URL);
+
+        assertEquals(5, earthQuakes.size());
+        assertEquals(Arrays.asList("csv", "geojson"), transport.requested);
+    }
+
+    @Test
+    public void doesNotFallBackWhenTheRequestFails() {
+        FakeTransport transport = new FakeTransport();
+        transport.bodies.put("geojson", Fixtures.geoJson(5));
+        QueryUtils.setTransport(transport);
+
+        assertNull(QueryUtils.fetchEarthquakeData(CSV_URL));
+        assertEquals(Arrays.asList("csv"), transport.requested);
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setTransport(originalTransport);
+    }
+
+    private static List<EarthQuake> parse(byte[] body) throws IOException {
+        return QueryUtils.extractFeatureFromJson(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Answers every format it has a body for with a 200, anything else with a 500.
+     */
+    private static class FakeTransport implements Transport {
+        final HashMap<String, byte[]> bodies = new HashMap<>();
+        final ArrayList<String> requested = new ArrayList<>();
+
+        @Override
+        public Response get(URL url, Map<String, String> headers) {
+            String format = EarthQuakeQuery.formatOf(url.toString());
+            requested.add(format);
+            final byte[] body = bodies.get(format);
+            return new Response() {
+                @Override
+                public int getCode() {
+                    return body == null ? HttpURLConnection.HTTP_INTERNAL_ERROR : HttpURLConnection.HTTP_OK;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return null;
+                }
+
+                @Override
+                public long getContentLength() {
+                    return body == null ? 0 : body.length;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(body);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public long getPoolHits() {
+            return 0;
+        }
+
+        @Override
+        public long getPoolMisses() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaSyncTest {
+    private static final String QUERY = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=5";
+    private static final String OTHER_QUERY = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&limit=6";
+    private static final long NOW = 1546300800000L;
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void upsertsAndDeletes() {
+        DeltaSync sync = new DeltaSync();
+        sync.reset(QUERY, "time", 5, Arrays.asList(event("us1", 3, 2.5), event("us2", 2, 3.0), event("us3", 1, 3.5)), NOW);
+        String deltaUrl = sync.buildDeltaUrl(QUERY, NOW);
+
+        List<EarthQuake> merged = sync.merge(deltaUrl, Arrays.asList(
+                updated(event("us1", 3, 4.5)), deleted("us2")), NOW);
+
+        assertEquals(Arrays.asList("us3", "us1"), ids(merged));
+        assertEquals(4.5, merged.get(1).getMag(), 0);
+    }
+
+    @Test
+    public void sortsAndCapsTheMergedEvents() {
+        DeltaSync sync = new DeltaSync();
+        sync.reset(QUERY, "time", 3, Arrays.asList(event("us1", 3, 2.5), event("us2", 2, 3.0), event("us3", 1, 3.5)), NOW);
+
+        List<EarthQuake> merged = sync.merge(sync.buildDeltaUrl(QUERY, NOW),
+                Collections.singletonList(updated(event("us4", 0, 5.0))), NOW);
+
+        // The newest comes first and the oldest falls off the end
+        assertEquals(Arrays.asList("us4", "us3", "us2"), ids(merged));
+    }
+
+    @Test
+    public void dropsEventsThatLeftTheDefaultWindow() {
+        DeltaSync sync = new DeltaSync();
+        // Ten minutes short of thirty days old
+        EarthQuake old = event("us1", 30 * 24 * 60 - 10, 2.5);
+        sync.reset(QUERY, "time", 5, Arrays.asList(old, event("us2", 0, 3.0)), NOW);
+
+        long later = NOW + 20 * MINUTE;
+        List<EarthQuake> merged = sync.merge(sync.buildDeltaUrl(QUERY, later), Collections.<EarthQuake>emptyList(), later);
+
+        assertEquals(Collections.singletonList("us2"), ids(merged));
+    }
+
+    @Test
+    public void fetchesInFullEveryHour() {
+        DeltaSync sync = new DeltaSync();
+        sync.reset(QUERY, "time", 5, Collections.singletonList(event("us1", 0, 2.5)), NOW);
+
+        assertNotNull(sync.buildDeltaUrl(QUERY, NOW + 59 * MINUTE));
+        assertNull(sync.buildDeltaUrl(QUERY, NOW + 60 * MINUTE));
+    }
+
+    @Test
+    public void neverDeltaSyncsByMagnitude() {
+        DeltaSync sync = new DeltaSync();
+        sync.reset(QUERY, "magnitude", 5, Collections.singletonList(event("us1", 0, 2.5)), NOW);
+
+        assertNull(sync.buildDeltaUrl(QUERY, NOW));
+    }
+
+    @Test
+    public void asksForWhatChangedSinceTheNewestUpdate() {
+        DeltaSync sync = new DeltaSync();
+        sync.reset(QUERY, "time", 5, Arrays.asList(event("us1", 3, 2.5), event("us2", 2, 3.0)), NOW);
+
+        assertEquals(QUERY + "&updatedafter=2019-01-01T00:00:00.000&includedeleted=true", sync.buildDeltaUrl(QUERY, NOW));
+        assertNull(sync.buildDeltaUrl(OTHER_QUERY, NOW));
+    }
+
+    @Test
+    public void rejectsADeltaForEventsSinceReplaced() {
+        DeltaSync sync = new DeltaSync();
+        List<EarthQuake> events = Arrays.asList(event("us1", 3, 2.5), event("us2", 2, 3.0));
+        sync.reset(QUERY, "time", 5, events, NOW);
+        String deltaUrl = sync.buildDeltaUrl(QUERY, NOW);
+
+        // Another load switched to another query while the delta was in flight
+        sync.reset(OTHER_QUERY, "time", 5, events, NOW);
+        assertNull(sync.merge(deltaUrl, Collections.singletonList(deleted("us1")), NOW));
+        assertEquals(2, sync.reset(QUERY, "time", 5, events, NOW).size());
+
+        // Another delta moved the sync on
+        deltaUrl = sync.buildDeltaUrl(QUERY, NOW);
+        assertNotNull(sync.merge(deltaUrl, Collections.singletonList(updated(event("us3", 1, 4.0))), NOW));
+        assertNull(sync.merge(deltaUrl, Collections.singletonList(deleted("us1")), NOW));
+        assertTrue(ids(sync.merge(sync.buildDeltaUrl(QUERY, NOW), Collections.<EarthQuake>emptyList(), NOW))
+                .contains("us1"));
+    }
+
+    /**
+     * An event that happened the given minutes before {@link #NOW} and was last updated at it.
+     */
+    private static EarthQuake event(String id, int minutesAgo, double magnitude) {
+        return new EarthQuake(id, magnitude, "10km SSW of Anchorage, Alaska", NOW - minutesAgo * MINUTE, NOW,
+                "https://earthquake.usgs.gov/earthquakes/eventpage/" + id, 61.2, -149.9, 10, false);
+    }
+
+    private static EarthQuake updated(EarthQuake earthQuake) {
+        return new EarthQuake(earthQuake.getId(), earthQuake.getMag(), earthQuake.getTitle(),
+                earthQuake.getTimestamp(), earthQuake.getUpdated() + MINUTE, earthQuake.getURL(),
+                earthQuake.getLatitude(), earthQuake.getLongitude(), earthQuake.getDepth(), false);
+    }
+
+    private static EarthQuake deleted(String id) {
+        return new EarthQuake(id, 0, "", NOW, NOW + MINUTE, "", 0, 0, 0, true);
+    }
+
+    private static List<String> ids(List<EarthQuake> earthQuakes) {
+        ArrayList<String> ids = new ArrayList<>(earthQuakes.size());
+        for (EarthQuake earthQuake : earthQuakes) {
+            ids.add(earthQuake.getId());
+        }
+        return ids;
+    }
+}
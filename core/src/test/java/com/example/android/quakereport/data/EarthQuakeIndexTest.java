@@ -0,0 +1,84 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EarthQuakeIndexTest {
+    private static final String TIME = "time";
+    private static final String MAGNITUDE = "magnitude";
+
+    @Test
+    public void aCompleteSetCoversEveryOrder() {
+        EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes(8), 2.5, TIME, 10);
+
+        assertTrue(index.covers(2.5, TIME, 10));
+        assertTrue(index.covers(4, MAGNITUDE, 10));
+        assertFalse(index.covers(2, TIME, 10));
+    }
+
+    @Test
+    public void aTruncatedSetOnlyCoversItsOwnOrder() {
+        EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes(10), 2.5, TIME, 10);
+
+        assertTrue(index.covers(2.5, TIME, 10));
+        assertFalse(index.covers(2.5, MAGNITUDE, 10));
+    }
+
+    @Test
+    public void aTruncatedSetDoesNotCoverASliceReachingPastTheCut() {
+        // Magnitudes 2.5 to 4.75, a quarter apart
+        EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes(10), 2.5, TIME, 10);
+
+        assertTrue(index.covers(4, TIME, 4));
+        assertFalse(index.covers(4, TIME, 5));
+    }
+
+    @Test
+    public void byMagnitudeEverythingCutOffIsSmaller() {
+        EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes(10), 2.5, MAGNITUDE, 10);
+
+        // The cut fell below 3, so every event of 3 and up is here
+        assertTrue(index.covers(3, MAGNITUDE, 10));
+        // The cut may have fallen among the 2.5s
+        assertFalse(index.covers(2.5, MAGNITUDE, 20));
+    }
+
+    @Test
+    public void anUnknownOrderOnlyCoversWhenComplete() {
+        assertFalse(new EarthQuakeIndex(earthQuakes(10), 2.5, null, 10).covers(3, TIME, 10));
+        assertTrue(new EarthQuakeIndex(earthQuakes(9), 2.5, null, 10).covers(3, TIME, 10));
+    }
+
+    @Test
+    public void queriesTheCoveredSlice() {
+        EarthQuakeIndex index = new EarthQuakeIndex(earthQuakes(10), 2.5, TIME, 10);
+
+        List<EarthQuake> newest = index.query(4, TIME, 10);
+        assertEquals(4, newest.size());
+        assertEquals("us6", newest.get(0).getId());
+        List<EarthQuake> largest = index.query(2.5, MAGNITUDE, 3);
+        assertEquals("us9", largest.get(0).getId());
+        assertEquals("us7", largest.get(2).getId());
+    }
+
+    /**
+     * Events newest first, each a quarter magnitude larger than the one before.
+     */
+    private static List<EarthQuake> earthQuakes(int count) {
+        ArrayList<EarthQuake> earthQuakes = new ArrayList<>(count);
+        long time = 1546300800000L;
+        for (int i = 0; i < count; i++) {
+            earthQuakes.add(new EarthQuake("us" + i, 2.5 + i * 0.25, "Banda Sea", time - i * 60000L,
+                    time, "https://earthquake.usgs.gov/earthquakes/eventpage/us" + i, -6.25, 129.5, 10, false));
+        }
+        return earthQuakes;
+    }
+}
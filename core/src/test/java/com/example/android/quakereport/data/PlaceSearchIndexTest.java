@@ -0,0 +1,110 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.EarthQuake;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaceSearchIndexTest {
+    private static final String[] PLACES = {
+            "72km W of Anchorage, Alaska",
+            "Honshu, Japan",
+            "Hokkaido, Japan",
+            "12km S of Guatemala City, Guatemala",
+            "Andreanof Islands, Aleutian Islands, Alaska",
+            "near the east coast of Honshu, Japan",
+    };
+
+    @Test
+    public void aQueryWordMatchesTheStartOfAWord() {
+        PlaceSearchIndex index = new PlaceSearchIndex(earthQuakes());
+
+        assertEquals(Arrays.asList("us0", "us4"), ids(index.search("ala", 10)));
+        // Not the "an" inside "Japan" or "Guatemala"
+        assertEquals(Arrays.asList("us0", "us4"), ids(index.search("an", 10)));
+        assertEquals(Arrays.asList("us3"), ids(index.search("GUATEMALA", 10)));
+        assertTrue(index.search("laska", 10).isEmpty());
+    }
+
+    @Test
+    public void everyQueryWordHasToMatch() {
+        PlaceSearchIndex index = new PlaceSearchIndex(earthQuakes());
+
+        assertEquals(Arrays.asList("us1", "us5"), ids(index.search("jap hon", 10)));
+        assertEquals(Arrays.asList("us1", "us5"), ids(index.search("hon, jap", 10)));
+        assertTrue(index.search("japan alaska", 10).isEmpty());
+    }
+
+    @Test
+    public void theRarestWordSeedsTheCandidatesInIndexOrder() {
+        PlaceSearchIndex index = new PlaceSearchIndex(earthQuakes());
+
+        // "of" is in three places and "alaska" in two, the matches come back in index order either way
+        assertEquals(Arrays.asList("us0"), ids(index.search("of alaska", 10)));
+        assertEquals(Arrays.asList("us0"), ids(index.search("alaska of", 10)));
+        // A place with two words of the range is a single candidate
+        assertEquals(Arrays.asList("us4"), ids(index.search("isl", 10)));
+        assertEquals(Arrays.asList("us4"), ids(index.search("a isl", 10)));
+    }
+
+    @Test
+    public void typingOnNarrowsLikeAFreshSearch() {
+        PlaceSearchIndex typing = new PlaceSearchIndex(earthQuakes());
+        // Typing on, a word finished with a space, a second word, and backspacing over all of it
+        String[] keystrokes = {"j", "ja", "jap", "japan", "japan ", "japan h", "japan ho", "japan hok",
+                "japan ho", "japan h", "japan ", "japan", "japa", "h", "ho", "hon", "hon ", "hon j", "hon"};
+
+        for (String query : keystrokes) {
+            PlaceSearchIndex fresh = new PlaceSearchIndex(earthQuakes());
+            assertEquals(query, ids(fresh.search(query, 10)), ids(typing.search(query, 10)));
+        }
+    }
+
+    @Test
+    public void aTrailingSpaceStartsANewWord() {
+        PlaceSearchIndex index = new PlaceSearchIndex(earthQuakes());
+
+        assertEquals(Arrays.asList("us0", "us4"), ids(index.search("a", 10)));
+        // "a " still matches, but what follows is a word of its own, not the rest of "a..."
+        assertEquals(Arrays.asList("us0", "us4"), ids(index.search("a ", 10)));
+        assertEquals(Arrays.asList("us4"), ids(index.search("a i", 10)));
+        assertEquals(Collections.<String>emptyList(), ids(index.search("ai", 10)));
+    }
+
+    @Test
+    public void filterKeepsTheOrderOfTheList() {
+        List<EarthQuake> earthQuakes = earthQuakes();
+        PlaceSearchIndex index = new PlaceSearchIndex(earthQuakes.subList(0, 5));
+        ArrayList<EarthQuake> reversed = new ArrayList<>(earthQuakes);
+        Collections.reverse(reversed);
+
+        // us5 was not indexed, so it never matches
+        assertEquals(Arrays.asList("us2", "us1"), ids(index.filter(reversed, "japan")));
+        assertTrue(index.filter(reversed, "  ") == reversed);
+    }
+
+    private static List<EarthQuake> earthQuakes() {
+        ArrayList<EarthQuake> earthQuakes = new ArrayList<>(PLACES.length);
+        long time = 1546300800000L;
+        for (int i = 0; i < PLACES.length; i++) {
+            earthQuakes.add(new EarthQuake("us" + i, 4.5, PLACES[i], time - i * 60000L, time,
+                    "https://earthquake.usgs.gov/earthquakes/eventpage/us" + i, 0, 0, 10, false));
+        }
+        return earthQuakes;
+    }
+
+    private static List<String> ids(List<EarthQuake> earthQuakes) {
+        ArrayList<String> ids = new ArrayList<>(earthQuakes.size());
+        for (EarthQuake earthQuake : earthQuakes) {
+            ids.add(earthQuake.getId());
+        }
+        return ids;
+    }
+}
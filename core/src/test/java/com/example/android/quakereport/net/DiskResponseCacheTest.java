@@ -0,0 +1,326 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.Fixtures;
+import com.example.android.quakereport.QueryUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskResponseCacheTest {
+    private static final String URL_A = "https://example.com/query?id=a";
+    private static final String URL_B = "https://example.com/query?id=b";
+    private static final String URL_C = "https://example.com/query?id=c";
+    private static final String URL_D = "https://example.com/query?id=d";
+
+    private final Transport originalTransport = QueryUtils.getTransport();
+    private final DiskResponseCache originalCache = QueryUtils.getResponseCache();
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("response_cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setTransport(originalTransport);
+        QueryUtils.setResponseCache(originalCache);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void notModifiedServesTheCachedBody() throws IOException {
+        byte[] body = Fixtures.geoJson(5);
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        ValidatingTransport transport = new ValidatingTransport(body, "\"v1\"");
+        QueryUtils.setResponseCache(cache);
+        QueryUtils.setTransport(transport);
+
+        List<EarthQuake> fetched = QueryUtils.fetchEarthquakeData(URL_A);
+        List<EarthQuake> revalidated = QueryUtils.fetchEarthquakeData(URL_A);
+
+        assertEquals(Arrays.asList(HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_NOT_MODIFIED), transport.codes);
+        assertEquals(5, revalidated.size());
+        for (int i = 0; i < fetched.size(); i++) {
+            assertEquals(fetched.get(i).getId(), revalidated.get(i).getId());
+        }
+        assertEquals(body.length, cache.getNetworkBytes());
+        assertEquals(body.length, cache.getSavedBytes());
+        assertEquals(0.5, cache.getBytesSavedRatio(), 0);
+    }
+
+    @Test
+    public void aDeltaResponseIsNotCached() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        ValidatingTransport transport = new ValidatingTransport(Fixtures.geoJson(5), "\"v1\"");
+        QueryUtils.setResponseCache(cache);
+        QueryUtils.setTransport(transport);
+        String delta = URL_A + "&" + EarthQuakeQuery.UPDATED_AFTER_PARAMETER + "2019-01-01T00:00:00.000";
+
+        assertEquals(5, QueryUtils.fetchEarthquakeData(delta).size());
+        assertEquals(5, QueryUtils.fetchEarthquakeData(delta).size());
+
+        assertEquals(Arrays.asList(HttpURLConnection.HTTP_OK, HttpURLConnection.HTTP_OK), transport.codes);
+        assertNull(cache.get(delta));
+        assertEquals(0, cache.getNetworkBytes());
+    }
+
+    @Test
+    public void theRatioCountsEveryDownloadAndEveryHit() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        assertEquals(0, cache.getBytesSavedRatio(), 0);
+
+        store(cache, URL_A, bytes(100));
+        store(cache, URL_B, bytes(300));
+        cache.recordNotModified(cache.get(URL_B));
+
+        assertEquals(400, cache.getNetworkBytes());
+        assertEquals(300, cache.getSavedBytes());
+        assertEquals(300.0 / 700, cache.getBytesSavedRatio(), 1e-9);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 300);
+        store(cache, URL_A, bytes(100));
+        store(cache, URL_B, bytes(100));
+        store(cache, URL_C, bytes(100));
+
+        // A lookup counts as a use, so B is now the eldest
+        assertNotNull(cache.get(URL_A));
+        store(cache, URL_D, bytes(100));
+
+        assertNull(cache.get(URL_B));
+        assertNotNull(cache.get(URL_A));
+        assertNotNull(cache.get(URL_C));
+        assertNotNull(cache.get(URL_D));
+        assertEquals(300, cache.getSize());
+    }
+
+    @Test
+    public void theOrderSurvivesARestart() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 300);
+        store(cache, URL_A, bytes(100));
+        sleepPastTheFileTimeResolution();
+        store(cache, URL_B, bytes(100));
+        sleepPastTheFileTimeResolution();
+        cache.get(URL_A);
+
+        DiskResponseCache reopened = new DiskResponseCache(directory, 300);
+        store(reopened, URL_C, bytes(100));
+        store(reopened, URL_D, bytes(100));
+
+        assertNull(reopened.get(URL_B));
+        assertNotNull(reopened.get(URL_A));
+    }
+
+    @Test
+    public void anOversizeBodyPassesThroughUncached() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 100);
+        store(cache, URL_A, bytes(50));
+        byte[] body = bytes(250);
+
+        assertArrayEquals(body, readAll(cache.put(URL_B, "\"v1\"", null, new ByteArrayInputStream(body))));
+
+        assertNull(cache.get(URL_B));
+        // Nothing was evicted to make room for it
+        assertNotNull(cache.get(URL_A));
+        assertEquals(50, cache.getSize());
+        assertEquals(300, cache.getNetworkBytes());
+        assertEquals(2, directory.list().length);
+    }
+
+    @Test
+    public void handsTheBodyOverBeforeItIsDownloaded() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        CountingInputStream network = new CountingInputStream(bytes(100 * 1024));
+
+        InputStream body = cache.put(URL_A, "\"v1\"", null, network);
+        byte[] first = new byte[1024];
+        assertEquals(1024, body.read(first));
+
+        assertTrue(network.count < 100 * 1024);
+        assertNull(cache.get(URL_A));
+        readAll(body);
+        assertEquals(100 * 1024, cache.get(URL_A).getLength());
+    }
+
+    @Test
+    public void aBodyClosedHalfwayIsNotCached() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+
+        InputStream body = cache.put(URL_A, "\"v1\"", null, new ByteArrayInputStream(bytes(100 * 1024)));
+        body.read(new byte[1024]);
+        body.close();
+
+        assertNull(cache.get(URL_A));
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void aReaderStoppingAtTheEndOfItsDocumentStillCaches() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        byte[] body = bytes(1000);
+
+        InputStream stream = cache.put(URL_A, "\"v1\"", null, new ByteArrayInputStream(body));
+        // e.g. a JSON reader that saw the closing brace but not the trailing newline
+        stream.read(new byte[999]);
+        stream.close();
+
+        assertArrayEquals(body, readAll(cache.get(URL_A).openBody()));
+    }
+
+    @Test
+    public void concurrentFetchesOfOneUrlDoNotShareATempFile() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024);
+        byte[] first = bytes(4096);
+        byte[] second = bytes(8192);
+
+        InputStream one = cache.put(URL_A, "\"v1\"", null, new ByteArrayInputStream(first));
+        InputStream two = cache.put(URL_A, "\"v2\"", null, new ByteArrayInputStream(second));
+        one.read(new byte[2048]);
+        assertArrayEquals(second, readAll(two));
+        readAll(one);
+
+        // The last one to finish wins, whole
+        DiskResponseCache.Entry entry = cache.get(URL_A);
+        assertEquals("\"v1\"", entry.getEtag());
+        assertArrayEquals(first, readAll(entry.openBody()));
+        assertEquals(first.length, cache.getSize());
+    }
+
+    private static void store(DiskResponseCache cache, String url, byte[] body) throws IOException {
+        readAll(cache.put(url, "\"" + url.hashCode() + "\"", null, new ByteArrayInputStream(body)));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31 + length);
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[1000];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The restored order comes from file times, which some file systems keep in whole seconds.
+     */
+    private static void sleepPastTheFileTimeResolution() {
+        try {
+            Thread.sleep(1100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingInputStream extends ByteArrayInputStream {
+        int count;
+
+        CountingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int offset, int length) {
+            int read = super.read(buffer, offset, length);
+            count += Math.max(read, 0);
+            return read;
+        }
+    }
+
+    /**
+     * Answers with the body and its ETag, or 304 when the request carries that ETag.
+     */
+    private static class ValidatingTransport implements Transport {
+        private final byte[] body;
+        private final String etag;
+        final ArrayList<Integer> codes = new ArrayList<>();
+
+        ValidatingTransport(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        @Override
+        public Response get(URL url, Map<String, String> headers) {
+            final int code = etag.equals(headers.get("If-None-Match"))
+                    ? HttpURLConnection.HTTP_NOT_MODIFIED : HttpURLConnection.HTTP_OK;
+            codes.add(code);
+            return new Response() {
+                @Override
+                public int getCode() {
+                    return code;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return "ETag".equals(name) ? etag : null;
+                }
+
+                @Override
+                public long getContentLength() {
+                    return code == HttpURLConnection.HTTP_OK ? body.length : 0;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(code == HttpURLConnection.HTTP_OK ? body : new byte[0]);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public long getPoolHits() {
+            return 0;
+        }
+
+        @Override
+        public long getPoolMisses() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.EarthQuake;
+import com.example.android.quakereport.memory.MemoryPressure;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCacheTest {
+    private static final int RESULTS = 5;
+    private static final int EVENTS_PER_RESULT = 40;
+    //Room for two results parsed, the others have to be warm
+    private static final int MAX_EVENTS = 2 * EVENTS_PER_RESULT + EVENTS_PER_RESULT / 2;
+    private static final long HEAP_BUDGET = 1024 * 1024;
+    private static final long COLD_BUDGET = 1024 * 1024;
+    private static final long TTL = 60 * 1000;
+
+    private File coldDirectory;
+    private QueueExecutor executor;
+    private QueryCache cache;
+    private final ArrayList<EarthQuakeQuery> queries = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        coldDirectory = File.createTempFile("query_cache", "");
+        coldDirectory.delete();
+        executor = new QueueExecutor();
+        cache = new QueryCache(MAX_EVENTS, TTL, HEAP_BUDGET, coldDirectory, COLD_BUDGET, executor);
+        MemoryPressure.register(cache);
+        for (int i = 0; i < RESULTS; i++) {
+            EarthQuakeQuery query = new EarthQuakeQuery(i, "time", EVENTS_PER_RESULT);
+            queries.add(query);
+            cache.put(query, earthQuakes(i));
+        }
+        executor.runAll();
+    }
+
+    @After
+    public void tearDown() {
+        MemoryPressure.unregister(cache);
+        cache.clear();
+        coldDirectory.delete();
+    }
+
+    @Test
+    public void demotesTheLeastRecentlyUsedOverTheEventBudget() {
+        assertTiers(2, 3, 0);
+        assertEquals(2 * EVENTS_PER_RESULT, cache.getEventCount());
+        assertTrue(cache.getTierBytes(QueryCache.TIER_WARM) > 0);
+    }
+
+    @Test
+    public void uiHiddenKeepsOnlyTheMostRecentResultParsed() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_UI_HIDDEN);
+        // Nothing is encoded on the thread that dispatched
+        assertTiers(2, 3, 0);
+
+        executor.runAll();
+        assertTiers(1, 4, 0);
+        assertEquals(EVENTS_PER_RESULT, cache.get(queries.get(RESULTS - 1)).getEarthQuakes().size());
+    }
+
+    @Test
+    public void backgroundKeepsNothingParsed() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_BACKGROUND);
+        executor.runAll();
+
+        assertTiers(0, 5, 0);
+        assertEquals(0, cache.getEventCount());
+    }
+
+    @Test
+    public void completeMovesEverythingToDisk() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+        assertTiers(2, 3, 0);
+        assertEquals(0, coldFiles());
+
+        executor.runAll();
+        assertTiers(0, 0, 5);
+        assertEquals(0, cache.getTierBytes(QueryCache.TIER_WARM));
+        assertTrue(cache.getTierBytes(QueryCache.TIER_COLD) > 0);
+        assertEquals(5, coldFiles());
+    }
+
+    @Test
+    public void coldResultsAreOnlyReadByLoad() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+        executor.runAll();
+        EarthQuakeQuery query = queries.get(0);
+
+        assertNull(cache.get(query));
+        QueryCache.Entry entry = cache.load(query);
+
+        assertNotNull(entry);
+        List<EarthQuake> earthQuakes = entry.getEarthQuakes();
+        assertEquals(EVENTS_PER_RESULT, earthQuakes.size());
+        assertEquals("q0-0", earthQuakes.get(0).getId());
+        assertTiers(1, 0, 4);
+        assertEquals(4, coldFiles());
+        // Hot again, so the next lookup is answered from memory
+        assertTrue(cache.get(query).getEarthQuakes() == earthQuakes);
+        assertNull(cache.load(query));
+    }
+
+    @Test
+    public void aLookupPromotesAWarmResult() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_BACKGROUND);
+        executor.runAll();
+
+        QueryCache.Entry entry = cache.get(queries.get(0));
+
+        assertEquals(EVENTS_PER_RESULT, entry.getEarthQuakes().size());
+        assertEquals("q0-0", entry.getEarthQuakes().get(0).getId());
+        assertTrue(entry.isFresh());
+        // Nothing is decoded on the thread that looked it up
+        assertTiers(0, 5, 0);
+
+        executor.runAll();
+        assertTiers(1, 4, 0);
+        assertEquals(EVENTS_PER_RESULT, cache.getEventCount());
+    }
+
+    @Test
+    public void theColdBudgetDropsTheLeastRecentlyUsed() {
+        long fileBytes = coldBytesOfOneResult();
+        MemoryPressure.unregister(cache);
+        QueryCache small = new QueryCache(MAX_EVENTS, TTL, HEAP_BUDGET, coldDirectory, 3 * fileBytes, executor);
+        MemoryPressure.register(small);
+        for (EarthQuakeQuery query : queries) {
+            small.put(query, earthQuakes((int) query.getMinMagnitude()));
+        }
+        executor.runAll();
+
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+        executor.runAll();
+
+        assertEquals(3, small.getTierEntries(QueryCache.TIER_COLD));
+        assertNull(small.load(queries.get(0)));
+        assertNull(small.load(queries.get(1)));
+        assertNotNull(small.load(queries.get(2)));
+        MemoryPressure.unregister(small);
+        small.clear();
+    }
+
+    @Test
+    public void withoutAColdTierCompleteDropsAtOnce() {
+        MemoryPressure.unregister(cache);
+        QueryCache memoryOnly = new QueryCache(MAX_EVENTS, TTL, HEAP_BUDGET, null, 0, executor);
+        MemoryPressure.register(memoryOnly);
+        for (EarthQuakeQuery query : queries) {
+            memoryOnly.put(query, earthQuakes((int) query.getMinMagnitude()));
+        }
+        executor.runAll();
+
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+
+        // Dropping only lets go of references, it does not wait for the executor
+        assertEquals(0, memoryOnly.getTierEntries(QueryCache.TIER_HOT));
+        assertEquals(0, memoryOnly.getTierEntries(QueryCache.TIER_WARM));
+        assertEquals(0, memoryOnly.getTierBytes(QueryCache.TIER_WARM));
+        MemoryPressure.unregister(memoryOnly);
+    }
+
+    @Test
+    public void levelsBelowUiHiddenReleaseNothing() {
+        MemoryPressure.dispatch(1);
+        executor.runAll();
+
+        assertTiers(2, 3, 0);
+    }
+
+    private long coldBytesOfOneResult() {
+        MemoryPressure.dispatch(MemoryPressure.TRIM_MEMORY_COMPLETE);
+        executor.runAll();
+        long bytes = cache.getTierBytes(QueryCache.TIER_COLD) / RESULTS;
+        cache.clear();
+        return bytes;
+    }
+
+    private void assertTiers(int hot, int warm, int cold) {
+        assertEquals("hot", hot, cache.getTierEntries(QueryCache.TIER_HOT));
+        assertEquals("warm", warm, cache.getTierEntries(QueryCache.TIER_WARM));
+        assertEquals("cold", cold, cache.getTierEntries(QueryCache.TIER_COLD));
+    }
+
+    private int coldFiles() {
+        String[] files = coldDirectory.list();
+        return files == null ? 0 : files.length;
+    }
+
+    private static List<EarthQuake> earthQuakes(int result) {
+        ArrayList<EarthQuake> earthQuakes = new ArrayList<>(EVENTS_PER_RESULT);
+        long time = 1546300800000L;
+        for (int i = 0; i < EVENTS_PER_RESULT; i++) {
+            String id = "q" + result + "-" + i;
+            earthQuakes.add(new EarthQuake(id, 2.5 + i % 5, (i + 1) + "km N of Rumoi, Japan", time - i * 60000L,
+                    time, "https://earthquake.usgs.gov/earthquakes/eventpage/" + id, 43.9, 141.6, 10, false));
+        }
+        return earthQuakes;
+    }
+
+    /**
+     * Holds the submitted tasks until the test runs them.
+     */
+    private static class QueueExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+}
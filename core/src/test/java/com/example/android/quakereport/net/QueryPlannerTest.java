@@ -0,0 +1,160 @@
+package com.example.android.quakereport.net;
+
+import com.example.android.quakereport.data.EarthQuakeColumns;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryPlannerTest {
+    private static final String TIME = "time";
+    private static final String MAGNITUDE = "magnitude";
+    private static final long START = 1546300800000L;
+    private static final long MINUTE = 60 * 1000;
+    //One event in the middle of every minute of the window
+    private static final int EVENTS = 100;
+
+    @Test
+    public void mergesTheSlicesNewestFirst() throws InterruptedException {
+        FakeSource source = new FakeSource();
+        QueryPlanner planner = new QueryPlanner(source, 4, 10);
+        EarthQuakeQuery query = window(TIME, 1000);
+
+        assertTrue(planner.plan(query).size() >= 10);
+        EarthQuakeColumns merged = planner.fetch(query);
+
+        assertEquals(EVENTS, merged.size());
+        for (int i = 1; i < merged.size(); i++) {
+            assertTrue(merged.getTime(i - 1) > merged.getTime(i));
+        }
+    }
+
+    @Test
+    public void mergesTheSlicesLargestFirst() throws InterruptedException {
+        QueryPlanner planner = new QueryPlanner(new FakeSource(), 4, 10);
+
+        EarthQuakeColumns merged = planner.fetch(window(MAGNITUDE, 1000));
+
+        assertEquals(EVENTS, merged.size());
+        for (int i = 1; i < merged.size(); i++) {
+            double previous = merged.getMagnitude(i - 1);
+            double magnitude = merged.getMagnitude(i);
+            assertTrue(previous > magnitude || previous == magnitude && merged.getTime(i - 1) > merged.getTime(i));
+        }
+    }
+
+    @Test
+    public void dropsEventsSeenInTwoSlices() {
+        // The event on the edge is in the window of both slices
+        EarthQuakeColumns newer = columns(event("us3", 3, 4.0), event("us2", 2, 3.0));
+        EarthQuakeColumns older = columns(event("us2", 2, 3.0), event("us1", 1, 5.0));
+
+        EarthQuakeColumns byTime = QueryPlanner.merge(Arrays.asList(newer, older), TIME, 10);
+        EarthQuakeColumns largerFirst = columns(event("us1", 1, 5.0), event("us2", 2, 3.0));
+        EarthQuakeColumns byMagnitude = QueryPlanner.merge(Arrays.asList(newer, largerFirst), MAGNITUDE, 10);
+
+        assertEquals(Arrays.asList("us3", "us2", "us1"), ids(byTime));
+        assertEquals(Arrays.asList("us1", "us3", "us2"), ids(byMagnitude));
+    }
+
+    @Test
+    public void fetchesNoMoreThanTheLimitFromAnySlice() throws InterruptedException {
+        FakeSource source = new FakeSource();
+        QueryPlanner planner = new QueryPlanner(source, 4, 10);
+
+        EarthQuakeColumns merged = planner.fetch(window(MAGNITUDE, 15));
+
+        assertEquals(15, merged.size());
+        assertEquals(Collections.singleton(15), new HashSet<>(source.fetchedLimits));
+        // The 15 largest of the whole window, not of its first slices
+        EarthQuakeColumns all = planner.fetch(window(MAGNITUDE, 1000));
+        for (int i = 0; i < merged.size(); i++) {
+            assertEquals(all.getId(i), merged.getId(i));
+        }
+    }
+
+    @Test
+    public void capsAWindowThatCannotBeSplit() throws InterruptedException {
+        FakeSource source = new FakeSource();
+        source.count = 25000;
+        QueryPlanner planner = new QueryPlanner(source, 1, 10);
+        // Too short to split any further
+        EarthQuakeQuery query = new EarthQuakeQuery(2.5, TIME, 30000, START, START + MINUTE);
+
+        List<EarthQuakeQuery> slices = planner.plan(query);
+
+        assertEquals(1, slices.size());
+        assertEquals(QueryPlanner.MAX_EVENTS_PER_QUERY, slices.get(0).getLimit());
+    }
+
+    private static EarthQuakeQuery window(String orderBy, int limit) {
+        return new EarthQuakeQuery(2.5, orderBy, limit, START, START + EVENTS * MINUTE);
+    }
+
+    private static Object[] event(String id, int minute, double magnitude) {
+        return new Object[]{id, minute, magnitude};
+    }
+
+    private static EarthQuakeColumns columns(Object[]... events) {
+        EarthQuakeColumns columns = new EarthQuakeColumns();
+        for (Object[] event : events) {
+            columns.add((String) event[0], (Double) event[2], "10km SSW of Anchorage, Alaska",
+                    START + (Integer) event[1] * MINUTE, START, "https://earthquake.usgs.gov/", 61.2, -149.9, 10, false);
+        }
+        return columns;
+    }
+
+    private static List<String> ids(EarthQuakeColumns columns) {
+        ArrayList<String> ids = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            ids.add(columns.getId(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Answers like USGS for one event in the middle of each minute of the window,
+     * sorted in the query order and cut at its limit.
+     */
+    private static class FakeSource implements QueryPlanner.Source {
+        //Count to answer instead of the events in the window, -1 to count them
+        volatile int count = -1;
+        final List<Integer> fetchedLimits = Collections.synchronizedList(new ArrayList<Integer>());
+
+        @Override
+        public int count(EarthQuakeQuery query) {
+            return count >= 0 ? count : matching(query).size();
+        }
+
+        @Override
+        public boolean fetch(EarthQuakeQuery query, EarthQuakeColumns into) {
+            fetchedLimits.add(query.getLimit());
+            EarthQuakeColumns matching = matching(query);
+            matching.sort(query.getOrderBy());
+            for (int i = 0; i < Math.min(matching.size(), query.getLimit()); i++) {
+                into.addFrom(matching, i);
+            }
+            return true;
+        }
+
+        private static EarthQuakeColumns matching(EarthQuakeQuery query) {
+            EarthQuakeColumns columns = new EarthQuakeColumns();
+            for (int i = 0; i < EVENTS; i++) {
+                long time = START + i * MINUTE + MINUTE / 2;
+                if (time >= query.getStartTime() && time <= query.getEndTime()) {
+                    // Magnitudes repeat, so ties fall back to the time
+                    columns.add("us" + i, 2.5 + (i * 7 % 20) / 4.0, "10km SSW of Anchorage, Alaska", time, time,
+                            "https://earthquake.usgs.gov/", 61.2, -149.9, 10, false);
+                }
+            }
+            return columns;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.android.quakereport.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResilientTransportTest {
+    //Scripted outcomes of a call besides a status code
+    private static final int FAIL = -1;
+    private static final int BLOCK = -2;
+    //Samples it takes before the percentiles replace the defaults
+    private static final int WARM_UP = 8;
+    private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    @Test
+    public void queriesOfOneShapeShareAClass() throws MalformedURLException {
+        EarthQuakeQuery small = new EarthQuakeQuery(2.5, "time", 10);
+        EarthQuakeQuery large = new EarthQuakeQuery(4.5, "magnitude", 1000);
+
+        assertEquals(classOf(small.toUrl()), classOf(large.toUrl()));
+        assertEquals("earthquake.usgs.gov/fdsnws/event/1/query?format&limit&minmag&orderby", classOf(small.toUrl()));
+    }
+
+    @Test
+    public void detailsCountsAndListsAreApart() throws MalformedURLException {
+        String list = classOf(new EarthQuakeQuery(2.5, "time", 10).toUrl());
+        String count = classOf(new EarthQuakeQuery(2.5, "time", 10).toCountUrl());
+        String detail = classOf(EarthQuakeQuery.toDetailUrl("us1000001"));
+
+        assertEquals("earthquake.usgs.gov/fdsnws/event/1/query?eventid&format", detail);
+        assertFalse(list.equals(count));
+        assertFalse(list.equals(detail));
+        assertFalse(count.equals(detail));
+    }
+
+    @Test
+    public void parameterOrderDoesNotMatter() throws MalformedURLException {
+        assertEquals(classOf("https://example.com/a?x=1&y=2"), classOf("https://example.com/a?y=3&x=4"));
+        assertEquals("example.com/a", classOf("https://example.com/a"));
+    }
+
+    @Test
+    public void hedgesAfterThePercentileDelayAndCancelsTheLoser() throws Exception {
+        FakeTransport fake = new FakeTransport(warmUp(BLOCK, 200));
+        ResilientTransport transport = new ResilientTransport(fake, 10000, 1);
+        URL url = new URL("https://example.com/query?id=1");
+        warm(transport, url);
+        // Every answer so far was instant, so the hedge goes out at the minimum delay
+        assertTrue(transport.getHedgeDelayMillis(url) < 1000);
+
+        long start = System.nanoTime();
+        Transport.Response response = transport.get(url, NO_HEADERS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+        assertTrue("took " + millis + " ms", millis < 1000);
+        assertEquals(WARM_UP + 2, fake.calls.get());
+        assertTrue("loser not cancelled", fake.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void withoutSamplesTheHedgeWaitsForTheDefault() throws Exception {
+        ResilientTransport transport = new ResilientTransport(new FakeTransport(200), 10000, 1);
+        URL url = new URL("https://example.com/query");
+
+        assertEquals(2000, transport.getHedgeDelayMillis(url));
+        assertEquals(20000, transport.getAttemptTimeoutMillis(url));
+    }
+
+    @Test
+    public void aFailedAttemptIsHedgedAtOnce() throws Exception {
+        FakeTransport fake = new FakeTransport(FAIL, 200);
+        ResilientTransport transport = new ResilientTransport(fake, 10000, 1);
+
+        long start = System.nanoTime();
+        Transport.Response response = transport.get(new URL("https://example.com/query"), NO_HEADERS);
+
+        assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+        // Not the two seconds of the default hedge delay
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(2, fake.calls.get());
+    }
+
+    @Test
+    public void retriesServerErrorsUpToTheAttemptLimit() throws Exception {
+        FakeTransport fake = new FakeTransport(500);
+        ResilientTransport transport = new ResilientTransport(fake, 30000, 3);
+
+        Transport.Response response = transport.get(new URL("https://example.com/query"), NO_HEADERS);
+
+        // The last error response is handed back rather than an exception
+        assertEquals(500, response.getCode());
+        assertEquals(3, fake.calls.get());
+    }
+
+    @Test
+    public void doesNotRetryAClientError() throws Exception {
+        FakeTransport fake = new FakeTransport(404);
+        ResilientTransport transport = new ResilientTransport(fake, 30000, 3);
+
+        assertEquals(404, transport.get(new URL("https://example.com/query"), NO_HEADERS).getCode());
+        assertEquals(1, fake.calls.get());
+    }
+
+    @Test
+    public void throwsOnceEveryAttemptFailed() throws Exception {
+        FakeTransport fake = new FakeTransport(FAIL);
+        ResilientTransport transport = new ResilientTransport(fake, 30000, 2);
+
+        try {
+            transport.get(new URL("https://example.com/query"), NO_HEADERS);
+            fail();
+        } catch (IOException expected) {
+            // Each attempt and the hedge it sent at once
+            assertEquals(4, fake.calls.get());
+        }
+    }
+
+    @Test
+    public void honorsTheDeadline() throws Exception {
+        FakeTransport fake = new FakeTransport(BLOCK);
+        ResilientTransport transport = new ResilientTransport(fake, 300, 5);
+
+        long start = System.nanoTime();
+        try {
+            transport.get(new URL("https://example.com/query"), NO_HEADERS);
+            fail();
+        } catch (InterruptedIOException expected) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("took " + millis + " ms", millis >= 300 && millis < 1500);
+            // The attempt that never answered is not left running
+            assertTrue(fake.interrupted.await(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void aCancelledCallerCancelsItsAttempts() throws Exception {
+        FakeTransport fake = new FakeTransport(BLOCK);
+        final ResilientTransport transport = new ResilientTransport(fake, 10000, 1);
+        final URL url = new URL("https://example.com/query");
+        final List<IOException> thrown = Collections.synchronizedList(new ArrayList<IOException>());
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.get(url, NO_HEADERS);
+                } catch (IOException e) {
+                    thrown.add(e);
+                }
+            }
+        });
+        caller.start();
+        fake.blocked.await(1, TimeUnit.SECONDS);
+
+        caller.interrupt();
+        caller.join(1000);
+
+        assertFalse(caller.isAlive());
+        assertTrue(thrown.get(0) instanceof InterruptedIOException);
+        assertTrue(fake.interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    private static String classOf(String url) throws MalformedURLException {
+        return ResilientTransport.requestClassOf(new URL(url));
+    }
+
+    /**
+     * Instant answers to warm the latency window up, followed by the given outcomes.
+     */
+    private static int[] warmUp(int... then) {
+        int[] script = new int[WARM_UP + then.length];
+        Arrays.fill(script, 0, WARM_UP, HttpURLConnection.HTTP_OK);
+        System.arraycopy(then, 0, script, WARM_UP, then.length);
+        return script;
+    }
+
+    private static void warm(ResilientTransport transport, URL url) throws IOException {
+        for (int i = 0; i < WARM_UP; i++) {
+            transport.get(url, NO_HEADERS).close();
+        }
+    }
+
+    /**
+     * Answers the calls as scripted, in the order they come in, the last outcome repeats.
+     * A blocked call waits until it is interrupted.
+     */
+    private static class FakeTransport implements Transport {
+        private final int[] script;
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        FakeTransport(int... script) {
+            this.script = script;
+        }
+
+        @Override
+        public Response get(URL url, Map<String, String> headers) throws IOException {
+            int call = calls.getAndIncrement();
+            int outcome = script[Math.min(call, script.length - 1)];
+            if (outcome == FAIL) {
+                throw new IOException("Connection reset");
+            }
+            if (outcome == BLOCK) {
+                blocked.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new InterruptedIOException("Cancelled");
+                }
+            }
+            return response(outcome);
+        }
+
+        private static Response response(final int code) {
+            return new Response() {
+                @Override
+                public int getCode() {
+                    return code;
+                }
+
+                @Override
+                public String getHeader(String name) {
+                    return null;
+                }
+
+                @Override
+                public long getContentLength() {
+                    return 0;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public long getPoolHits() {
+            return 0;
+        }
+
+        @Override
+        public long getPoolMisses() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.quakereport.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncPolicyTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long INTERVAL = 15 * MINUTE;
+    private static final long BACKFILL_INTERVAL = 24 * 60 * MINUTE;
+    private static final long RETRY = MINUTE;
+    private static final long MAX_BACKOFF = 60 * MINUTE;
+
+    private static final SyncPolicy.Conditions CELLULAR = new SyncPolicy.Conditions(true, false, false, false);
+    private static final SyncPolicy.Conditions CELLULAR_LOW_BATTERY = new SyncPolicy.Conditions(true, false, false, true);
+    private static final SyncPolicy.Conditions CHARGING_LOW_BATTERY = new SyncPolicy.Conditions(true, false, true, true);
+    private static final SyncPolicy.Conditions WIFI = new SyncPolicy.Conditions(true, true, false, false);
+    private static final SyncPolicy.Conditions WIFI_CHARGING = new SyncPolicy.Conditions(true, true, true, false);
+    private static final SyncPolicy.Conditions OFFLINE = new SyncPolicy.Conditions(false, false, false, false);
+
+    private FakeClock clock;
+    private SyncPolicy policy;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        policy = new SyncPolicy(clock, INTERVAL, BACKFILL_INTERVAL, RETRY, MAX_BACKOFF);
+        // Both synced just now
+        policy.restore(clock.time, clock.time, 0, 0);
+    }
+
+    @Test
+    public void deltaRunsEveryInterval() {
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR));
+        clock.advance(INTERVAL - 1);
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR));
+        clock.advance(1);
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR));
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(OFFLINE));
+
+        policy.onFinished(SyncPolicy.WORK_DELTA, true);
+        assertEquals(clock.time, policy.getLastSync());
+        assertEquals(clock.time + INTERVAL, policy.getDeltaAt());
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR));
+    }
+
+    @Test
+    public void lowBatteryStretchesTheInterval() {
+        clock.advance(INTERVAL);
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR_LOW_BATTERY));
+        // A charger lifts the stretch
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CHARGING_LOW_BATTERY));
+
+        clock.advance(3 * INTERVAL - 1);
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR_LOW_BATTERY));
+        clock.advance(1);
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR_LOW_BATTERY));
+    }
+
+    @Test
+    public void foregroundRefreshCoalescesWithTheNextDelta() {
+        clock.advance(INTERVAL - MINUTE);
+        policy.onForegroundRefresh();
+
+        clock.advance(MINUTE);
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR));
+        clock.advance(INTERVAL - MINUTE);
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR));
+    }
+
+    @Test
+    public void backoffDoublesUpToTheCap() {
+        clock.advance(INTERVAL);
+        long expected = RETRY;
+        for (int failure = 1; failure <= 10; failure++) {
+            policy.onFinished(SyncPolicy.WORK_DELTA, false);
+            assertEquals(failure, policy.getFailures());
+            assertEquals(clock.time + expected, policy.getDeltaAt());
+
+            clock.advance(expected - 1);
+            assertEquals(SyncPolicy.WORK_NONE, policy.decide(CELLULAR));
+            clock.advance(1);
+            assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR));
+            expected = Math.min(expected * 2, MAX_BACKOFF);
+        }
+        assertEquals(MAX_BACKOFF, expected);
+    }
+
+    @Test
+    public void successResetsTheBackoff() {
+        clock.advance(INTERVAL);
+        for (int failure = 0; failure < 5; failure++) {
+            policy.onFinished(SyncPolicy.WORK_DELTA, false);
+        }
+        clock.advance(MAX_BACKOFF);
+        policy.onFinished(SyncPolicy.WORK_DELTA, true);
+        assertEquals(0, policy.getFailures());
+
+        clock.advance(INTERVAL);
+        policy.onFinished(SyncPolicy.WORK_DELTA, false);
+        // Back to the first retry wait, not the one after five failures
+        assertEquals(clock.time + RETRY, policy.getDeltaAt());
+    }
+
+    @Test
+    public void backfillWaitsForUnmeteredAndCharging() {
+        clock.advance(BACKFILL_INTERVAL);
+        assertEquals(clock.time, policy.getBackfillAt());
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR));
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(WIFI));
+        assertEquals(SyncPolicy.WORK_BACKFILL, policy.decide(WIFI_CHARGING));
+
+        policy.onFinished(SyncPolicy.WORK_BACKFILL, true);
+        assertEquals(clock.time, policy.getLastBackfill());
+        assertEquals(clock.time + BACKFILL_INTERVAL, policy.getBackfillAt());
+        // The delta is still due, a backfill does not count as one
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(WIFI_CHARGING));
+    }
+
+    @Test
+    public void overdueBackfillSettlesForUnmetered() {
+        clock.advance(2 * BACKFILL_INTERVAL - 1);
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(WIFI));
+        clock.advance(1);
+        assertEquals(SyncPolicy.WORK_BACKFILL, policy.decide(WIFI));
+        // Never on a metered network
+        assertEquals(SyncPolicy.WORK_DELTA, policy.decide(CELLULAR));
+    }
+
+    @Test
+    public void failuresHoldBackBackfillsToo() {
+        clock.advance(BACKFILL_INTERVAL);
+        policy.onFinished(SyncPolicy.WORK_BACKFILL, false);
+
+        assertEquals(SyncPolicy.WORK_NONE, policy.decide(WIFI_CHARGING));
+        clock.advance(RETRY);
+        assertEquals(SyncPolicy.WORK_BACKFILL, policy.decide(WIFI_CHARGING));
+    }
+
+    private static class FakeClock implements SyncPolicy.Clock {
+        //2019-01-01T00:00:00Z
+        long time = 1546300800000L;
+
+        @Override
+        public long now() {
+            return time;
+        }
+
+        void advance(long millis) {
+            time += millis;
+        }
+    }
+}
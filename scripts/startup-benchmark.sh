@@ -0,0 +1,63 @@
+#!/usr/bin/env bash
+# Cold start benchmark of the earthquake list on a connected device or emulator.
+# Launches the installed app from a killed process a number of times and prints, per
+# run, the launch time the system reports (TotalTime) and the time to the first rows
+# on screen (the "Fully drawn" the list reports), then the median of both.
+#
+#   scripts/startup-benchmark.sh [runs]
+#
+# Set CLEAR=1 to wipe the app data before every run, which measures a first launch
+# without a list snapshot or stored earthquakes instead of a returning user's launch.
+set -euo pipefail
+
+RUNS=${1:-10}
+PACKAGE=com.example.android.quakereport
+ACTIVITY=$PACKAGE/.EarthquakeActivity
+#Seconds to wait for the first rows before a run counts as failed
+DRAWN_TIMEOUT=30
+
+# "+1s234ms" or "+987ms" as milliseconds
+to_millis() {
+    echo "$1" | awk '{
+        ms = 0
+        if (match($0, /[0-9]+s/)) { ms += substr($0, RSTART, RLENGTH - 1) * 1000 }
+        if (match($0, /[0-9]+ms/)) { ms += substr($0, RSTART, RLENGTH - 2) }
+        print ms
+    }'
+}
+
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { if (NR == 0) print "-"; else if (NR % 2) print v[(NR + 1) / 2]; else print (v[NR / 2] + v[NR / 2 + 1]) / 2 }'
+}
+
+totals=$(mktemp)
+drawns=$(mktemp)
+trap 'rm -f "$totals" "$drawns"' EXIT
+
+echo "run,total_ms,fully_drawn_ms"
+for run in $(seq "$RUNS"); do
+    adb shell am force-stop "$PACKAGE"
+    if [ "${CLEAR:-0}" = 1 ]; then
+        adb shell pm clear "$PACKAGE" > /dev/null
+    fi
+    # Let the killed process and its files settle so runs do not overlap
+    sleep 2
+    adb logcat -c
+    total=$(adb shell am start -W -n "$ACTIVITY" | tr -d '\r' | awk -F': ' '/TotalTime/ { print $2 }')
+
+    drawn=""
+    for _ in $(seq $((DRAWN_TIMEOUT * 2))); do
+        drawn=$(adb logcat -d | tr -d '\r' | grep "Fully drawn $ACTIVITY" | tail -n 1 | sed 's/.*: //')
+        [ -n "$drawn" ] && break
+        sleep 0.5
+    done
+    drawn_ms=-
+    if [ -n "$drawn" ]; then
+        drawn_ms=$(to_millis "$drawn")
+        echo "$drawn_ms" >> "$drawns"
+    fi
+    [ -n "$total" ] && echo "$total" >> "$totals"
+    echo "$run,${total:--},$drawn_ms"
+done
+
+echo "median total_ms $(median < "$totals"), fully_drawn_ms $(median < "$drawns")"